@@ -0,0 +1,295 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.LruCache;
+import fi.muni.pv168.utils.Weigher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ingredient manager, which keeps ingredients of recipes in LRU cache,
+ * ingredients of every recipe are kept in sorted array, which is never
+ * changed, callers get copies of them, other methods are passed to wrapped
+ * manager
+ * <p>
+ * writes invalidate only ingredients of the written recipe, recipe of updated
+ * ingredient is found by reverse index of cached ingredients, recipes deleted
+ * by RecipeManager.deleteRecipeCascade have to be invalidated by invalidateRecipe
+ * or by changes from ChangeLogPoller, which pass writes of other applications too
+ *
+ * @author mulan
+ */
+public class CachingIngredientManager extends ForwardingIngredientManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            CachingIngredientManager.class.getName());
+
+    /**
+     * estimates memory taken by ingredients of one recipe, strings take 2 bytes per character
+     */
+    static final Weigher<Ingredient[]> INGREDIENTS_WEIGHER = new Weigher<Ingredient[]>() {
+        @Override
+        public long weigh(Ingredient[] ingredients) {
+            long weight = 32 + 8L * ingredients.length;
+            for (Ingredient ingredient : ingredients) {
+                weight += 96 + 2L * (ingredient.getName().length() + ingredient.getUnit().length());
+            }
+            return weight;
+        }
+    };
+
+    private static final Ingredient[] NO_INGREDIENTS = new Ingredient[0];
+
+    private final IngredientCache cache;
+    private final long maxBytes;
+
+    /**
+     * constructor, creates empty cache
+     * @param ingredientManager wrapped manager
+     * @param maxBytes maximal estimated size of cached ingredients in bytes
+     */
+    public CachingIngredientManager(IngredientManager ingredientManager, long maxBytes) {
+        super(ingredientManager);
+        this.cache = new IngredientCache(maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * counters of the cache
+     */
+    public long getHits() {return cache.getHits();}
+    public long getMisses() {return cache.getMisses();}
+    public long getEvictions() {return cache.getEvictions();}
+    public int getCachedCount() {return cache.size();}
+
+    /**
+     * removes cached ingredients of given recipe, it has to be called after
+     * ingredients were changed without this manager, e.g. by deleting the recipe
+     * @param recipeId id of the recipe
+     */
+    public void invalidateRecipe(long recipeId) {
+        cache.remove(recipeId);
+    }
+
+    /**
+     * removes all cached ingredients
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * loads ingredients of recipes by one pass through the ingredient table,
+     * so they do not have to be loaded by one query per recipe, ingredients
+     * come ordered by recipe, so every recipe is cached as soon as all its
+     * ingredients are read, reading stops when the cache is full or when
+     * ingredients are written meanwhile
+     * @return number of recipes with cached ingredients
+     * @throws ServiceFailureException when reading of ingredients fails
+     */
+    public int warmUp() throws ServiceFailureException {
+        final long version = cache.getVersion();
+        final List<Ingredient> group = new ArrayList<Ingredient>();
+        final long[] groupRecipe = new long[1];
+        final int[] cached = new int[1];
+
+        try {
+            ingredientManager.streamAllIngredients(new IngredientHandler() {
+                @Override
+                public void handle(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+                    if (!group.isEmpty() && groupRecipe[0] != recipeId) {
+                        cacheGroup(groupRecipe[0], group, version);
+                        cached[0]++;
+                        group.clear();
+                    }
+                    groupRecipe[0] = recipeId;
+                    group.add(ingredient);
+                }
+            });
+            if (!group.isEmpty()) {
+                cacheGroup(groupRecipe[0], group, version);
+                cached[0]++;
+            }
+        } catch (CacheFullException ex) {
+            logger.log(Level.FINE, "Warm up of ingredient cache stopped", ex);
+        }
+        logger.log(Level.INFO, "Ingredients of {0} recipes loaded into cache", cached[0]);
+        return cached[0];
+    }
+
+    /**
+     * caches ingredients of one recipe read by warmUp
+     * @throws CacheFullException when they would evict other recipes or
+     * when ingredients were written since given version
+     */
+    private void cacheGroup(long recipeId, List<Ingredient> ingredients, long version)
+            throws CacheFullException {
+        Ingredient[] array = toArray(ingredients);
+        if (cache.getWeight() + INGREDIENTS_WEIGHER.weigh(array) > maxBytes) {
+            throw new CacheFullException("Ingredient cache is full");
+        }
+        if (!cache.put(recipeId, array, version)) {
+            throw new CacheFullException("Ingredients were written during warm up");
+        }
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        cache.remove(recipeId);
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        cache.remove(recipeId);
+    }
+
+    @Override
+    public void allChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        try {
+            ingredientManager.createIngredient(ingredient, recipeId);
+        } finally {
+            cache.remove(recipeId);
+        }
+    }
+
+    @Override
+    public List<Long> createIngredients(Collection<Ingredient> ingredients, long recipeId) throws ServiceFailureException {
+        try {
+            return ingredientManager.createIngredients(ingredients, recipeId);
+        } finally {
+            cache.remove(recipeId);
+        }
+    }
+
+    @Override
+    public void updateIngredient(Ingredient ingredient) throws ServiceFailureException {
+        try {
+            ingredientManager.updateIngredient(ingredient);
+        } finally {
+            if (ingredient != null && ingredient.getId() != null) {
+                cache.invalidateIngredient(ingredient.getId());
+            }
+        }
+    }
+
+    @Override
+    public void deleteIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        try {
+            ingredientManager.deleteIngredient(ingredient, recipeId);
+        } finally {
+            cache.remove(recipeId);
+            if (ingredient != null && ingredient.getId() != null) {
+                cache.invalidateIngredient(ingredient.getId());
+            }
+        }
+    }
+
+    @Override
+    public SortedSet<Ingredient> getIngredientsOfRecipe(long recipeid) throws ServiceFailureException {
+        Ingredient[] cached = cache.get(recipeid);
+        if (cached == null) {
+            long version = cache.getVersion();
+            cached = toArray(ingredientManager.getIngredientsOfRecipe(recipeid));
+            cache.put(recipeid, cached, version);
+        }
+
+        SortedSet<Ingredient> result = new TreeSet<Ingredient>();
+        for (Ingredient ingredient : cached) {
+            result.add(copyOf(ingredient));
+        }
+        return result;
+    }
+
+    /**
+     * creates sorted array of copies of given ingredients
+     */
+    private static Ingredient[] toArray(Collection<Ingredient> ingredients) {
+        if (ingredients.isEmpty()) {
+            return NO_INGREDIENTS;
+        }
+        SortedSet<Ingredient> sorted = new TreeSet<Ingredient>();
+        for (Ingredient ingredient : ingredients) {
+            sorted.add(copyOf(ingredient));
+        }
+        return sorted.toArray(new Ingredient[sorted.size()]);
+    }
+
+    /**
+     * creates copy of given ingredient including ID
+     * @param ingredient ingredient to copy
+     * @return new ingredient equal to given one
+     */
+    static Ingredient copyOf(Ingredient ingredient) {
+        Ingredient copy = new Ingredient(ingredient);
+        if (ingredient.getId() != null) {
+            copy.setId(ingredient.getId());
+        }
+        return copy;
+    }
+
+    /**
+     * stops warm up, when no more ingredients can be cached
+     */
+    private static class CacheFullException extends ServiceFailureException {
+
+        CacheFullException(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * LRU cache of ingredients by recipe ID with reverse index from
+     * ingredient ID to recipe ID, index is guarded by lock of the cache
+     */
+    private static class IngredientCache extends LruCache<Long, Ingredient[]> {
+
+        private final Map<Long, Long> recipeIds = new HashMap<Long, Long>();
+
+        IngredientCache(long maxBytes) {
+            super(maxBytes, INGREDIENTS_WEIGHER);
+        }
+
+        @Override
+        public synchronized boolean put(Long recipeId, Ingredient[] ingredients, long sinceVersion) {
+            if (!super.put(recipeId, ingredients, sinceVersion)) {
+                return false;
+            }
+            for (Ingredient ingredient : ingredients) {
+                recipeIds.put(ingredient.getId(), recipeId);
+            }
+            return true;
+        }
+
+        @Override
+        protected void entryRemoved(Long recipeId, Ingredient[] ingredients) {
+            for (Ingredient ingredient : ingredients) {
+                recipeIds.remove(ingredient.getId());
+            }
+        }
+
+        /**
+         * removes cached ingredients of recipe containing given ingredient
+         * @param ingredientId id of written ingredient
+         */
+        synchronized void invalidateIngredient(long ingredientId) {
+            Long recipeId = recipeIds.get(ingredientId);
+            if (recipeId != null) {
+                remove(recipeId);
+            } else {
+                invalidate();
+            }
+        }
+    }
+}
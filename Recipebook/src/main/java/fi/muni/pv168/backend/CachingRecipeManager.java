@@ -0,0 +1,378 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.LruCache;
+import fi.muni.pv168.utils.Weigher;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * recipe manager, which keeps recipes found by ID in LRU cache and IDs of
+ * recipes found by type, category and cooking time in query cache, other
+ * methods are passed to wrapped manager, writes invalidate cached recipes
+ * and affected query results, cached recipes are copied, so callers cannot
+ * change them
+ * <p>
+ * writes of other applications are seen when changes from ChangeLogPoller
+ * are passed to this manager, changed recipe is read again, so only results,
+ * which contained it or which match its new version are dropped, listeners of
+ * wrapped caches have to be registered before this manager, changes of
+ * recipes updated or deleted by this manager are already applied, so they
+ * are skipped
+ *
+ * @author mulan
+ */
+public class CachingRecipeManager extends ForwardingRecipeManager implements ChangeListener {
+
+    /**
+     * estimates memory taken by recipe, strings take 2 bytes per character
+     */
+    static final Weigher<Recipe> RECIPE_WEIGHER = new Weigher<Recipe>() {
+        @Override
+        public long weigh(Recipe recipe) {
+            long weight = 96 + 2L * (recipe.getName().length() + recipe.getInstructions().length());
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                weight += 96 + 2L * (ingredient.getName().length() + ingredient.getUnit().length());
+            }
+            return weight;
+        }
+    };
+
+    private static final int MAX_QUERY_RESULTS = 256;
+    private static final int MAX_PENDING_CHANGES = 1024;
+
+    private final LruCache<Long, Recipe> cache;
+    private final RecipeQueryCache queryCache = new RecipeQueryCache(MAX_QUERY_RESULTS);
+    // number of logged changes of recipes written by this manager, which were not passed yet,
+    // when the map is full, the oldest changes are passed as changes of other applications
+    private final Map<Long, Integer> pendingChanges = new LinkedHashMap<Long, Integer>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_PENDING_CHANGES;
+        }
+    };
+
+    /**
+     * constructor, creates empty cache
+     * @param recipeManager wrapped manager
+     * @param maxBytes maximal estimated size of cached recipes in bytes
+     */
+    public CachingRecipeManager(RecipeManager recipeManager, long maxBytes) {
+        super(recipeManager);
+        this.cache = new LruCache<Long, Recipe>(maxBytes, RECIPE_WEIGHER);
+    }
+
+    /**
+     * sets time after which cached recipes are loaded again, so changes
+     * made by other applications are seen
+     * @param ttl time to live, 0 for recipes which do not expire
+     * @param unit unit of ttl
+     */
+    public void setTimeToLive(long ttl, TimeUnit unit) {
+        cache.setTimeToLive(ttl, unit);
+        queryCache.setTimeToLive(ttl, unit);
+    }
+
+    /**
+     * counters of the cache
+     */
+    public long getHits() {return cache.getHits();}
+    public long getMisses() {return cache.getMisses();}
+    public long getEvictions() {return cache.getEvictions();}
+    public int getCachedCount() {return cache.size();}
+    public long getQueryHits() {return queryCache.getHits();}
+    public long getQueryMisses() {return queryCache.getMisses();}
+    public long getQueryInvalidations() {return queryCache.getInvalidations();}
+
+    /**
+     * removes all cached recipes
+     */
+    public void invalidateAll() {
+        cache.clear();
+        queryCache.clear();
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        if (takePendingChange(recipeId)) {
+            return;
+        }
+        cache.remove(recipeId);
+        Recipe recipe;
+        try {
+            recipe = recipeManager.findRecipeById(recipeId);
+        } catch (IllegalArgumentException ex) {
+            // deleted recipe
+            queryCache.invalidate(recipeId);
+            return;
+        } catch (ServiceFailureException ex) {
+            queryCache.clear();
+            return;
+        }
+        queryCache.invalidate(recipe);
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        // cached recipes do not contain ingredients
+    }
+
+    @Override
+    public void allChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.createRecipe(recipe);
+        cache.remove(recipe.getId());
+        queryCache.invalidate(recipe);
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) throws ServiceFailureException {
+        boolean written = false;
+        Long id = recipe != null ? recipe.getId() : null;
+        addPendingChange(id);
+        try {
+            recipeManager.deleteRecipe(recipe);
+            written = true;
+        } finally {
+            if (!written) {
+                removePendingChange(id);
+            }
+            if (recipe != null && recipe.getId() != null) {
+                cache.remove(recipe.getId());
+                queryCache.invalidate(recipe.getId());
+            }
+        }
+    }
+
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        boolean written = false;
+        addPendingChange(id);
+        try {
+            recipeManager.deleteRecipeCascade(id);
+            written = true;
+        } finally {
+            if (!written) {
+                removePendingChange(id);
+            }
+            cache.remove(id);
+            queryCache.invalidate(id);
+        }
+    }
+
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        try {
+            return recipeManager.deleteRecipesCascade(ids);
+        } finally {
+            if (ids != null) {
+                for (Long id : ids) {
+                    if (id != null) {
+                        cache.remove(id);
+                        queryCache.invalidate(id);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateRecipe(Recipe recipe) throws ServiceFailureException {
+        boolean written = false;
+        Long id = recipe != null ? recipe.getId() : null;
+        addPendingChange(id);
+        try {
+            recipeManager.updateRecipe(recipe);
+            written = true;
+        } finally {
+            if (!written) {
+                removePendingChange(id);
+            }
+            if (recipe != null && recipe.getId() != null) {
+                // results containing the recipe are invalidated together with
+                // results, which would contain its new version
+                cache.remove(recipe.getId());
+                queryCache.invalidate(recipe);
+            }
+        }
+    }
+
+    @Override
+    public Recipe findRecipeById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+
+        Recipe cached = cache.get(id);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        long version = cache.getVersion();
+        Recipe recipe = recipeManager.findRecipeById(id);
+        cache.put(id, copyOf(recipe), version);
+        return recipe;
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByType(MealType type) throws ServiceFailureException {
+        if (type == null) {
+            return recipeManager.findRecipesByType(type);
+        }
+
+        RecipeQueryCache.Key key = RecipeQueryCache.Key.type(type);
+        SortedSet<Recipe> result = getCachedResult(key);
+        if (result == null) {
+            long queryVersion = queryCache.getVersion();
+            long version = cache.getVersion();
+            result = recipeManager.findRecipesByType(type);
+            putResult(key, result, queryVersion, version);
+        }
+        return result;
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCategory(MealCategory category) throws ServiceFailureException {
+        if (category == null) {
+            return recipeManager.findRecipesByCategory(category);
+        }
+
+        RecipeQueryCache.Key key = RecipeQueryCache.Key.category(category);
+        SortedSet<Recipe> result = getCachedResult(key);
+        if (result == null) {
+            long queryVersion = queryCache.getVersion();
+            long version = cache.getVersion();
+            result = recipeManager.findRecipesByCategory(category);
+            putResult(key, result, queryVersion, version);
+        }
+        return result;
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCookingTime(int fromTime, int toTime) throws ServiceFailureException {
+        RecipeQueryCache.Key key = RecipeQueryCache.Key.cookingTime(fromTime, toTime);
+        SortedSet<Recipe> result = getCachedResult(key);
+        if (result == null) {
+            long queryVersion = queryCache.getVersion();
+            long version = cache.getVersion();
+            result = recipeManager.findRecipesByCookingTime(fromTime, toTime);
+            putResult(key, result, queryVersion, version);
+        }
+        return result;
+    }
+
+    /**
+     * records change, which will be logged by write of given recipe, it is
+     * recorded before the write, so it cannot be passed before it is recorded
+     * @param id ID of the recipe, nothing happens when it is null
+     */
+    private void addPendingChange(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (pendingChanges) {
+            Integer count = pendingChanges.get(id);
+            pendingChanges.put(id, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * forgets change recorded before failed write
+     * @param id ID of the recipe, nothing happens when it is null
+     */
+    private void removePendingChange(Long id) {
+        if (id != null) {
+            takePendingChange(id);
+        }
+    }
+
+    /**
+     * @param id ID of changed recipe
+     * @return true, when change of given recipe was recorded and it is forgotten now
+     */
+    private boolean takePendingChange(long id) {
+        synchronized (pendingChanges) {
+            Integer count = pendingChanges.remove(id);
+            if (count == null) {
+                return false;
+            }
+            if (count > 1) {
+                pendingChanges.put(id, count - 1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * builds cached result from cached recipes
+     * @param key finder and its arguments
+     * @return copies of found recipes, null when result or some of its recipes is not cached
+     */
+    private SortedSet<Recipe> getCachedResult(RecipeQueryCache.Key key) {
+        long[] ids = queryCache.get(key);
+        if (ids == null) {
+            return null;
+        }
+        SortedSet<Recipe> result = new TreeSet<Recipe>();
+        for (long id : ids) {
+            Recipe cached = cache.get(id);
+            if (cached == null) {
+                // evicted recipes are loaded again together with the result
+                return null;
+            }
+            result.add(copyOf(cached));
+        }
+        return result;
+    }
+
+    /**
+     * caches found recipes and their IDs
+     * @param key finder and its arguments
+     * @param result found recipes
+     * @param queryVersion version of query cache read before the query
+     * @param version version of recipe cache read before the query
+     */
+    private void putResult(RecipeQueryCache.Key key, SortedSet<Recipe> result, long queryVersion, long version) {
+        for (Recipe recipe : result) {
+            cache.put(recipe.getId(), copyOf(recipe), version);
+        }
+        queryCache.put(key, result, queryVersion);
+    }
+
+    /**
+     * creates deep copy of given recipe including IDs
+     * @param recipe recipe to copy
+     * @return new recipe equal to given one
+     */
+    static Recipe copyOf(Recipe recipe) {
+        Recipe copy = new Recipe();
+        if (recipe.getId() != null) {
+            copy.setId(recipe.getId());
+        }
+        copy.setName(recipe.getName());
+        copy.setType(recipe.getType());
+        copy.setCategory(recipe.getCategory());
+        copy.setCookingTime(recipe.getCookingTime());
+        copy.setNumPortions(recipe.getNumPortions());
+        copy.setInstructions(recipe.getInstructions());
+
+        SortedSet<Ingredient> ingredients = new TreeSet<Ingredient>();
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            Ingredient ingredientCopy = new Ingredient(ingredient);
+            if (ingredient.getId() != null) {
+                ingredientCopy.setId(ingredient.getId());
+            }
+            ingredients.add(ingredientCopy);
+        }
+        copy.setIngredients(ingredients);
+        return copy;
+    }
+}
@@ -0,0 +1,30 @@
+package fi.muni.pv168.backend;
+
+/**
+ * listener of changes read from change log by ChangeLogPoller, changes made
+ * by this application are delivered too, caches drop data of changed recipes
+ * and ingredients
+ *
+ * @author mulan
+ */
+public interface ChangeListener {
+
+    /**
+     * recipe was created, updated or deleted
+     * @param recipeId id of the recipe
+     */
+    void recipeChanged(long recipeId);
+
+    /**
+     * ingredient was created, updated or deleted
+     * @param ingredientId id of the ingredient
+     * @param recipeId id of the recipe ingredient belongs to
+     */
+    void ingredientChanged(long ingredientId, long recipeId);
+
+    /**
+     * some changes were removed from the log before they were read, so
+     * anything could change
+     */
+    void allChanged();
+}
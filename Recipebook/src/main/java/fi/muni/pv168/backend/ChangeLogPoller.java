@@ -0,0 +1,375 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.RowMapper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * reads changes of recipes and ingredients from CHANGE_LOG and passes them
+ * to listeners, so caches of every application using the database see writes
+ * of the others, changes are appended to the log by triggers in the same
+ * transaction as the write
+ * <p>
+ * sequence numbers are assigned before commit, so change with lower number
+ * can be committed after change with higher number was read, numbers skipped
+ * by read changes are therefore remembered and changes are read again from
+ * the oldest skipped number, skipped numbers older than a window before the
+ * last read number are forgotten, so numbers of rolled back transactions do
+ * not make polls read more, poll without skipped numbers reads only new
+ * changes
+ * <p>
+ * listeners read every changed entity again, so when one poll finds more
+ * changes than maxChanges, like after an import, listeners are told that
+ * all changed instead, which costs one rebuild instead of a query per change
+ * <p>
+ * started poller prunes the log after every poll, so only the last
+ * keepChanges changes are kept, application reading the log less often
+ * than that many changes are written gets allChanged instead of the changes
+ *
+ * @author mulan
+ */
+public class ChangeLogPoller {
+
+    private static final Logger logger = Logger.getLogger(
+            ChangeLogPoller.class.getName());
+
+    /**
+     * how many sequence numbers before the last read one can be read again
+     */
+    private static final long REORDER_WINDOW = 1000;
+
+    /**
+     * default number of changes of one poll, which are passed one by one
+     */
+    public static final int DEFAULT_MAX_CHANGES = 500;
+
+    /**
+     * default number of the last changes kept in the log by started poller
+     */
+    public static final long DEFAULT_KEEP_CHANGES = 10000;
+
+    private static final RowMapper<Change> CHANGE_MAPPER = new RowMapper<Change>() {
+        @Override
+        public Change mapRow(ResultSet rs) throws SQLException {
+            return new Change(rs.getLong("SEQ"), "R".equals(rs.getString("ENTITY")),
+                    rs.getLong("ENTITY_ID"), rs.getLong("RECIPE_ID"));
+        }
+    };
+
+    private static final RowMapper<Long> LONG_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            long value = rs.getLong(1);
+            return rs.wasNull() ? null : value;
+        }
+    };
+
+    private final JdbcTemplate jdbc;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+    private final TreeSet<Long> missing = new TreeSet<Long>();
+    private long lastSeq = -1;
+    private int maxChanges = DEFAULT_MAX_CHANGES;
+    private long keepChanges = DEFAULT_KEEP_CHANGES;
+    private ScheduledExecutorService executor;
+
+    public ChangeLogPoller(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    public ChangeLogPoller(JdbcTemplate jdbc) {
+        if (jdbc == null) {
+            throw new IllegalArgumentException("jdbc template is null");
+        }
+        this.jdbc = jdbc;
+    }
+
+    public void addListener(ChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param maxChanges number of changes of one poll, which are passed to
+     *        listeners one by one, allChanged is called for more changes
+     */
+    public synchronized void setMaxChanges(int maxChanges) {
+        if (maxChanges < 1) {
+            throw new IllegalArgumentException("max changes has to be possitive");
+        }
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * @param keepChanges number of the last changes, which are kept in the
+     *        log, when it is pruned by started poller
+     */
+    public synchronized void setKeepChanges(long keepChanges) {
+        if (keepChanges < 1) {
+            throw new IllegalArgumentException("at least one change has to be kept");
+        }
+        this.keepChanges = keepChanges;
+    }
+
+    private synchronized long getKeepChanges() {
+        return keepChanges;
+    }
+
+    /**
+     * @return sequence number of the last change passed to listeners, -1 before the first poll
+     */
+    public synchronized long getLastSequence() {
+        return lastSeq;
+    }
+
+    /**
+     * passes changes appended since the last poll to listeners, the first poll
+     * only finds the end of the log, more than maxChanges changes are passed
+     * as one call of allChanged
+     * @return number of read changes
+     * @throws ServiceFailureException when reading of the log fails
+     */
+    public synchronized int poll() throws ServiceFailureException {
+        if (lastSeq < 0) {
+            skipToEnd();
+            return 0;
+        }
+        if (!isComplete(lastSeq)) {
+            logger.log(Level.WARNING, "Changes after {0} were pruned before they were read", lastSeq);
+            skipToEnd();
+            for (ChangeListener listener : listeners) {
+                listener.allChanged();
+            }
+            return 0;
+        }
+
+        List<Change> changes = new ArrayList<Change>();
+        long from = missing.isEmpty() ? lastSeq : missing.first() - 1;
+        for (Change change : readChanges(from)) {
+            if (change.getSeq() > lastSeq || missing.contains(change.getSeq())) {
+                changes.add(change);
+            }
+        }
+        if (changes.size() > maxChanges) {
+            logger.log(Level.INFO, "{0} changes are passed to listeners as change of all", changes.size());
+            for (Change change : changes) {
+                read(change.getSeq());
+            }
+            forgetOldMissing();
+            for (ChangeListener listener : listeners) {
+                listener.allChanged();
+            }
+            return changes.size();
+        }
+
+        for (Change change : changes) {
+            read(change.getSeq());
+            for (ChangeListener listener : listeners) {
+                if (change.isRecipe()) {
+                    listener.recipeChanged(change.getEntityId());
+                } else {
+                    listener.ingredientChanged(change.getEntityId(), change.getRecipeId());
+                }
+            }
+        }
+        forgetOldMissing();
+        return changes.size();
+    }
+
+    /**
+     * marks change as read, numbers skipped before it are remembered as missing
+     */
+    private void read(long seq) {
+        if (seq > lastSeq) {
+            for (long skipped = Math.max(lastSeq + 1, seq - REORDER_WINDOW); skipped < seq; skipped++) {
+                missing.add(skipped);
+            }
+            lastSeq = seq;
+        } else {
+            missing.remove(seq);
+        }
+    }
+
+    private void forgetOldMissing() {
+        missing.headSet(lastSeq - REORDER_WINDOW, true).clear();
+    }
+
+    /**
+     * starts polling in background thread, log is pruned after every poll
+     * @param period delay between polls
+     * @param unit unit of period
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (executor != null) {
+            throw new IllegalStateException("poller is already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "change-log-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                    prune(getKeepChanges());
+                } catch (ServiceFailureException ex) {
+                    // error is logged, next poll tries again
+                } catch (RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Change listener failed", ex);
+                }
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * stops polling started by start
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @param afterSeq sequence number of the last known change
+     * @return changes with greater sequence number ordered by sequence number
+     * @throws ServiceFailureException when reading of the log fails
+     */
+    public List<Change> readChanges(long afterSeq) throws ServiceFailureException {
+        try {
+            return jdbc.query("SELECT SEQ, ENTITY, ENTITY_ID, RECIPE_ID FROM CHANGE_LOG WHERE SEQ > ? ORDER BY SEQ",
+                    CHANGE_MAPPER, afterSeq);
+        } catch (SQLException ex) {
+            String msg = "Error reading changes after " + afterSeq + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * @param afterSeq sequence number of the last known change
+     * @return true when no change after given one was pruned
+     * @throws ServiceFailureException when reading of the log fails
+     */
+    public boolean isComplete(long afterSeq) throws ServiceFailureException {
+        try {
+            Long min = jdbc.queryForObject("SELECT MIN(SEQ) FROM CHANGE_LOG", LONG_MAPPER);
+            // the last change is never pruned, so empty log was never written
+            return min == null || min <= afterSeq + 1;
+        } catch (SQLException ex) {
+            String msg = "Error reading change log from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * removes old changes from the log, the last change is always kept
+     * @param keepChanges number of the last sequence numbers, which are kept
+     * @return number of removed changes
+     * @throws ServiceFailureException when pruning fails
+     */
+    public synchronized int prune(long keepChanges) throws ServiceFailureException {
+        if (keepChanges < 1) {
+            throw new IllegalArgumentException("at least one change has to be kept");
+        }
+        try {
+            long bound = getMaxSequence() - keepChanges;
+            // skipped numbers of pruned changes cannot be read anymore
+            missing.headSet(bound, true).clear();
+            return jdbc.update("DELETE FROM CHANGE_LOG WHERE SEQ <= ?", bound);
+        } catch (SQLException ex) {
+            String msg = "Error pruning change log";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * moves to the end of the log without passing changes to listeners
+     */
+    private void skipToEnd() throws ServiceFailureException {
+        long end = getMaxSequence();
+        missing.clear();
+        lastSeq = -1;
+        for (Change change : readChanges(Math.max(0, end - REORDER_WINDOW))) {
+            // changes committed meanwhile are passed by the next poll
+            if (change.getSeq() <= end) {
+                if (lastSeq < 0) {
+                    // numbers before the first read change may be pruned already
+                    lastSeq = change.getSeq();
+                } else {
+                    read(change.getSeq());
+                }
+            }
+        }
+        lastSeq = Math.max(lastSeq, end);
+    }
+
+    private long getMaxSequence() throws ServiceFailureException {
+        try {
+            Long max = jdbc.queryForObject("SELECT MAX(SEQ) FROM CHANGE_LOG", LONG_MAPPER);
+            return max == null ? 0 : max;
+        } catch (SQLException ex) {
+            String msg = "Error reading change log from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * one change read from the log
+     */
+    public static final class Change {
+
+        private final long seq;
+        private final boolean recipe;
+        private final long entityId;
+        private final long recipeId;
+
+        Change(long seq, boolean recipe, long entityId, long recipeId) {
+            this.seq = seq;
+            this.recipe = recipe;
+            this.entityId = entityId;
+            this.recipeId = recipeId;
+        }
+
+        /** @return sequence number of the change */
+        public long getSeq() {return seq;}
+        /** @return true for change of recipe, false for change of ingredient */
+        public boolean isRecipe() {return recipe;}
+        /** @return id of changed recipe or ingredient */
+        public long getEntityId() {return entityId;}
+        /** @return id of changed recipe or recipe of changed ingredient */
+        public long getRecipeId() {return recipeId;}
+
+        @Override
+        public String toString() {
+            return seq + ": " + (recipe ? "recipe " : "ingredient ") + entityId;
+        }
+    }
+}
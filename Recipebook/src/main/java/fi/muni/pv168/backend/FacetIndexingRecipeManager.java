@@ -0,0 +1,226 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * recipe manager, which answers searches by type, category and cooking time
+ * from RecipeFacetIndex, found recipes are loaded by findRecipeById of wrapped
+ * manager, so it should keep recipes in cache, the index is kept in sync with
+ * writes made by this manager and with changes passed by ChangeLogPoller,
+ * other methods are passed to wrapped manager
+ * <p>
+ * ChangeLogPoller passes changes to listeners in order of registration, so
+ * this manager has to be registered after caches of the wrapped manager,
+ * otherwise changed recipes would be read from stale cache
+ *
+ * @author mulan
+ */
+public class FacetIndexingRecipeManager extends ForwardingRecipeManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            FacetIndexingRecipeManager.class.getName());
+
+    private final RecipeFacetIndex index = new RecipeFacetIndex();
+    private final Object lock = new Object();
+
+    /**
+     * constructor, index is not used until buildIndex is called
+     * @param recipeManager wrapped manager
+     */
+    public FacetIndexingRecipeManager(RecipeManager recipeManager) {
+        super(recipeManager);
+    }
+
+    /**
+     * @return index maintained by this manager, it answers facet counts
+     */
+    public RecipeFacetIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * builds the index by one pass through recipe table, writes wait until
+     * the index is built
+     * @return number of indexed recipes
+     * @throws ServiceFailureException when reading of recipes fails
+     */
+    public long buildIndex() throws ServiceFailureException {
+        long count;
+        synchronized (lock) {
+            count = index.build(recipeManager);
+        }
+        if (index.isReady()) {
+            logger.log(Level.INFO, "Facet index of {0} recipes built", count);
+        } else {
+            logger.log(Level.WARNING, "Recipe IDs are too big for facet index, it is not used");
+        }
+        return count;
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        synchronized (lock) {
+            if (!index.isReady()) {
+                return;
+            }
+            try {
+                putIntoIndex(recipeManager.findRecipeById(recipeId));
+            } catch (IllegalArgumentException ex) {
+                index.remove(recipeId);
+            } catch (ServiceFailureException ex) {
+                invalidate(ex);
+            }
+        }
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        // ingredients are not indexed
+    }
+
+    @Override
+    public void allChanged() {
+        index.setReady(false);
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.createRecipe(recipe);
+            if (index.isReady()) {
+                putIntoIndex(recipe);
+            }
+        }
+    }
+
+    @Override
+    public void updateRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.updateRecipe(recipe);
+            if (index.isReady()) {
+                putIntoIndex(recipe);
+            }
+        }
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.deleteRecipe(recipe);
+            index.remove(recipe.getId());
+        }
+    }
+
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.deleteRecipeCascade(id);
+            index.remove(id);
+        }
+    }
+
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        synchronized (lock) {
+            int deleted = recipeManager.deleteRecipesCascade(ids);
+            for (Long id : ids) {
+                if (id != null) {
+                    index.remove(id);
+                }
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByType(MealType type) throws ServiceFailureException {
+        if (type == null) {
+            return recipeManager.findRecipesByType(type);
+        }
+        long[] ids = index.findRecipeIds(new RecipeQuery().type(type));
+        if (ids == null) {
+            return recipeManager.findRecipesByType(type);
+        }
+        return loadRecipes(ids, new TreeSet<Recipe>());
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCategory(MealCategory category) throws ServiceFailureException {
+        if (category == null) {
+            return recipeManager.findRecipesByCategory(category);
+        }
+        long[] ids = index.findRecipeIds(new RecipeQuery().category(category));
+        if (ids == null) {
+            return recipeManager.findRecipesByCategory(category);
+        }
+        return loadRecipes(ids, new TreeSet<Recipe>());
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCookingTime(int fromTime, int toTime) throws ServiceFailureException {
+        if (fromTime < 0 || toTime < fromTime) {
+            return recipeManager.findRecipesByCookingTime(fromTime, toTime);
+        }
+        long[] ids = index.findRecipeIds(new RecipeQuery().cookingTime(fromTime, toTime));
+        if (ids == null) {
+            return recipeManager.findRecipesByCookingTime(fromTime, toTime);
+        }
+        return loadRecipes(ids, new TreeSet<Recipe>());
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesUptoCookingTime(int toTime) throws ServiceFailureException {
+        return findRecipesByCookingTime(0, toTime);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesFromCookingTime(int fromTime) throws ServiceFailureException {
+        return findRecipesByCookingTime(fromTime, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Recipe> findRecipes(RecipeQuery recipeQuery) throws ServiceFailureException {
+        if (recipeQuery == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        long[] ids = index.findRecipeIds(recipeQuery);
+        if (ids == null) {
+            return recipeManager.findRecipes(recipeQuery);
+        }
+        return loadRecipes(ids, new ArrayList<Recipe>(ids.length));
+    }
+
+    /**
+     * loads recipes of given IDs into given collection, recipes deleted by
+     * other applications, which were not passed by ChangeLogPoller yet, are skipped
+     */
+    private <T extends Collection<Recipe>> T loadRecipes(long[] ids, T recipes) throws ServiceFailureException {
+        for (long id : ids) {
+            try {
+                recipes.add(recipeManager.findRecipeById(id));
+            } catch (IllegalArgumentException ex) {
+                // deleted recipe is removed from the index, when its change is read
+            }
+        }
+        return recipes;
+    }
+
+    private void putIntoIndex(Recipe recipe) {
+        if (!index.put(recipe)) {
+            logger.log(Level.WARNING, "ID of {0} is too big for facet index, it is not used", recipe);
+            index.setReady(false);
+        }
+    }
+
+    private void invalidate(ServiceFailureException ex) {
+        logger.log(Level.WARNING, "Facet index is not used until it is built again", ex);
+        index.setReady(false);
+    }
+}
@@ -0,0 +1,83 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * ingredient manager, which passes all calls to wrapped manager, decorators
+ * of ingredient manager override only methods they change
+ *
+ * @author mulan
+ */
+public abstract class ForwardingIngredientManager implements IngredientManager {
+
+    protected final IngredientManager ingredientManager;
+
+    /**
+     * constructor, sets wrapped manager
+     * @param ingredientManager wrapped manager
+     */
+    protected ForwardingIngredientManager(IngredientManager ingredientManager) {
+        if (ingredientManager == null) {
+            throw new IllegalArgumentException("ingredient manager is null");
+        }
+        this.ingredientManager = ingredientManager;
+    }
+
+    @Override
+    public void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        ingredientManager.createIngredient(ingredient, recipeId);
+    }
+
+    @Override
+    public List<Long> createIngredients(Collection<Ingredient> ingredients, long recipeId) throws ServiceFailureException {
+        return ingredientManager.createIngredients(ingredients, recipeId);
+    }
+
+    @Override
+    public void updateIngredient(Ingredient ingredient) throws ServiceFailureException {
+        ingredientManager.updateIngredient(ingredient);
+    }
+
+    @Override
+    public void deleteIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        ingredientManager.deleteIngredient(ingredient, recipeId);
+    }
+
+    @Override
+    public Ingredient getIngredient(Long id) throws ServiceFailureException {
+        return ingredientManager.getIngredient(id);
+    }
+
+    @Override
+    public SortedSet<Long> getRecipeIdsByIngredient(Ingredient ingredient) throws ServiceFailureException {
+        return ingredientManager.getRecipeIdsByIngredient(ingredient);
+    }
+
+    @Override
+    public SortedSet<Long> getRecipeIdsByIngredientName(String ingredientName) throws ServiceFailureException {
+        return ingredientManager.getRecipeIdsByIngredientName(ingredientName);
+    }
+
+    @Override
+    public SortedSet<Ingredient> getIngredientsOfRecipe(long recipeid) throws ServiceFailureException {
+        return ingredientManager.getIngredientsOfRecipe(recipeid);
+    }
+
+    @Override
+    public SortedSet<Ingredient> getAllIngredients() throws ServiceFailureException {
+        return ingredientManager.getAllIngredients();
+    }
+
+    @Override
+    public List<Ingredient> getIngredientsAfter(long lastId, int limit) throws ServiceFailureException {
+        return ingredientManager.getIngredientsAfter(lastId, limit);
+    }
+
+    @Override
+    public long streamAllIngredients(IngredientHandler handler) throws ServiceFailureException {
+        return ingredientManager.streamAllIngredients(handler);
+    }
+}
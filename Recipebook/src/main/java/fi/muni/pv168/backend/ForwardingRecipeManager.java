@@ -0,0 +1,123 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * recipe manager, which passes all calls to wrapped manager, decorators
+ * of recipe manager override only methods they change
+ *
+ * @author mulan
+ */
+public abstract class ForwardingRecipeManager implements RecipeManager {
+
+    protected final RecipeManager recipeManager;
+
+    /**
+     * constructor, sets wrapped manager
+     * @param recipeManager wrapped manager
+     */
+    protected ForwardingRecipeManager(RecipeManager recipeManager) {
+        if (recipeManager == null) {
+            throw new IllegalArgumentException("recipe manager is null");
+        }
+        this.recipeManager = recipeManager;
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.createRecipe(recipe);
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.deleteRecipe(recipe);
+    }
+
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        recipeManager.deleteRecipeCascade(id);
+    }
+
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        return recipeManager.deleteRecipesCascade(ids);
+    }
+
+    @Override
+    public void updateRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.updateRecipe(recipe);
+    }
+
+    @Override
+    public Recipe findRecipeById(Long id) throws ServiceFailureException {
+        return recipeManager.findRecipeById(id);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByName(String name) throws ServiceFailureException {
+        return recipeManager.findRecipesByName(name);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByNamePrefix(String prefix) throws ServiceFailureException {
+        return recipeManager.findRecipesByNamePrefix(prefix);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByType(MealType type) throws ServiceFailureException {
+        return recipeManager.findRecipesByType(type);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCategory(MealCategory category) throws ServiceFailureException {
+        return recipeManager.findRecipesByCategory(category);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByCookingTime(int fromTime, int toTime) throws ServiceFailureException {
+        return recipeManager.findRecipesByCookingTime(fromTime, toTime);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesUptoCookingTime(int toTime) throws ServiceFailureException {
+        return this.findRecipesByCookingTime(0, toTime);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesFromCookingTime(int fromTime) throws ServiceFailureException {
+        return this.findRecipesByCookingTime(fromTime, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByIngredientName(String ingredientName) throws ServiceFailureException {
+        return recipeManager.findRecipesByIngredientName(ingredientName);
+    }
+
+    @Override
+    public SortedSet<Recipe> findAllRecipes() throws ServiceFailureException {
+        return recipeManager.findAllRecipes();
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesAfter(long lastId, int limit) throws ServiceFailureException {
+        return recipeManager.findRecipesAfter(lastId, limit);
+    }
+
+    @Override
+    public long streamAllRecipes(RecipeHandler handler) throws ServiceFailureException {
+        return recipeManager.streamAllRecipes(handler);
+    }
+
+    @Override
+    public List<Recipe> findRecipes(RecipeQuery query) throws ServiceFailureException {
+        return recipeManager.findRecipes(query);
+    }
+
+    @Override
+    public long streamRecipes(RecipeQuery query, RecipeHandler handler) throws ServiceFailureException {
+        return recipeManager.streamRecipes(query, handler);
+    }
+}
@@ -0,0 +1,274 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ingredient manager, which keeps IngredientIndex of ingredient names in
+ * sync with writes made by this manager and with changes passed by
+ * ChangeLogPoller, other methods are passed to wrapped manager
+ * <p>
+ * recipe is removed from posting list of a name, when its last ingredient
+ * of the name is deleted or renamed, ingredients of the recipe are read to
+ * find it out, when the index cannot be updated it stops being used until
+ * buildIndex is called again
+ * <p>
+ * ingredients are read by buildIndex without blocking writes, ingredients
+ * written meanwhile are recorded and indexed again when read contents are
+ * installed
+ *
+ * @author mulan
+ */
+public class IndexingIngredientManager extends ForwardingIngredientManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            IndexingIngredientManager.class.getName());
+
+    private final IngredientIndex index = new IngredientIndex();
+    private final Object lock = new Object();
+    private final Object buildLock = new Object();
+    // ingredients written during build with their recipes, -1 when recipe is not known, guarded by lock
+    private Map<Long, Long> writtenDuringBuild;
+
+    /**
+     * constructor, index is not used until buildIndex is called
+     * @param ingredientManager wrapped manager
+     */
+    public IndexingIngredientManager(IngredientManager ingredientManager) {
+        super(ingredientManager);
+    }
+
+    /**
+     * @return index maintained by this manager
+     */
+    public IngredientIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * builds the index by one pass through ingredient table, writes do not
+     * wait for the build, concurrent builds run one after another
+     * @return number of indexed ingredients
+     * @throws ServiceFailureException when reading of ingredients fails
+     */
+    public long buildIndex() throws ServiceFailureException {
+        IngredientIndex.Contents contents;
+        synchronized (buildLock) {
+            synchronized (lock) {
+                writtenDuringBuild = new LinkedHashMap<Long, Long>();
+            }
+            try {
+                contents = IngredientIndex.read(ingredientManager);
+                synchronized (lock) {
+                    index.install(contents);
+                    reindexWritten();
+                }
+            } finally {
+                synchronized (lock) {
+                    writtenDuringBuild = null;
+                }
+            }
+        }
+        logger.log(Level.INFO, "Index of {0} ingredients with {1} names built",
+                new Object[]{contents.getCount(), index.getNameCount()});
+        return contents.getCount();
+    }
+
+    /**
+     * indexes again ingredients written while the index was read, it is called with lock held
+     */
+    private void reindexWritten() {
+        try {
+            for (Map.Entry<Long, Long> entry : writtenDuringBuild.entrySet()) {
+                long recipeId = entry.getValue();
+                if (recipeId < 0) {
+                    recipeId = index.getRecipeId(entry.getKey());
+                }
+                if (recipeId < 0) {
+                    // updated ingredient was neither read nor created by this manager
+                    invalidate(null);
+                    return;
+                }
+                reindex(entry.getKey(), recipeId);
+            }
+        } catch (ServiceFailureException ex) {
+            invalidate(ex);
+        }
+    }
+
+    /**
+     * records ingredient written while the index is read, it is called with lock held
+     * @param recipeId recipe of the ingredient, -1 when it is not known
+     */
+    private void recordWrite(long ingredientId, long recipeId) {
+        if (writtenDuringBuild != null) {
+            Long known = writtenDuringBuild.get(ingredientId);
+            if (recipeId >= 0 || known == null) {
+                writtenDuringBuild.put(ingredientId, recipeId);
+            }
+        }
+    }
+
+    /**
+     * finds recipes, which have ingredients of all given names
+     * @param names names of ingredients
+     * @return IDs of the recipes, null when the index is not ready
+     */
+    public SortedSet<Long> findRecipeIds(Collection<String> names) {
+        return index.findRecipeIds(names);
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        // ingredients of deleted recipe are logged as deleted ingredients
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        synchronized (lock) {
+            recordWrite(ingredientId, recipeId);
+            if (!index.isReady()) {
+                return;
+            }
+            try {
+                reindex(ingredientId, recipeId);
+            } catch (ServiceFailureException ex) {
+                invalidate(ex);
+            }
+        }
+    }
+
+    @Override
+    public void allChanged() {
+        index.setReady(false);
+    }
+
+    @Override
+    public void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        synchronized (lock) {
+            ingredientManager.createIngredient(ingredient, recipeId);
+            recordWrite(ingredient.getId(), recipeId);
+            if (index.isReady()) {
+                index.put(ingredient.getId(), recipeId, ingredient.getName());
+            }
+        }
+    }
+
+    @Override
+    public List<Long> createIngredients(Collection<Ingredient> ingredients, long recipeId) throws ServiceFailureException {
+        synchronized (lock) {
+            List<Long> ids = ingredientManager.createIngredients(ingredients, recipeId);
+            for (Long id : ids) {
+                recordWrite(id, recipeId);
+            }
+            if (index.isReady()) {
+                Iterator<Long> id = ids.iterator();
+                for (Ingredient ingredient : ingredients) {
+                    index.put(id.next(), recipeId, ingredient.getName());
+                }
+            }
+            return ids;
+        }
+    }
+
+    @Override
+    public void updateIngredient(Ingredient ingredient) throws ServiceFailureException {
+        synchronized (lock) {
+            ingredientManager.updateIngredient(ingredient);
+            recordWrite(ingredient.getId(), -1);
+            if (!index.isReady()) {
+                return;
+            }
+            long recipeId = index.getRecipeId(ingredient.getId());
+            if (recipeId < 0) {
+                // recipe of the ingredient is not known, it is not passed to update
+                invalidate(null);
+                return;
+            }
+            try {
+                putIntoIndex(ingredient.getId(), recipeId, ingredient.getName());
+            } catch (ServiceFailureException ex) {
+                invalidate(ex);
+            }
+        }
+    }
+
+    @Override
+    public void deleteIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        synchronized (lock) {
+            ingredientManager.deleteIngredient(ingredient, recipeId);
+            recordWrite(ingredient.getId(), recipeId);
+            if (!index.isReady()) {
+                return;
+            }
+            try {
+                removeFromIndex(ingredient.getId(), ingredient.getName(), recipeId);
+            } catch (ServiceFailureException ex) {
+                invalidate(ex);
+            }
+        }
+    }
+
+    /**
+     * reads ingredient again and indexes it or forgets it, when it was deleted
+     */
+    private void reindex(long ingredientId, long recipeId) throws ServiceFailureException {
+        Ingredient ingredient;
+        try {
+            ingredient = ingredientManager.getIngredient(ingredientId);
+        } catch (IllegalArgumentException ex) {
+            removeFromIndex(ingredientId, null, recipeId);
+            return;
+        }
+        putIntoIndex(ingredientId, recipeId, ingredient.getName());
+    }
+
+    /**
+     * indexes ingredient under given recipe and name, recipe is removed from
+     * posting list of previous name, if it has no other ingredient of that name
+     */
+    private void putIntoIndex(long ingredientId, long recipeId, String name) throws ServiceFailureException {
+        long oldRecipeId = index.getRecipeId(ingredientId);
+        String oldName = index.getName(ingredientId);
+        if (index.put(ingredientId, recipeId, name) != null) {
+            removeRecipeIfUnused(oldName, oldRecipeId);
+        }
+    }
+
+    /**
+     * forgets ingredient, recipe is removed from posting list of its name,
+     * if it has no other ingredient of that name
+     * @param name name of the ingredient, used when it is not indexed
+     */
+    private void removeFromIndex(long ingredientId, String name, long recipeId) throws ServiceFailureException {
+        String indexedName = index.getName(ingredientId);
+        long indexedRecipeId = index.getRecipeId(ingredientId);
+        index.remove(ingredientId);
+        if (indexedName != null) {
+            removeRecipeIfUnused(indexedName, indexedRecipeId);
+        } else if (name != null) {
+            removeRecipeIfUnused(name, recipeId);
+        }
+    }
+
+    private void removeRecipeIfUnused(String name, long recipeId) throws ServiceFailureException {
+        for (Ingredient ingredient : ingredientManager.getIngredientsOfRecipe(recipeId)) {
+            if (ingredient.getName().equals(name)) {
+                return;
+            }
+        }
+        index.removeRecipe(name, recipeId);
+    }
+
+    private void invalidate(ServiceFailureException ex) {
+        logger.log(Level.WARNING, "Ingredient index is not used until it is built again", ex);
+        index.setReady(false);
+    }
+}
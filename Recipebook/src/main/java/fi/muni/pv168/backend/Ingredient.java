@@ -1,8 +1,12 @@
 package fi.muni.pv168.backend;
 
+import fi.muni.pv168.utils.StringDictionary;
+
 /**
  * class that represents an ingredient
  * it contains name, amount and unit of amount
+ * name and unit are kept as codes of shared dictionaries, so equal names
+ * are the same string instance and comparisons compare integers first
  * @date 5.3.2013
  * @author Mimo
  */
@@ -12,9 +16,9 @@ public class Ingredient implements Comparable<Ingredient> {
      *  name of the ingredient, amount of it, unit of the amount
      */
     private Long id;
-    private String name;
+    private int nameCode = StringDictionary.NULL_CODE;
     private double amount;
-    private String unit;  
+    private int unitCode = StringDictionary.NULL_CODE;
     
     /**
      * parameterless constructor
@@ -26,9 +30,9 @@ public class Ingredient implements Comparable<Ingredient> {
      * @param ingredient copy from 
      */
     public Ingredient(Ingredient ingredient) {
-        this.name = ingredient.getName();
+        this.nameCode = ingredient.nameCode;
         this.amount = ingredient.getAmount();
-        this.unit = ingredient.getUnit();
+        this.unitCode = ingredient.unitCode;
     }
     
     /**
@@ -42,9 +46,9 @@ public class Ingredient implements Comparable<Ingredient> {
             throw new IllegalArgumentException("wrong attributes in Ingredient constructor");
         }
         this.id = null;
-        this.name = name;
+        this.nameCode = StringDictionary.INGREDIENT_NAMES.code(name);
         this.amount = amount;
-        this.unit = unit;
+        this.unitCode = StringDictionary.UNITS.code(unit);
     }
     
     /**
@@ -58,12 +62,12 @@ public class Ingredient implements Comparable<Ingredient> {
         this.id = id;
     } 
     
-    public String getName() {return name;}
+    public String getName() {return StringDictionary.INGREDIENT_NAMES.valueOf(nameCode);}
     public void setName(String name) {
         if ((name == null)||(name.equals(""))) {
             throw new IllegalArgumentException("name cannot be null");
         }
-        this.name = name;
+        this.nameCode = StringDictionary.INGREDIENT_NAMES.code(name);
     }
     
     public double getAmount() {return amount;}
@@ -73,20 +77,21 @@ public class Ingredient implements Comparable<Ingredient> {
         }
         this.amount = amount;}
     
-    public String getUnit() {return unit;}
+    public String getUnit() {return StringDictionary.UNITS.valueOf(unitCode);}
     public void setUnit(String unit) {
         if ((unit == null)||(unit.equals(""))) {
             throw new IllegalArgumentException("unit cannot be null");
         }
-        this.unit = unit;
+        this.unitCode = StringDictionary.UNITS.code(unit);
     }
 
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 53 * hash + (this.name != null ? this.name.hashCode() : 0);
+        // equal codes mean equal strings, so hash of codes is consistent with equals
+        hash = 53 * hash + this.nameCode;
         hash = 53 * hash + (int) (Double.doubleToLongBits(this.amount) ^ (Double.doubleToLongBits(this.amount) >>> 32));
-        hash = 53 * hash + (this.unit != null ? this.unit.hashCode() : 0);
+        hash = 53 * hash + this.unitCode;
         return hash;
     }
 
@@ -99,13 +104,13 @@ public class Ingredient implements Comparable<Ingredient> {
             return false;
         }
         final Ingredient other = (Ingredient) obj;
-        if ((this.name == null) ? (other.name != null) : !this.name.equals(other.name)) {
+        if (this.nameCode != other.nameCode) {
             return false;
         }
         if (Double.doubleToLongBits(this.amount) != Double.doubleToLongBits(other.amount)) {
             return false;
         }
-        if ((this.unit == null) ? (other.unit != null) : !this.unit.equals(other.unit)) {
+        if (this.unitCode != other.unitCode) {
             return false;
         }
         return true;
@@ -114,21 +119,18 @@ public class Ingredient implements Comparable<Ingredient> {
     @Override
     public String toString() {
         //return "Ingredient{" + "name=" + name + ", amount=" + amount + ", unit=" + unit + '}';
-        return name + " " + amount + " " + unit;
+        return getName() + " " + amount + " " + getUnit();
     }
     
     @Override
     public int compareTo(Ingredient o) {
-        int diff = this.getName().compareTo(o.getName());
-        if (diff != 0) {
-            return diff;
+        // strings are compared only when they differ, order stays alphabetical
+        if (this.nameCode != o.nameCode) {
+            return this.getName().compareTo(o.getName());
+        } else if (this.unitCode != o.unitCode) {
+            return this.getUnit().compareTo(o.getUnit());
         } else {
-            diff = this.getUnit().compareTo(o.getUnit());
-            if (diff != 0) {
-                return diff;
-            } else {
-                return new Double(this.getAmount()).compareTo(new Double(o.getAmount()));
-            }
+            return Double.compare(this.getAmount(), o.getAmount());
         }
     }  
 }
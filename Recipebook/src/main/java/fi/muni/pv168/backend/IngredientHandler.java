@@ -0,0 +1,18 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+
+/**
+ * callback for ingredients streamed from database one by one
+ * @author mulan
+ */
+public interface IngredientHandler {
+
+    /**
+     * handles one ingredient read from database
+     * @param ingredient ingredient read from database
+     * @param recipeId id of the recipe ingredient belongs to
+     * @throws ServiceFailureException when handling fails, streaming is stopped
+     */
+    void handle(Ingredient ingredient, long recipeId) throws ServiceFailureException;
+}
@@ -0,0 +1,306 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.CompletionTrie;
+import fi.muni.pv168.utils.FuzzyDictionary;
+import fi.muni.pv168.utils.LongHashMap;
+import fi.muni.pv168.utils.NameNormalizer;
+import fi.muni.pv168.utils.PostingList;
+import fi.muni.pv168.utils.StringDictionary;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * inverted index from ingredient names to IDs of recipes using them, names
+ * are keyed by their codes in StringDictionary.INGREDIENT_NAMES and recipe
+ * IDs are kept in compressed posting lists, recipe and name of every
+ * indexed ingredient are kept too, so ingredients can be moved and removed,
+ * names are kept in CompletionTrie weighted by number of their ingredients
+ * too, so most used names are suggested first, and in FuzzyDictionary,
+ * which finds names similar to misspelled ones
+ * <p>
+ * index is maintained by IndexingIngredientManager, it is not used until
+ * it is built
+ *
+ * @author mulan
+ */
+public class IngredientIndex {
+
+    /**
+     * biggest edit distance of similar names
+     */
+    public static final int MAX_EDIT_DISTANCE = 2;
+
+    private final Map<Integer, PostingList> postings = new HashMap<Integer, PostingList>();
+    // recipe and name code of every indexed ingredient
+    private LongHashMap ingredientRecipes = new LongHashMap();
+    private LongHashMap ingredientNames = new LongHashMap();
+    private CompletionTrie completions = new CompletionTrie();
+    private FuzzyDictionary similarNames = new FuzzyDictionary(MAX_EDIT_DISTANCE);
+    private boolean ready;
+
+    /**
+     * @return true when the index was built and was not invalidated since then
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    synchronized void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * removes all ingredients, index is not used until it is built again
+     */
+    public synchronized void clear() {
+        postings.clear();
+        ingredientRecipes.clear();
+        ingredientNames.clear();
+        completions = new CompletionTrie();
+        similarNames = new FuzzyDictionary(MAX_EDIT_DISTANCE);
+        ready = false;
+    }
+
+    /**
+     * @return number of indexed ingredients
+     */
+    public synchronized int size() {
+        return ingredientRecipes.size();
+    }
+
+    /**
+     * @return number of distinct indexed names
+     */
+    public synchronized int getNameCount() {
+        return postings.size();
+    }
+
+    /**
+     * @return number of bytes taken by encoded posting lists
+     */
+    public synchronized long getEncodedSize() {
+        long bytes = 0;
+        for (PostingList list : postings.values()) {
+            bytes += list.getEncodedSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * finds recipes, which have ingredients of all given names, by
+     * intersection of posting lists starting with the shortest one
+     * @param names names of ingredients
+     * @return IDs of the recipes, null when the index is not ready
+     */
+    public synchronized SortedSet<Long> findRecipeIds(Collection<String> names) {
+        if (!ready) {
+            return null;
+        }
+        SortedSet<Long> result = new TreeSet<Long>();
+        PostingList[] lists = new PostingList[names.size()];
+        int i = 0;
+        for (String name : names) {
+            // name is only looked up, so searched names are not added to the dictionary
+            int code = StringDictionary.INGREDIENT_NAMES.find(name);
+            PostingList list = code == StringDictionary.NULL_CODE ? null : postings.get(code);
+            if (list == null) {
+                return result;
+            }
+            lists[i++] = list;
+        }
+        for (long id : PostingList.intersect(lists)) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * suggests ingredient names starting with given prefix, case and accents are ignored
+     * @param prefix beginning of the name
+     * @param k maximal number of suggestions
+     * @return names used by most ingredients first, null when the index is not ready
+     */
+    public synchronized List<String> suggest(String prefix, int k) {
+        if (!ready) {
+            return null;
+        }
+        return completions.complete(NameNormalizer.normalize(prefix), k);
+    }
+
+    /**
+     * finds ingredient names within given edit distance of given name,
+     * case and accents are ignored, so "cibula" finds "Cibuľa"
+     * @param name possibly misspelled name
+     * @param maxDistance biggest distance of found names, at most MAX_EDIT_DISTANCE
+     * @return closest names first, names used by more ingredients first
+     *         among names of the same distance, null when the index is not ready
+     */
+    public synchronized List<String> findSimilarNames(String name, int maxDistance) {
+        if (!ready) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        for (FuzzyDictionary.Match match : similarNames.lookup(NameNormalizer.normalize(name), maxDistance)) {
+            result.add(match.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * indexes ingredient or moves already indexed ingredient to given recipe and name
+     * @param ingredientId ID of the ingredient
+     * @param recipeId ID of its recipe
+     * @param name name of the ingredient
+     * @return previous name of the ingredient, when it was indexed with another name or recipe, null otherwise
+     */
+    synchronized String put(long ingredientId, long recipeId, String name) {
+        int code = StringDictionary.INGREDIENT_NAMES.code(name);
+        long oldRecipeId = ingredientRecipes.get(ingredientId);
+        int oldCode = (int) ingredientNames.get(ingredientId);
+        String previous = null;
+        if (oldRecipeId >= 0 && (oldRecipeId != recipeId || oldCode != code)) {
+            previous = StringDictionary.INGREDIENT_NAMES.valueOf(oldCode);
+        }
+        if (oldRecipeId < 0 || oldCode != code) {
+            if (oldRecipeId >= 0) {
+                addName(completions, similarNames, previous, -1);
+            }
+            addName(completions, similarNames, name, 1);
+        }
+        ingredientRecipes.put(ingredientId, recipeId);
+        ingredientNames.put(ingredientId, code);
+
+        PostingList list = postings.get(code);
+        if (list == null) {
+            list = new PostingList();
+            postings.put(code, list);
+        }
+        list.add(recipeId);
+        return previous;
+    }
+
+    /**
+     * @return recipe of indexed ingredient, -1 when it is not indexed
+     */
+    synchronized long getRecipeId(long ingredientId) {
+        return ingredientRecipes.get(ingredientId);
+    }
+
+    /**
+     * @return name of indexed ingredient, null when it is not indexed
+     */
+    synchronized String getName(long ingredientId) {
+        long code = ingredientNames.get(ingredientId);
+        return code < 0 ? null : StringDictionary.INGREDIENT_NAMES.valueOf((int) code);
+    }
+
+    /**
+     * forgets ingredient, its recipe stays in posting list of its name,
+     * until removeRecipe is called
+     */
+    synchronized void remove(long ingredientId) {
+        long code = ingredientNames.get(ingredientId);
+        if (code >= 0) {
+            String name = StringDictionary.INGREDIENT_NAMES.valueOf((int) code);
+            addName(completions, similarNames, name, -1);
+        }
+        ingredientRecipes.remove(ingredientId);
+        ingredientNames.remove(ingredientId);
+    }
+
+    /**
+     * removes recipe from posting list of given name, it is called when
+     * the recipe does not have any ingredient of the name anymore
+     */
+    synchronized void removeRecipe(String name, long recipeId) {
+        int code = StringDictionary.INGREDIENT_NAMES.find(name);
+        PostingList list = postings.get(code);
+        if (list != null) {
+            list.remove(recipeId);
+            if (list.isEmpty()) {
+                postings.remove(code);
+            }
+        }
+    }
+
+    /**
+     * reads all ingredients by one pass of given manager into new contents
+     * of the index, recipe IDs of every name are collected and sorted, so
+     * posting lists are encoded by appending only, the index is not locked
+     * and not changed while ingredients are read
+     * @param source manager to read ingredients from
+     * @return contents to be installed
+     * @throws ServiceFailureException when reading of ingredients fails
+     */
+    static Contents read(IngredientManager source) throws ServiceFailureException {
+        final Contents contents = new Contents();
+        final Map<Integer, PostingList.Builder> builders = new HashMap<Integer, PostingList.Builder>();
+        contents.count = source.streamAllIngredients(new IngredientHandler() {
+            @Override
+            public void handle(Ingredient ingredient, long recipeId) {
+                int code = StringDictionary.INGREDIENT_NAMES.code(ingredient.getName());
+                contents.ingredientRecipes.put(ingredient.getId(), recipeId);
+                contents.ingredientNames.put(ingredient.getId(), code);
+                addName(contents.completions, contents.similarNames, ingredient.getName(), 1);
+                PostingList.Builder builder = builders.get(code);
+                if (builder == null) {
+                    builder = new PostingList.Builder();
+                    builders.put(code, builder);
+                }
+                builder.add(recipeId);
+            }
+        });
+
+        for (Map.Entry<Integer, PostingList.Builder> entry : builders.entrySet()) {
+            contents.postings.put(entry.getKey(), entry.getValue().build());
+        }
+        return contents;
+    }
+
+    /**
+     * replaces contents of the index by read ones, index is ready after that
+     * @param contents contents returned by read
+     */
+    synchronized void install(Contents contents) {
+        postings.clear();
+        postings.putAll(contents.postings);
+        ingredientRecipes = contents.ingredientRecipes;
+        ingredientNames = contents.ingredientNames;
+        completions = contents.completions;
+        similarNames = contents.similarNames;
+        ready = true;
+    }
+
+    private static void addName(CompletionTrie trie, FuzzyDictionary dictionary, String name, long delta) {
+        String normalized = NameNormalizer.normalize(name);
+        String value = delta > 0 ? name : null;
+        trie.add(normalized, value, delta);
+        dictionary.add(normalized, value, delta);
+    }
+
+    /**
+     * contents of the index read from database, they are not shared until installed
+     */
+    static final class Contents {
+
+        private final Map<Integer, PostingList> postings = new HashMap<Integer, PostingList>();
+        private final LongHashMap ingredientRecipes = new LongHashMap();
+        private final LongHashMap ingredientNames = new LongHashMap();
+        private final CompletionTrie completions = new CompletionTrie();
+        private final FuzzyDictionary similarNames = new FuzzyDictionary(MAX_EDIT_DISTANCE);
+        private long count;
+
+        /**
+         * @return number of read ingredients
+         */
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package fi.muni.pv168.backend;
 
 import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.List;
 import java.util.SortedSet;
 
 /**
@@ -17,6 +19,15 @@ public interface IngredientManager {
      */
     void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException;
     
+    /**
+     * create all given ingredients in one transaction, adds them to the recipe
+     * @param ingredients ingredients you want to create
+     * @param recipeId recipe, you want to add ingredients into
+     * @return generated ids of created ingredients, in iteration order of ingredients
+     * @throws ServiceFailureException problem with database
+     */
+    List<Long> createIngredients(Collection<Ingredient> ingredients, long recipeId) throws ServiceFailureException;
+    
     /**
      * update ingredient with new one
      * @param ingredient ingredient you want to update
@@ -71,4 +82,24 @@ public interface IngredientManager {
      */
     SortedSet<Ingredient> getAllIngredients() throws ServiceFailureException;
     
+    /**
+     * returns one page of ingredients ordered by ID, pages are addressed by the last ID
+     * of previous page, so every page costs the same
+     * @param lastId ID of the last ingredient of previous page, 0 for the first page
+     * @param limit maximal number of ingredients in the page
+     * @return at most limit ingredients with ID greater than lastId, ordered by ID
+     * @throws ServiceFailureException problem with database
+     */
+    List<Ingredient> getIngredientsAfter(long lastId, int limit) throws ServiceFailureException;
+    
+    /**
+     * reads all ingredients by forward-only cursor and passes them one by one to the handler
+     * together with id of their recipe, ingredients are not collected,
+     * ingredients of one recipe come one after another
+     * @param handler handler of read ingredients
+     * @return number of handled ingredients
+     * @throws ServiceFailureException problem with database
+     */
+    long streamAllIngredients(IngredientHandler handler) throws ServiceFailureException;
+    
 }
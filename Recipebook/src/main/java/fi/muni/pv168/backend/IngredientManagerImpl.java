@@ -3,11 +3,16 @@ package fi.muni.pv168.backend;
 import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import fi.muni.pv168.utils.JdbcSession;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.RowCallback;
+import fi.muni.pv168.utils.RowMapper;
+import fi.muni.pv168.utils.SessionCallback;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -23,7 +28,25 @@ public class IngredientManagerImpl implements IngredientManager {
 
     private static final Logger logger = Logger.getLogger(
             IngredientManagerImpl.class.getName());
-    private DataSource dataSource;
+    private static final int DEFAULT_FETCH_SIZE = 100;
+    private static final RowMapper<Ingredient> INGREDIENT_MAPPER = new RowMapper<Ingredient>() {
+        @Override
+        public Ingredient mapRow(ResultSet rs) throws SQLException {
+            Ingredient ingredient = rowToIngredient(rs);
+            validate(ingredient);
+            return ingredient;
+        }
+    };
+    private static final RowMapper<Long> RECIPE_ID_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            return rs.getLong("RECIPEID");
+        }
+    };
+    private static final String INSERT_INGREDIENT =
+            "INSERT INTO INGREDIENTS (NAME, AMOUNT, UNIT, RECIPEID) VALUES(?, ?, ?, ?)";
+    private JdbcTemplate jdbc;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
 
     /**
      * constructor, sets given data source
@@ -31,7 +54,29 @@ public class IngredientManagerImpl implements IngredientManager {
      * @param dataSource given data source
      */
     public IngredientManagerImpl(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * constructor, statements are executed by given template, so more managers
+     * may share its statement timings
+     *
+     * @param jdbc given template
+     */
+    public IngredientManagerImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * sets number of rows fetched from database at once by streaming methods
+     *
+     * @param fetchSize number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size has to be possitive");
+        }
+        this.fetchSize = fetchSize;
     }
     
     @Override
@@ -39,40 +84,63 @@ public class IngredientManagerImpl implements IngredientManager {
         checkDataSource();
         validate(ingredient);
 
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-
-            connection.setAutoCommit(false);
+            long newId = jdbc.insert(INSERT_INGREDIENT,
+                    ingredient.getName(), ingredient.getAmount(), ingredient.getUnit(), recipeId);
 
-            query = connection.prepareStatement(
-                    "INSERT INTO INGREDIENTS (NAME, AMOUNT, UNIT, RECIPEID) VALUES(?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-
-            query.setString(1, ingredient.getName());
-            query.setDouble(2, ingredient.getAmount());
-            query.setString(3, ingredient.getUnit());
-            query.setLong(4, recipeId);
+            ingredient.setId(newId);
+        } catch (SQLException ex) {
+            String msg = "Error when inserting ingredent into DB " + ingredient + recipeId;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
 
-            int count = query.executeUpdate();
+    @Override
+    public List<Long> createIngredients(final Collection<Ingredient> ingredients, final long recipeId) throws ServiceFailureException {
+        checkDataSource();
 
-            DBUtils.checkUpdatesCount(count, true);
+        if (ingredients == null) {
+            throw new IllegalArgumentException("ingredients are null");
+        }
+        for (Ingredient ingredient : ingredients) {
+            validate(ingredient);
+        }
 
-            long newId = DBUtils.getId(query.getGeneratedKeys());
+        List<Long> ids = new ArrayList<Long>(ingredients.size());
+        if (ingredients.isEmpty()) {
+            return ids;
+        }
 
-            ingredient.setId(newId);
+        final List<Object[]> rows = new ArrayList<Object[]>(ingredients.size());
+        for (Ingredient ingredient : ingredients) {
+            rows.add(new Object[] {ingredient.getName(), ingredient.getAmount(), ingredient.getUnit(), recipeId});
+        }
 
-            connection.commit();
+        try {
+            ids = jdbc.executeInTransaction(new SessionCallback<List<Long>>() {
+                @Override
+                public List<Long> doInSession(JdbcSession session) throws SQLException, ServiceFailureException {
+                    // Derby reports only the key of the last row of a batch, so
+                    // ingredients are inserted one by one to get their keys
+                    List<Long> ids = new ArrayList<Long>(rows.size());
+                    for (Object[] row : rows) {
+                        ids.add(session.insert(INSERT_INGREDIENT, row));
+                    }
+                    return ids;
+                }
+            });
         } catch (SQLException ex) {
-            String msg = "Error when inserting ingredent into DB " + ingredient + recipeId;
+            String msg = "Error when inserting ingredients into DB " + ingredients + recipeId;
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, query);
         }
+
+        int i = 0;
+        for (Ingredient ingredient : ingredients) {
+            ingredient.setId(ids.get(i++));
+        }
+        return ids;
     }
 
     @Override
@@ -84,35 +152,16 @@ public class IngredientManagerImpl implements IngredientManager {
             throw new InvalidEntityException("ingredient id is null");
         }
 
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-
-            connection.setAutoCommit(false);
-
-            query = connection.prepareStatement(
-                    "UPDATE INGREDIENTS SET NAME = ?, AMOUNT = ?, UNIT = ? WHERE ID = ?");
-
-            query.setString(1, ingredient.getName());
-            query.setDouble(2, ingredient.getAmount());
-            query.setString(3, ingredient.getUnit());
-            query.setString(4, ingredient.getId().toString());
-
-            int count = query.executeUpdate();
+            int count = jdbc.update("UPDATE INGREDIENTS SET NAME = ?, AMOUNT = ?, UNIT = ? WHERE ID = ?",
+                    ingredient.getName(), ingredient.getAmount(), ingredient.getUnit(), ingredient.getId());
 
             DBUtils.checkUpdatesCount(count, false);
 
-            connection.commit();
-
         } catch (SQLException ex) {
             String msg = "Error when updating ingredient in the db " + ingredient;
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, query);
         }
     }
 
@@ -130,32 +179,15 @@ public class IngredientManagerImpl implements IngredientManager {
 
         checkDataSource();
 
-        Connection connection = null;
-        PreparedStatement querry = null;
-
         try {
-            connection = dataSource.getConnection();
-
-            connection.setAutoCommit(false);
-
-            querry = connection.prepareStatement(
-                    "DELETE FROM INGREDIENTS WHERE ID = ?");
-
-            querry.setLong(1, ingredient.getId());
-
-            int count = querry.executeUpdate();
+            int count = jdbc.update("DELETE FROM INGREDIENTS WHERE ID = ?", ingredient.getId());
 
             DBUtils.checkUpdatesCount(count, false);
 
-            connection.commit();
-
         } catch (SQLException ex) {
             String msg = "Error when updating ingredient in the db";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, querry);
         }
     }
 
@@ -167,71 +199,33 @@ public class IngredientManagerImpl implements IngredientManager {
             throw new IllegalArgumentException();
         }
 
-        Connection con = null;
-        PreparedStatement query = null;
+        Ingredient output;
         try {
-            con = dataSource.getConnection();
-            con.setAutoCommit(false);
-            query = con.prepareStatement(
-                    "SELECT * FROM INGREDIENTS WHERE ID = ?");
-            query.setLong(1, id);
-
-            ResultSet resultDB = query.executeQuery();
-
-            boolean b = resultDB.next();
-
-            if (!b) {
-                throw new IllegalArgumentException();
-            }
-
-            Ingredient output = rowToIngredient(resultDB);
-            validate(output);
-            con.commit();
-            return output;
+            output = jdbc.queryForObject("SELECT * FROM INGREDIENTS WHERE ID = ?", INGREDIENT_MAPPER, id);
         } catch (SQLException ex) {
             String msg = "Error getting ingredient for ID " + id + " from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
         }
+
+        if (output == null) {
+            throw new IllegalArgumentException();
+        }
+        return output;
     }
 
     @Override
     public SortedSet<Ingredient> getIngredientsOfRecipe(long recipeid) throws ServiceFailureException {
         checkDataSource();
         
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-            connection.setAutoCommit(false);
-            query = connection.prepareStatement("SELECT * FROM INGREDIENTS WHERE RECIPEID = ?");
-
-            query.setLong(1, recipeid);
-
-            ResultSet resultsDB = query.executeQuery();
-
-            SortedSet<Ingredient> result = new TreeSet<Ingredient>();
-            while (resultsDB.next()) {
-                Ingredient output = rowToIngredient(resultsDB);
-                validate(output);
-
-                result.add(output);
-            }
-            connection.commit();
-            return result;
+            return new TreeSet<Ingredient>(jdbc.query("SELECT * FROM INGREDIENTS WHERE RECIPEID = ?",
+                    INGREDIENT_MAPPER, recipeid));
 
         } catch (SQLException ex) {
             String msg = "Error getting ingredient for recipe id " + recipeid + " from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, query);
         }
     }
     
@@ -240,35 +234,14 @@ public class IngredientManagerImpl implements IngredientManager {
         checkDataSource();
         validate(ingredient);
 
-        Connection con = null;
-        PreparedStatement query = null;
-        SortedSet<Long> ids = new TreeSet<Long>();
         try {
-            con = dataSource.getConnection();
-            con.setAutoCommit(false);
-            ResultSet resultsDB;
-           
-            query = con.prepareStatement(
-                    "SELECT RECIPEID FROM INGREDIENTS WHERE NAME = ? AND AMOUNT = ? AND UNIT = ?");
-            query.setString(1, ingredient.getName());
-            query.setDouble(2, ingredient.getAmount());
-            query.setString(3, ingredient.getUnit());
-
-            resultsDB = query.executeQuery();
-
-            while (resultsDB.next()) {
-                Long idDB = resultsDB.getLong("RECIPEID");
-                ids.add(idDB);
-            }
-            con.commit();
+            return new TreeSet<Long>(jdbc.query(
+                    "SELECT RECIPEID FROM INGREDIENTS WHERE NAME = ? AND AMOUNT = ? AND UNIT = ?", RECIPE_ID_MAPPER,
+                    ingredient.getName(), ingredient.getAmount(), ingredient.getUnit()));
         } catch (SQLException ex) {
             Logger.getLogger(RecipebookImpl.class.getName()).log(Level.SEVERE, null, ex);
             throw new ServiceFailureException();
-        } finally {
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
         }
-        return ids;
     }
     
     @Override
@@ -278,67 +251,68 @@ public class IngredientManagerImpl implements IngredientManager {
             throw new IllegalArgumentException();
         }
 
-        Connection con = null;
-        PreparedStatement query = null;
-        SortedSet<Long> ids = new TreeSet<Long>();
         try {
-            con = dataSource.getConnection();
-            con.setAutoCommit(false);
-            ResultSet resultsDB;
-           
-            query = con.prepareStatement(
-                    "SELECT RECIPEID FROM INGREDIENTS WHERE NAME = ?");
-            query.setString(1, ingredientName);
-
-            resultsDB = query.executeQuery();
-
-            while (resultsDB.next()) {
-                Long idDB = resultsDB.getLong("RECIPEID");
-                ids.add(idDB);
-            }
-            con.commit();
+            return new TreeSet<Long>(jdbc.query(
+                    "SELECT RECIPEID FROM INGREDIENTS WHERE NAME = ?", RECIPE_ID_MAPPER, ingredientName));
         } catch (SQLException ex) {
             Logger.getLogger(RecipebookImpl.class.getName()).log(Level.SEVERE, null, ex);
             throw new ServiceFailureException();
-        } finally {
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
         }
-        return ids;
     }
         
     @Override
     public SortedSet<Ingredient> getAllIngredients() throws ServiceFailureException {
         checkDataSource();
         
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-            connection.setAutoCommit(false);
-            query = connection.prepareStatement("SELECT * FROM INGREDIENTS");
+            return new TreeSet<Ingredient>(jdbc.query("SELECT * FROM INGREDIENTS", INGREDIENT_MAPPER));
 
-            ResultSet resultsDB = query.executeQuery();
+        } catch (SQLException ex) {
+            String msg = "Error getting ingredient from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+        
+    @Override
+    public List<Ingredient> getIngredientsAfter(long lastId, int limit) throws ServiceFailureException {
+        checkDataSource();
 
-            SortedSet<Ingredient> result = new TreeSet<Ingredient>();
-            while (resultsDB.next()) {
-                Ingredient output = rowToIngredient(resultsDB);
-                validate(output);
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit has to be possitive");
+        }
 
-                result.add(output);
-            }
-            connection.commit();
-            return result;
+        try {
+            return jdbc.query("SELECT * FROM INGREDIENTS WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY",
+                    INGREDIENT_MAPPER, lastId, limit);
 
         } catch (SQLException ex) {
-            String msg = "Error getting ingredient from DB";
+            String msg = "Error getting ingredients after ID " + lastId + " from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
+        }
+    }
+        
+    @Override
+    public long streamAllIngredients(final IngredientHandler handler) throws ServiceFailureException {
+        checkDataSource();
 
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, query);
+        if (handler == null) {
+            throw new IllegalArgumentException("handler is null");
+        }
+
+        try {
+            return jdbc.queryForEach("SELECT * FROM INGREDIENTS ORDER BY RECIPEID", fetchSize, new RowCallback() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException, ServiceFailureException {
+                    handler.handle(INGREDIENT_MAPPER.mapRow(rs), rs.getLong("RECIPEID"));
+                }
+            });
+
+        } catch (SQLException ex) {
+            String msg = "Error streaming ingredients from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
         }
     }
         
@@ -346,7 +320,7 @@ public class IngredientManagerImpl implements IngredientManager {
      * checks if data source is not null
      */
     private void checkDataSource() {
-        if (dataSource == null) {
+        if (jdbc.getDataSource() == null) {
             throw new IllegalStateException("DataSource is not set");
         }
     }
@@ -376,18 +350,15 @@ public class IngredientManagerImpl implements IngredientManager {
      *
      * @param results result set from database
      * @return new ingredient with attributes from database
+     * @throws SQLException when reading of the row fails
      */
-    static private Ingredient rowToIngredient(ResultSet results) {
+    static private Ingredient rowToIngredient(ResultSet results) throws SQLException {
         Ingredient newIngredient = new Ingredient();
 
-        try {
-            newIngredient.setId(results.getLong("id"));
-            newIngredient.setName(results.getString("name"));
-            newIngredient.setAmount(results.getDouble("amount"));
-            newIngredient.setUnit(results.getString("unit"));
-        } catch (SQLException ex) {
-            Logger.getLogger(IngredientManagerImpl.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        newIngredient.setId(results.getLong("id"));
+        newIngredient.setName(results.getString("name"));
+        newIngredient.setAmount(results.getDouble("amount"));
+        newIngredient.setUnit(results.getString("unit"));
         return newIngredient;
     }
 }
@@ -0,0 +1,175 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ingredient manager, which answers getIngredient of ingredients, which do
+ * not exist, and getRecipeIdsByIngredientName of names, which are not used,
+ * without database, IDs and names of existing ingredients are kept in bloom
+ * filters built by buildFilter and keys found missing are cached for short
+ * time, other methods are passed to wrapped manager
+ * <p>
+ * ingredients created by other applications or by RecipeImporter are not
+ * found until they are passed to this manager by ChangeLogPoller or until
+ * the filters are built again, change log does not contain names, so name
+ * of changed ingredient is read from database
+ *
+ * @author mulan
+ */
+public class MissFilteringIngredientManager extends ForwardingIngredientManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            MissFilteringIngredientManager.class.getName());
+
+    private final MissingKeyCache<Long> ids;
+    private final MissingKeyCache<String> names;
+
+    /**
+     * constructor, bloom filters are not used until buildFilter is called
+     * @param ingredientManager wrapped manager
+     * @param maxMisses maximal number of cached missing IDs and names
+     * @param ttl time for which missing IDs and names are cached
+     * @param unit unit of ttl
+     */
+    public MissFilteringIngredientManager(IngredientManager ingredientManager, int maxMisses, long ttl, TimeUnit unit) {
+        super(ingredientManager);
+        this.ids = MissingKeyCache.forIds(maxMisses, ttl, unit);
+        this.names = MissingKeyCache.forNames(maxMisses, ttl, unit);
+    }
+
+    /**
+     * counters of lookups answered by bloom filters and by caches of missing keys
+     */
+    public long getFilteredCount() {return ids.getFilteredCount() + names.getFilteredCount();}
+    public long getCachedMissCount() {return ids.getCachedMissCount() + names.getCachedMissCount();}
+
+    /**
+     * builds bloom filters of IDs and names of all ingredients by one pass
+     * through ingredient table, ingredients created meanwhile by this manager
+     * get into the filters too
+     * @return number of ingredients in the filters
+     * @throws ServiceFailureException when reading of ingredients fails
+     */
+    public long buildFilter() throws ServiceFailureException {
+        ids.startBuilding();
+        names.startBuilding();
+        long count;
+        try {
+            count = ingredientManager.streamAllIngredients(new IngredientHandler() {
+                @Override
+                public void handle(Ingredient ingredient, long recipeId) {
+                    ids.addExisting(ingredient.getId());
+                    names.addExisting(ingredient.getName());
+                }
+            });
+        } catch (ServiceFailureException ex) {
+            ids.abortBuilding();
+            names.abortBuilding();
+            throw ex;
+        }
+        ids.finishBuilding();
+        names.finishBuilding();
+        logger.log(Level.INFO, "Bloom filters of {0} ingredients built", count);
+        return count;
+    }
+
+    /**
+     * stops using bloom filters and removes cached missing keys, it has to be
+     * called when ingredients were created without this manager
+     */
+    public void invalidateAll() {
+        ids.clear();
+        names.clear();
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        // recipes are not filtered
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        ids.added(ingredientId);
+        try {
+            names.added(ingredientManager.getIngredient(ingredientId).getName());
+        } catch (IllegalArgumentException ex) {
+            // ingredient was deleted
+        } catch (ServiceFailureException ex) {
+            // name is unknown, so names are not filtered until the filter is built again
+            names.clear();
+        }
+    }
+
+    @Override
+    public void allChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        ingredientManager.createIngredient(ingredient, recipeId);
+        added(ingredient);
+    }
+
+    @Override
+    public List<Long> createIngredients(Collection<Ingredient> ingredients, long recipeId) throws ServiceFailureException {
+        List<Long> created = ingredientManager.createIngredients(ingredients, recipeId);
+        for (Ingredient ingredient : ingredients) {
+            added(ingredient);
+        }
+        return created;
+    }
+
+    @Override
+    public void updateIngredient(Ingredient ingredient) throws ServiceFailureException {
+        ingredientManager.updateIngredient(ingredient);
+        names.added(ingredient.getName());
+    }
+
+    @Override
+    public Ingredient getIngredient(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+        if (ids.isMissing(id)) {
+            throw new IllegalArgumentException();
+        }
+
+        long version = ids.getVersion();
+        try {
+            return ingredientManager.getIngredient(id);
+        } catch (IllegalArgumentException ex) {
+            ids.missed(id, version);
+            throw ex;
+        }
+    }
+
+    @Override
+    public SortedSet<Long> getRecipeIdsByIngredientName(String ingredientName) throws ServiceFailureException {
+        if (ingredientName == null) {
+            throw new IllegalArgumentException();
+        }
+        if (names.isMissing(ingredientName)) {
+            return new TreeSet<Long>();
+        }
+
+        long version = names.getVersion();
+        SortedSet<Long> recipeIds = ingredientManager.getRecipeIdsByIngredientName(ingredientName);
+        if (recipeIds.isEmpty()) {
+            names.missed(ingredientName, version);
+        }
+        return recipeIds;
+    }
+
+    private void added(Ingredient ingredient) {
+        ids.added(ingredient.getId());
+        names.added(ingredient.getName());
+    }
+}
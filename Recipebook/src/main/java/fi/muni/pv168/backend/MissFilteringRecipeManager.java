@@ -0,0 +1,116 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * recipe manager, which answers findRecipeById of recipes, which do not exist,
+ * without database, IDs of existing recipes are kept in bloom filter built by
+ * buildFilter and IDs found missing are cached for short time, other methods
+ * are passed to wrapped manager
+ * <p>
+ * recipes created by other applications or by RecipeImporter are not found
+ * until they are passed to this manager by ChangeLogPoller or until the filter
+ * is built again
+ *
+ * @author mulan
+ */
+public class MissFilteringRecipeManager extends ForwardingRecipeManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            MissFilteringRecipeManager.class.getName());
+
+    private final MissingKeyCache<Long> ids;
+
+    /**
+     * constructor, bloom filter is not used until buildFilter is called
+     * @param recipeManager wrapped manager
+     * @param maxMisses maximal number of cached missing IDs
+     * @param ttl time for which missing IDs are cached
+     * @param unit unit of ttl
+     */
+    public MissFilteringRecipeManager(RecipeManager recipeManager, int maxMisses, long ttl, TimeUnit unit) {
+        super(recipeManager);
+        this.ids = MissingKeyCache.forIds(maxMisses, ttl, unit);
+    }
+
+    /**
+     * counters of lookups answered by bloom filter and by cache of missing IDs
+     */
+    public long getFilteredCount() {return ids.getFilteredCount();}
+    public long getCachedMissCount() {return ids.getCachedMissCount();}
+
+    /**
+     * builds bloom filter of IDs of all recipes by one pass through recipe table,
+     * recipes created meanwhile by this manager get into the filter too
+     * @return number of recipes in the filter
+     * @throws ServiceFailureException when reading of recipes fails
+     */
+    public long buildFilter() throws ServiceFailureException {
+        ids.startBuilding();
+        long count;
+        try {
+            count = recipeManager.streamAllRecipes(new RecipeHandler() {
+                @Override
+                public void handle(Recipe recipe) {
+                    ids.addExisting(recipe.getId());
+                }
+            });
+        } catch (ServiceFailureException ex) {
+            ids.abortBuilding();
+            throw ex;
+        }
+        ids.finishBuilding();
+        logger.log(Level.INFO, "Bloom filter of {0} recipe IDs built", count);
+        return count;
+    }
+
+    /**
+     * stops using bloom filter and removes cached missing IDs, it has to be
+     * called when recipes were created without this manager
+     */
+    public void invalidateAll() {
+        ids.clear();
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        ids.added(recipeId);
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        // only recipe IDs are filtered
+    }
+
+    @Override
+    public void allChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.createRecipe(recipe);
+        ids.added(recipe.getId());
+    }
+
+    @Override
+    public Recipe findRecipeById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+        if (ids.isMissing(id)) {
+            throw new IllegalArgumentException();
+        }
+
+        long version = ids.getVersion();
+        try {
+            return recipeManager.findRecipeById(id);
+        } catch (IllegalArgumentException ex) {
+            ids.missed(id, version);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.utils.BloomFilter;
+import fi.muni.pv168.utils.LruCache;
+import fi.muni.pv168.utils.Weigher;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * answers lookups of keys, which are not in database, without database
+ * <p>
+ * bloom filter contains all existing keys once it is built, key missing in
+ * the filter does not exist, writes of other applications are not seen until
+ * the filter is built again, keys found missing by database are kept in LRU
+ * cache for short time, so repeated lookups of missing keys, which got into
+ * the filter by false positive or by later removal, are answered too
+ *
+ * @author mulan
+ */
+abstract class MissingKeyCache<K> {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final long MIN_FILTER_KEYS = 1024;
+
+    private static final Weigher<Object> ONE = new Weigher<Object>() {
+        @Override
+        public long weigh(Object value) {
+            return 1;
+        }
+    };
+
+    private final LruCache<K, Boolean> misses;
+    private BloomFilter filter;
+    private long[] building;
+    private int buildingCount;
+    private long filtered;
+    private long cachedMisses;
+
+    /**
+     * constructor, filter is not used until it is built
+     * @param maxMisses maximal number of cached missing keys
+     * @param ttl time for which missing keys are cached
+     * @param unit unit of ttl
+     */
+    MissingKeyCache(int maxMisses, long ttl, TimeUnit unit) {
+        this.misses = new LruCache<K, Boolean>(maxMisses, ONE);
+        this.misses.setTimeToLive(ttl, unit);
+    }
+
+    /**
+     * @param key key to hash
+     * @return hash of key for bloom filter
+     */
+    abstract long hash(K key);
+
+    static MissingKeyCache<Long> forIds(int maxMisses, long ttl, TimeUnit unit) {
+        return new MissingKeyCache<Long>(maxMisses, ttl, unit) {
+            @Override
+            long hash(Long id) {
+                return BloomFilter.hash(id);
+            }
+        };
+    }
+
+    static MissingKeyCache<String> forNames(int maxMisses, long ttl, TimeUnit unit) {
+        return new MissingKeyCache<String>(maxMisses, ttl, unit) {
+            @Override
+            long hash(String name) {
+                return BloomFilter.hash(name);
+            }
+        };
+    }
+
+    /**
+     * @param key looked up key
+     * @return true when key surely does not exist
+     */
+    boolean isMissing(K key) {
+        synchronized (this) {
+            if (filter != null && !filter.mightContain(hash(key))) {
+                filtered++;
+                return true;
+            }
+        }
+        if (misses.get(key) != null) {
+            synchronized (this) {
+                cachedMisses++;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return current version, it has to be read before the lookup
+     */
+    long getVersion() {
+        return misses.getVersion();
+    }
+
+    /**
+     * remembers key, which was not found by database
+     * @param key missing key
+     * @param sinceVersion version read before the lookup
+     */
+    void missed(K key, long sinceVersion) {
+        misses.put(key, Boolean.TRUE, sinceVersion);
+    }
+
+    /**
+     * adds created key
+     * @param key key, which exists now
+     */
+    void added(K key) {
+        long hash = hash(key);
+        synchronized (this) {
+            if (filter != null) {
+                filter.put(hash);
+            }
+            if (building != null) {
+                addHash(hash);
+            }
+        }
+        misses.remove(key);
+    }
+
+    /**
+     * starts building of new filter, keys added until the filter is finished
+     * get into the new filter too
+     */
+    synchronized void startBuilding() {
+        building = new long[1024];
+        buildingCount = 0;
+    }
+
+    /**
+     * adds existing key to the filter being built
+     * @param key existing key
+     */
+    synchronized void addExisting(K key) {
+        addHash(hash(key));
+    }
+
+    /**
+     * replaces used filter by the built one, it is sized for twice as many
+     * keys as were added, so it stays precise while new keys are created
+     */
+    synchronized void finishBuilding() {
+        BloomFilter built = new BloomFilter(Math.max(2L * buildingCount, MIN_FILTER_KEYS), FALSE_POSITIVE_RATE);
+        for (int i = 0; i < buildingCount; i++) {
+            built.put(building[i]);
+        }
+        filter = built;
+        building = null;
+    }
+
+    /**
+     * drops filter being built, used filter is kept
+     */
+    synchronized void abortBuilding() {
+        building = null;
+    }
+
+    private void addHash(long hash) {
+        if (buildingCount == building.length) {
+            building = Arrays.copyOf(building, 2 * building.length);
+        }
+        building[buildingCount++] = hash;
+    }
+
+    /**
+     * stops using the filter and removes cached missing keys
+     */
+    void clear() {
+        synchronized (this) {
+            filter = null;
+        }
+        misses.clear();
+    }
+
+    synchronized long getFilteredCount() {return filtered;}
+    synchronized long getCachedMissCount() {return cachedMisses;}
+    synchronized long getFilterSize() {return filter == null ? 0 : filter.getAddedCount();}
+}
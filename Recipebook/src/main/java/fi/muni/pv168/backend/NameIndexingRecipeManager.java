@@ -0,0 +1,183 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * recipe manager, which answers findRecipesByName from RecipeNameIndex
+ * instead of scanning all names in database and which finds recipes by
+ * misspelled names too, found recipes are loaded by
+ * findRecipeById of wrapped manager, so it should keep recipes in cache,
+ * the index is kept in sync with writes made by this manager and with
+ * changes passed by ChangeLogPoller, other methods are passed to wrapped
+ * manager
+ * <p>
+ * like FacetIndexingRecipeManager this manager has to be registered to
+ * ChangeLogPoller after caches of the wrapped manager
+ *
+ * @author mulan
+ */
+public class NameIndexingRecipeManager extends ForwardingRecipeManager implements ChangeListener {
+
+    private static final Logger logger = Logger.getLogger(
+            NameIndexingRecipeManager.class.getName());
+
+    private final RecipeNameIndex index = new RecipeNameIndex();
+    private final Object lock = new Object();
+
+    /**
+     * constructor, index is not used until buildIndex is called
+     * @param recipeManager wrapped manager
+     */
+    public NameIndexingRecipeManager(RecipeManager recipeManager) {
+        super(recipeManager);
+    }
+
+    /**
+     * @return index maintained by this manager
+     */
+    public RecipeNameIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * builds the index by one pass through recipe table, writes wait until
+     * the index is built
+     * @return number of indexed recipes
+     * @throws ServiceFailureException when reading of recipes fails
+     */
+    public long buildIndex() throws ServiceFailureException {
+        long count;
+        synchronized (lock) {
+            count = index.build(recipeManager);
+        }
+        logger.log(Level.INFO, "Name index of {0} recipes with {1} trigrams built",
+                new Object[]{count, index.getTrigramCount()});
+        return count;
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        synchronized (lock) {
+            if (!index.isReady()) {
+                return;
+            }
+            try {
+                index.put(recipeId, recipeManager.findRecipeById(recipeId).getName());
+            } catch (IllegalArgumentException ex) {
+                index.remove(recipeId);
+            } catch (ServiceFailureException ex) {
+                logger.log(Level.WARNING, "Name index is not used until it is built again", ex);
+                index.setReady(false);
+            }
+        }
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        // ingredients are not indexed
+    }
+
+    @Override
+    public void allChanged() {
+        index.setReady(false);
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.createRecipe(recipe);
+            index.put(recipe.getId(), recipe.getName());
+        }
+    }
+
+    @Override
+    public void updateRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.updateRecipe(recipe);
+            index.put(recipe.getId(), recipe.getName());
+        }
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.deleteRecipe(recipe);
+            index.remove(recipe.getId());
+        }
+    }
+
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        synchronized (lock) {
+            recipeManager.deleteRecipeCascade(id);
+            index.remove(id);
+        }
+    }
+
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        synchronized (lock) {
+            int deleted = recipeManager.deleteRecipesCascade(ids);
+            for (Long id : ids) {
+                if (id != null) {
+                    index.remove(id);
+                }
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesByName(String name) throws ServiceFailureException {
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
+        SortedSet<Long> ids = index.findRecipeIds(name);
+        if (ids == null) {
+            return recipeManager.findRecipesByName(name);
+        }
+        SortedSet<Recipe> result = new TreeSet<Recipe>();
+        for (Long id : ids) {
+            try {
+                result.add(recipeManager.findRecipeById(id));
+            } catch (IllegalArgumentException ex) {
+                // deleted recipe is removed from the index, when its change is read
+            }
+        }
+        return result;
+    }
+
+    /**
+     * finds recipes by name like findRecipesByName, but misspelled words of
+     * the name are corrected by words of indexed names, when the index is
+     * not ready, recipes are found by exact name
+     * @param name searched name
+     * @return found recipes, recipes with less corrected words first
+     * @throws ServiceFailureException when loading of recipes fails
+     */
+    public List<Recipe> findRecipesByNameFuzzy(String name) throws ServiceFailureException {
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
+        List<Long> ids = index.findRecipeIdsFuzzy(name);
+        if (ids == null) {
+            return new ArrayList<Recipe>(recipeManager.findRecipesByName(name));
+        }
+        List<Recipe> result = new ArrayList<Recipe>(ids.size());
+        for (Long id : ids) {
+            try {
+                result.add(recipeManager.findRecipeById(id));
+            } catch (IllegalArgumentException ex) {
+                // deleted recipe is removed from the index, when its change is read
+            }
+        }
+        return result;
+    }
+}
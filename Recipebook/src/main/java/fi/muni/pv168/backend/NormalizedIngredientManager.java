@@ -0,0 +1,488 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.InvalidEntityException;
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcSession;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.RowCallback;
+import fi.muni.pv168.utils.RowMapper;
+import fi.muni.pv168.utils.SessionCallback;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * manager of ingredients stored in normalized tables, every distinct name
+ * and unit is stored once in INGREDIENT_CATALOG and UNIT_CATALOG and
+ * RECIPE_INGREDIENT references them by integer IDs, so recipes using an
+ * ingredient are found by index of those IDs
+ * <p>
+ * catalog rows are never deleted, so their IDs are cached
+ * <p>
+ * RecipeManagerImpl.findRecipesByIngredientName, RecipeManagerImpl.findRecipes
+ * and UnitOfWork still read and write INGREDIENTS table, so migrateIngredients
+ * is not public until they read normalized tables, otherwise searches by
+ * ingredient would not find migrated ingredients
+ * <p>
+ * normalized tables are not part of the default schema, they are created by
+ * createNormalizedTables.sql, their writes are not recorded in CHANGE_LOG
+ *
+ * @author mulan
+ */
+public class NormalizedIngredientManager implements IngredientManager {
+
+    private static final Logger logger = Logger.getLogger(
+            NormalizedIngredientManager.class.getName());
+    private static final int DEFAULT_FETCH_SIZE = 100;
+    private static final String SELECT_INGREDIENTS =
+            "SELECT RI.ID, C.NAME, RI.AMOUNT, U.NAME AS UNIT, RI.RECIPE_ID FROM RECIPE_INGREDIENT RI "
+            + "JOIN INGREDIENT_CATALOG C ON C.ID = RI.INGREDIENT_ID JOIN UNIT_CATALOG U ON U.ID = RI.UNIT_ID";
+    private static final String INSERT_INGREDIENT =
+            "INSERT INTO RECIPE_INGREDIENT (RECIPE_ID, INGREDIENT_ID, AMOUNT, UNIT_ID) VALUES(?, ?, ?, ?)";
+    private static final String DUPLICATE_KEY = "23505";
+
+    private static final RowMapper<Ingredient> INGREDIENT_MAPPER = new RowMapper<Ingredient>() {
+        @Override
+        public Ingredient mapRow(ResultSet rs) throws SQLException {
+            Ingredient ingredient = new Ingredient();
+            ingredient.setId(rs.getLong("ID"));
+            ingredient.setName(rs.getString("NAME"));
+            ingredient.setAmount(rs.getDouble("AMOUNT"));
+            ingredient.setUnit(rs.getString("UNIT"));
+            return ingredient;
+        }
+    };
+    private static final RowMapper<Long> RECIPE_ID_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            return rs.getLong("RECIPE_ID");
+        }
+    };
+    private static final RowMapper<Long> MAX_ID_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            long max = rs.getLong(1);
+            return rs.wasNull() ? null : max;
+        }
+    };
+    private static final RowMapper<Integer> ID_MAPPER = new RowMapper<Integer>() {
+        @Override
+        public Integer mapRow(ResultSet rs) throws SQLException {
+            return rs.getInt(1);
+        }
+    };
+
+    private final JdbcTemplate jdbc;
+    private final ConcurrentMap<String, Integer> ingredientIds = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, Integer> unitIds = new ConcurrentHashMap<String, Integer>();
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     * constructor, sets given data source
+     *
+     * @param dataSource given data source
+     */
+    public NormalizedIngredientManager(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * constructor, statements are executed by given template
+     *
+     * @param jdbc given template
+     */
+    public NormalizedIngredientManager(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * sets number of rows fetched from database at once by streaming methods
+     *
+     * @param fetchSize number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size has to be possitive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * moves all ingredients of INGREDIENTS table into normalized tables in one
+     * transaction, IDs of ingredients are kept, so it has to be called before
+     * this manager creates any ingredient, it is package private until all
+     * readers of INGREDIENTS table read normalized tables
+     *
+     * @return number of moved ingredients
+     * @throws ServiceFailureException problem with database, nothing is moved
+     */
+    long migrateIngredients() throws ServiceFailureException {
+        try {
+            return jdbc.executeInTransaction(new SessionCallback<Long>() {
+                @Override
+                public Long doInSession(JdbcSession session) throws SQLException, ServiceFailureException {
+                    session.update("INSERT INTO INGREDIENT_CATALOG (NAME) SELECT DISTINCT NAME FROM INGREDIENTS "
+                            + "WHERE NAME IS NOT NULL AND NAME NOT IN (SELECT NAME FROM INGREDIENT_CATALOG)");
+                    session.update("INSERT INTO UNIT_CATALOG (NAME) SELECT DISTINCT UNIT FROM INGREDIENTS "
+                            + "WHERE UNIT IS NOT NULL AND UNIT NOT IN (SELECT NAME FROM UNIT_CATALOG)");
+                    int moved = session.update(
+                            "INSERT INTO RECIPE_INGREDIENT (ID, RECIPE_ID, INGREDIENT_ID, AMOUNT, UNIT_ID) "
+                            + "SELECT I.ID, I.RECIPEID, C.ID, I.AMOUNT, U.ID FROM INGREDIENTS I "
+                            + "JOIN INGREDIENT_CATALOG C ON C.NAME = I.NAME JOIN UNIT_CATALOG U ON U.NAME = I.UNIT "
+                            + "WHERE I.AMOUNT IS NOT NULL");
+                    int deleted = session.update("DELETE FROM INGREDIENTS");
+                    if (moved != deleted) {
+                        throw new ServiceFailureException((deleted - moved) + " ingredients without name, amount or unit cannot be moved");
+                    }
+
+                    // IDs were inserted explicitly, so generated IDs have to continue after them
+                    Long max = session.queryForObject("SELECT MAX(ID) FROM RECIPE_INGREDIENT", MAX_ID_MAPPER);
+                    if (max != null) {
+                        session.update("ALTER TABLE RECIPE_INGREDIENT ALTER COLUMN ID RESTART WITH " + (max + 1));
+                    }
+                    return (long) moved;
+                }
+            });
+        } catch (SQLException ex) {
+            String msg = "Error when moving ingredients into normalized tables";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public void createIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        checkDataSource();
+        validate(ingredient);
+
+        try {
+            long newId = jdbc.insert(INSERT_INGREDIENT, recipeId, getIngredientId(ingredient.getName()),
+                    ingredient.getAmount(), getUnitId(ingredient.getUnit()));
+
+            ingredient.setId(newId);
+        } catch (SQLException ex) {
+            String msg = "Error when inserting ingredent into DB " + ingredient + recipeId;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public List<Long> createIngredients(final Collection<Ingredient> ingredients, final long recipeId) throws ServiceFailureException {
+        checkDataSource();
+
+        if (ingredients == null) {
+            throw new IllegalArgumentException("ingredients are null");
+        }
+        for (Ingredient ingredient : ingredients) {
+            validate(ingredient);
+        }
+
+        List<Long> ids = new ArrayList<Long>(ingredients.size());
+        if (ingredients.isEmpty()) {
+            return ids;
+        }
+
+        try {
+            final List<Object[]> rows = new ArrayList<Object[]>(ingredients.size());
+            for (Ingredient ingredient : ingredients) {
+                rows.add(new Object[] {recipeId, getIngredientId(ingredient.getName()),
+                    ingredient.getAmount(), getUnitId(ingredient.getUnit())});
+            }
+
+            ids = jdbc.executeInTransaction(new SessionCallback<List<Long>>() {
+                @Override
+                public List<Long> doInSession(JdbcSession session) throws SQLException, ServiceFailureException {
+                    // Derby reports only the key of the last row of a batch, so
+                    // ingredients are inserted one by one to get their keys
+                    List<Long> ids = new ArrayList<Long>(rows.size());
+                    for (Object[] row : rows) {
+                        ids.add(session.insert(INSERT_INGREDIENT, row));
+                    }
+                    return ids;
+                }
+            });
+        } catch (SQLException ex) {
+            String msg = "Error when inserting ingredients into DB " + ingredients + recipeId;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+
+        int i = 0;
+        for (Ingredient ingredient : ingredients) {
+            ingredient.setId(ids.get(i++));
+        }
+        return ids;
+    }
+
+    @Override
+    public void updateIngredient(Ingredient ingredient) throws ServiceFailureException {
+        checkDataSource();
+        validate(ingredient);
+
+        if (ingredient.getId() == null) {
+            throw new InvalidEntityException("ingredient id is null");
+        }
+
+        try {
+            int count = jdbc.update("UPDATE RECIPE_INGREDIENT SET INGREDIENT_ID = ?, AMOUNT = ?, UNIT_ID = ? WHERE ID = ?",
+                    getIngredientId(ingredient.getName()), ingredient.getAmount(),
+                    getUnitId(ingredient.getUnit()), ingredient.getId());
+
+            DBUtils.checkUpdatesCount(count, false);
+
+        } catch (SQLException ex) {
+            String msg = "Error when updating ingredient in the db " + ingredient;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public void deleteIngredient(Ingredient ingredient, long recipeId) throws ServiceFailureException {
+        validate(ingredient);
+
+        if (ingredient.getId() == null) {
+            throw new InvalidEntityException("ingredient id is null");
+        }
+
+        if (recipeId < 0) {
+            throw new IllegalArgumentException("recipeId is negative");
+        }
+
+        checkDataSource();
+
+        try {
+            int count = jdbc.update("DELETE FROM RECIPE_INGREDIENT WHERE ID = ?", ingredient.getId());
+
+            DBUtils.checkUpdatesCount(count, false);
+
+        } catch (SQLException ex) {
+            String msg = "Error when deleting ingredient from the db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public Ingredient getIngredient(Long id) throws ServiceFailureException {
+        checkDataSource();
+
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+
+        Ingredient output;
+        try {
+            output = jdbc.queryForObject(SELECT_INGREDIENTS + " WHERE RI.ID = ?", INGREDIENT_MAPPER, id);
+        } catch (SQLException ex) {
+            String msg = "Error getting ingredient for ID " + id + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+
+        if (output == null) {
+            throw new IllegalArgumentException();
+        }
+        return output;
+    }
+
+    @Override
+    public SortedSet<Ingredient> getIngredientsOfRecipe(long recipeid) throws ServiceFailureException {
+        checkDataSource();
+
+        try {
+            return new TreeSet<Ingredient>(jdbc.query(SELECT_INGREDIENTS + " WHERE RI.RECIPE_ID = ?",
+                    INGREDIENT_MAPPER, recipeid));
+
+        } catch (SQLException ex) {
+            String msg = "Error getting ingredient for recipe id " + recipeid + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public SortedSet<Long> getRecipeIdsByIngredient(Ingredient ingredient) throws ServiceFailureException {
+        checkDataSource();
+        validate(ingredient);
+
+        try {
+            Integer ingredientId = findId("INGREDIENT_CATALOG", ingredientIds, ingredient.getName());
+            Integer unitId = findId("UNIT_CATALOG", unitIds, ingredient.getUnit());
+            if (ingredientId == null || unitId == null) {
+                return new TreeSet<Long>();
+            }
+            return new TreeSet<Long>(jdbc.query(
+                    "SELECT RECIPE_ID FROM RECIPE_INGREDIENT WHERE INGREDIENT_ID = ? AND AMOUNT = ? AND UNIT_ID = ?",
+                    RECIPE_ID_MAPPER, ingredientId, ingredient.getAmount(), unitId));
+        } catch (SQLException ex) {
+            String msg = "Error getting recipes of ingredient " + ingredient + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public SortedSet<Long> getRecipeIdsByIngredientName(String ingredientName) throws ServiceFailureException {
+        checkDataSource();
+        if (ingredientName == null) {
+            throw new IllegalArgumentException();
+        }
+
+        try {
+            Integer ingredientId = findId("INGREDIENT_CATALOG", ingredientIds, ingredientName);
+            if (ingredientId == null) {
+                return new TreeSet<Long>();
+            }
+            return new TreeSet<Long>(jdbc.query(
+                    "SELECT RECIPE_ID FROM RECIPE_INGREDIENT WHERE INGREDIENT_ID = ?", RECIPE_ID_MAPPER, ingredientId));
+        } catch (SQLException ex) {
+            String msg = "Error getting recipes of ingredient " + ingredientName + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public SortedSet<Ingredient> getAllIngredients() throws ServiceFailureException {
+        checkDataSource();
+
+        try {
+            return new TreeSet<Ingredient>(jdbc.query(SELECT_INGREDIENTS, INGREDIENT_MAPPER));
+
+        } catch (SQLException ex) {
+            String msg = "Error getting ingredient from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public List<Ingredient> getIngredientsAfter(long lastId, int limit) throws ServiceFailureException {
+        checkDataSource();
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit has to be possitive");
+        }
+
+        try {
+            return jdbc.query(SELECT_INGREDIENTS + " WHERE RI.ID > ? ORDER BY RI.ID FETCH FIRST ? ROWS ONLY",
+                    INGREDIENT_MAPPER, lastId, limit);
+
+        } catch (SQLException ex) {
+            String msg = "Error getting ingredients after ID " + lastId + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public long streamAllIngredients(final IngredientHandler handler) throws ServiceFailureException {
+        checkDataSource();
+
+        if (handler == null) {
+            throw new IllegalArgumentException("handler is null");
+        }
+
+        try {
+            return jdbc.queryForEach(SELECT_INGREDIENTS + " ORDER BY RI.RECIPE_ID", fetchSize, new RowCallback() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException, ServiceFailureException {
+                    handler.handle(INGREDIENT_MAPPER.mapRow(rs), rs.getLong("RECIPE_ID"));
+                }
+            });
+
+        } catch (SQLException ex) {
+            String msg = "Error streaming ingredients from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    private int getIngredientId(String name) throws SQLException {
+        return getOrCreateId("INGREDIENT_CATALOG", ingredientIds, name);
+    }
+
+    private int getUnitId(String unit) throws SQLException {
+        return getOrCreateId("UNIT_CATALOG", unitIds, unit);
+    }
+
+    /**
+     * finds ID of catalog row with given name
+     * @return ID of the row, null when the name is not in the catalog
+     */
+    private Integer findId(String table, ConcurrentMap<String, Integer> ids, String name) throws SQLException {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = jdbc.queryForObject("SELECT ID FROM " + table + " WHERE NAME = ?", ID_MAPPER, name);
+            if (id != null) {
+                ids.put(name, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * returns ID of catalog row with given name, row is inserted by its own
+     * statement, so it stays in the catalog even when the write using it fails
+     */
+    private int getOrCreateId(String table, ConcurrentMap<String, Integer> ids, String name) throws SQLException {
+        Integer id = findId(table, ids, name);
+        if (id != null) {
+            return id;
+        }
+        try {
+            jdbc.update("INSERT INTO " + table + " (NAME) VALUES(?)", name);
+        } catch (SQLException ex) {
+            // another application inserted the same name meanwhile
+            if (!DUPLICATE_KEY.equals(ex.getSQLState())) {
+                throw ex;
+            }
+        }
+        id = findId(table, ids, name);
+        if (id == null) {
+            throw new SQLException("Name " + name + " is missing in " + table);
+        }
+        return id;
+    }
+
+    /**
+     * checks if data source is not null
+     */
+    private void checkDataSource() {
+        if (jdbc.getDataSource() == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * validates, if given ingredient is valid entity
+     *
+     * @param ingredient
+     */
+    static private void validate(Ingredient ingredient) {
+        if (ingredient == null) {
+            throw new IllegalArgumentException("Ingredient is null");
+        }
+        if (ingredient.getName() == null) {
+            throw new InvalidEntityException("name is null");
+        }
+        if (ingredient.getUnit() == null) {
+            throw new InvalidEntityException("unit is null");
+        }
+        if ((Double.compare(ingredient.getAmount(), 0.0) == 0) || (ingredient.getAmount() < 0)) {
+            throw new InvalidEntityException("amount is 0 or less");
+        }
+    }
+}
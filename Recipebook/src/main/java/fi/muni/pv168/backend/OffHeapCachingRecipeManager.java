@@ -0,0 +1,128 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+
+/**
+ * recipe manager, which keeps recipes found by ID encoded outside of java
+ * heap, it is meant as second level cache behind CachingRecipeManager for
+ * catalogs, which do not fit into heap, every hit decodes new recipe, so
+ * callers cannot change stored recipes, other methods are passed to wrapped
+ * manager
+ *
+ * @author mulan
+ */
+public class OffHeapCachingRecipeManager extends ForwardingRecipeManager implements ChangeListener {
+
+    private final OffHeapRecipeStore store;
+
+    /**
+     * constructor, creates empty store
+     * @param recipeManager wrapped manager
+     * @param slabSize size of one off-heap slab in bytes
+     * @param maxSlabs maximal number of slabs, the oldest slab is evicted when all are full
+     */
+    public OffHeapCachingRecipeManager(RecipeManager recipeManager, int slabSize, int maxSlabs) {
+        super(recipeManager);
+        this.store = new OffHeapRecipeStore(slabSize, maxSlabs);
+    }
+
+    /**
+     * counters of the store
+     */
+    public long getHits() {return store.getHits();}
+    public long getMisses() {return store.getMisses();}
+    public long getEvictedSlabs() {return store.getEvictedSlabs();}
+    public int getCachedCount() {return store.size();}
+
+    /**
+     * removes all stored recipes
+     */
+    public void invalidateAll() {
+        store.clear();
+    }
+
+    @Override
+    public void recipeChanged(long recipeId) {
+        store.remove(recipeId);
+    }
+
+    @Override
+    public void ingredientChanged(long ingredientId, long recipeId) {
+        // ingredients are not stored with recipes found by ID
+    }
+
+    @Override
+    public void allChanged() {
+        invalidateAll();
+    }
+
+    @Override
+    public void createRecipe(Recipe recipe) throws ServiceFailureException {
+        recipeManager.createRecipe(recipe);
+        store.remove(recipe.getId());
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) throws ServiceFailureException {
+        try {
+            recipeManager.deleteRecipe(recipe);
+        } finally {
+            if (recipe != null && recipe.getId() != null) {
+                store.remove(recipe.getId());
+            }
+        }
+    }
+
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        try {
+            recipeManager.deleteRecipeCascade(id);
+        } finally {
+            store.remove(id);
+        }
+    }
+
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        try {
+            return recipeManager.deleteRecipesCascade(ids);
+        } finally {
+            if (ids != null) {
+                for (Long id : ids) {
+                    if (id != null) {
+                        store.remove(id);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateRecipe(Recipe recipe) throws ServiceFailureException {
+        try {
+            recipeManager.updateRecipe(recipe);
+        } finally {
+            if (recipe != null && recipe.getId() != null) {
+                store.remove(recipe.getId());
+            }
+        }
+    }
+
+    @Override
+    public Recipe findRecipeById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException();
+        }
+
+        Recipe stored = store.get(id);
+        if (stored != null) {
+            return stored;
+        }
+
+        long version = store.getVersion();
+        Recipe recipe = recipeManager.findRecipeById(id);
+        store.put(recipe, version);
+        return recipe;
+    }
+}
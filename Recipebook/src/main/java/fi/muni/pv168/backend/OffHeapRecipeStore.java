@@ -0,0 +1,160 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.utils.LongHashMap;
+import java.nio.ByteBuffer;
+
+/**
+ * store of encoded recipes in direct byte buffers outside of java heap, so
+ * large catalogs do not slow down garbage collection
+ * <p>
+ * recipes are appended to slabs of fixed size, which are used as a ring, when
+ * all slabs are full, the oldest slab is evicted as whole and reused, records
+ * of updated recipes are not rewritten, new record is appended and the old one
+ * stays in slab until the slab is evicted
+ * <p>
+ * every slab record is length of encoded recipe followed by the recipe, index
+ * from recipe ID to slab and offset of its record is kept in open addressing
+ * table of longs, so it takes 16 bytes per recipe without boxing
+ * <p>
+ * every removal increases version of the store, recipes are stored only
+ * when no removal happened since the version was read before the query
+ *
+ * @author mulan
+ */
+class OffHeapRecipeStore {
+
+    /**
+     * offset of recipe ID in slab record, after length and format version
+     */
+    private static final int ID_OFFSET = 4 + 1;
+
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final int[] slabEnds;
+    private final LongHashMap index = new LongHashMap();
+    private int current;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictedSlabs;
+
+    /**
+     * constructor, slabs are allocated when they are needed
+     * @param slabSize size of one slab in bytes
+     * @param maxSlabs maximal number of slabs
+     */
+    OffHeapRecipeStore(int slabSize, int maxSlabs) {
+        if (slabSize < 64) {
+            throw new IllegalArgumentException("slab size is too small");
+        }
+        if (maxSlabs < 2) {
+            throw new IllegalArgumentException("at least 2 slabs are needed");
+        }
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[maxSlabs];
+        this.slabEnds = new int[maxSlabs];
+    }
+
+    /**
+     * @param id ID of the recipe
+     * @return decoded recipe, null when it is not stored
+     */
+    synchronized Recipe get(long id) {
+        long location = index.get(id);
+        if (location < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        ByteBuffer record = slabs[(int) (location >>> 32)].duplicate();
+        record.position((int) location + 4);
+        return RecipeCodec.decode(record);
+    }
+
+    /**
+     * @return current version, it has to be read before the query
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * stores given recipe unless some removal happened since given version
+     * @param recipe recipe with ID
+     * @param sinceVersion version read before the query
+     * @return true when recipe was stored
+     */
+    synchronized boolean put(Recipe recipe, long sinceVersion) {
+        if (sinceVersion != version) {
+            return false;
+        }
+        byte[] encoded = RecipeCodec.encode(recipe);
+        int length = 4 + encoded.length;
+        if (length > slabSize) {
+            return false;
+        }
+
+        if (slabs[current] == null) {
+            slabs[current] = ByteBuffer.allocateDirect(slabSize);
+        } else if (slabEnds[current] + length > slabSize) {
+            current = (current + 1) % slabs.length;
+            if (slabs[current] == null) {
+                slabs[current] = ByteBuffer.allocateDirect(slabSize);
+            } else {
+                evictSlab(current);
+            }
+        }
+
+        int offset = slabEnds[current];
+        ByteBuffer record = slabs[current].duplicate();
+        record.position(offset);
+        record.putInt(encoded.length);
+        record.put(encoded);
+        slabEnds[current] = offset + length;
+        index.put(recipe.getId(), ((long) current << 32) | offset);
+        return true;
+    }
+
+    /**
+     * removes stored recipe with given ID, its record stays in slab
+     * @param id ID of the recipe
+     */
+    synchronized void remove(long id) {
+        version++;
+        index.remove(id);
+    }
+
+    /**
+     * removes all stored recipes, allocated slabs are kept
+     */
+    synchronized void clear() {
+        version++;
+        index.clear();
+        for (int i = 0; i < slabEnds.length; i++) {
+            slabEnds[i] = 0;
+        }
+        current = 0;
+    }
+
+    synchronized int size() {return index.size();}
+    synchronized long getHits() {return hits;}
+    synchronized long getMisses() {return misses;}
+    synchronized long getEvictedSlabs() {return evictedSlabs;}
+
+    /**
+     * removes from index recipes, whose current record is in given slab
+     */
+    private void evictSlab(int slabIndex) {
+        ByteBuffer slab = slabs[slabIndex];
+        int offset = 0;
+        while (offset < slabEnds[slabIndex]) {
+            long id = slab.getLong(offset + ID_OFFSET);
+            if (index.get(id) == (((long) slabIndex << 32) | offset)) {
+                index.remove(id);
+            }
+            offset += 4 + slab.getInt(offset);
+        }
+        slabEnds[slabIndex] = 0;
+        evictedSlabs++;
+    }
+}
@@ -0,0 +1,122 @@
+package fi.muni.pv168.backend;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * compact binary encoding of recipes with their ingredients, it is used for
+ * storing recipes outside of java heap, strings are stored in UTF-8 with their
+ * length, numbers in fixed size
+ * <p>
+ * format: version byte, ID, type, category, cooking time, number of portions,
+ * name, instructions, number of ingredients and every ingredient as ID,
+ * amount, name and unit
+ *
+ * @author mulan
+ */
+public final class RecipeCodec {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private RecipeCodec() {
+    }
+
+    /**
+     * encodes given recipe
+     * @param recipe recipe with ID, type and category
+     * @return encoded recipe
+     */
+    public static byte[] encode(Recipe recipe) {
+        if (recipe == null) {
+            throw new IllegalArgumentException("recipe is null");
+        }
+        if (recipe.getId() == null) {
+            throw new IllegalArgumentException("recipe id is null");
+        }
+        byte[] name = recipe.getName().getBytes(UTF8);
+        byte[] instructions = recipe.getInstructions().getBytes(UTF8);
+        SortedSet<Ingredient> ingredients = recipe.getIngredients();
+        byte[][] ingredientNames = new byte[ingredients.size()][];
+        byte[][] ingredientUnits = new byte[ingredients.size()][];
+
+        int size = 1 + 8 + 1 + 1 + 4 + 4 + 4 + name.length + 4 + instructions.length + 4;
+        int i = 0;
+        for (Ingredient ingredient : ingredients) {
+            ingredientNames[i] = ingredient.getName().getBytes(UTF8);
+            ingredientUnits[i] = ingredient.getUnit().getBytes(UTF8);
+            size += 8 + 8 + 4 + ingredientNames[i].length + 4 + ingredientUnits[i].length;
+            i++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(FORMAT_VERSION);
+        buffer.putLong(recipe.getId());
+        buffer.put((byte) MealType.toInt(recipe.getType()));
+        buffer.put((byte) MealCategory.toInt(recipe.getCategory()));
+        buffer.putInt(recipe.getCookingTime());
+        buffer.putInt(recipe.getNumPortions());
+        putBytes(buffer, name);
+        putBytes(buffer, instructions);
+        buffer.putInt(ingredients.size());
+        i = 0;
+        for (Ingredient ingredient : ingredients) {
+            // 0 is never used as ID by database
+            buffer.putLong(ingredient.getId() == null ? 0 : ingredient.getId());
+            buffer.putDouble(ingredient.getAmount());
+            putBytes(buffer, ingredientNames[i]);
+            putBytes(buffer, ingredientUnits[i]);
+            i++;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * decodes recipe from current position of given buffer, position is moved
+     * after the recipe
+     * @param buffer buffer with encoded recipe
+     * @return new recipe
+     * @throws IllegalArgumentException when buffer does not contain encoded recipe
+     */
+    public static Recipe decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("unknown format of encoded recipe: " + version);
+        }
+        Recipe recipe = new Recipe();
+        recipe.setId(buffer.getLong());
+        recipe.setType(MealType.fromInt(buffer.get()));
+        recipe.setCategory(MealCategory.fromInt(buffer.get()));
+        recipe.setCookingTime(buffer.getInt());
+        recipe.setNumPortions(buffer.getInt());
+        recipe.setName(getString(buffer));
+        recipe.setInstructions(getString(buffer));
+
+        int count = buffer.getInt();
+        SortedSet<Ingredient> ingredients = new TreeSet<Ingredient>();
+        for (int i = 0; i < count; i++) {
+            long id = buffer.getLong();
+            double amount = buffer.getDouble();
+            Ingredient ingredient = new Ingredient(getString(buffer), amount, getString(buffer));
+            if (id != 0) {
+                ingredient.setId(id);
+            }
+            ingredients.add(ingredient);
+        }
+        recipe.setIngredients(ingredients);
+        return recipe;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,308 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * bitmap index of recipes by type, category and cooking time, every type,
+ * category and cooking time bucket has a bitmap with bits set at IDs of its
+ * recipes, combined filters are answered by AND of the bitmaps and facet
+ * counts by their cardinality, cooking times of recipes are kept too, so
+ * buckets only partially covered by searched time range are checked exactly
+ * <p>
+ * recipe IDs are used as bit positions, so the index suits identity
+ * generated IDs, which are dense, index is not used until it is built and
+ * is maintained by FacetIndexingRecipeManager
+ *
+ * @author mulan
+ */
+public class RecipeFacetIndex {
+
+    /**
+     * upper borders of cooking time buckets, borders included, last bucket
+     * contains all longer cooking times
+     */
+    static final int[] TIME_BUCKETS = {15, 30, 45, 60, 90, 120, 180};
+
+    private final Map<MealType, BitSet> types = new EnumMap<MealType, BitSet>(MealType.class);
+    private final Map<MealCategory, BitSet> categories = new EnumMap<MealCategory, BitSet>(MealCategory.class);
+    private final BitSet[] times = new BitSet[TIME_BUCKETS.length + 1];
+    private final BitSet all = new BitSet();
+    private int[] cookingTimes = new int[0];
+    private boolean ready;
+
+    public RecipeFacetIndex() {
+        clear();
+    }
+
+    /**
+     * @return true when the index was built and was not invalidated since then
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    synchronized void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * @return number of indexed recipes
+     */
+    public synchronized int size() {
+        return all.cardinality();
+    }
+
+    /**
+     * counts recipes satisfying type, category and cooking time criteria of given query
+     * @param query query, other criteria and limit are ignored
+     * @return number of recipes, -1 when the index is not ready
+     */
+    public synchronized int count(RecipeQuery query) {
+        if (!ready) {
+            return -1;
+        }
+        return select(query.getType(), query.getCategory(), query.getFromTime(), query.getToTime()).cardinality();
+    }
+
+    /**
+     * counts recipes of every type, which satisfy category and cooking time criteria of given query
+     * @param query query, its type and other criteria are ignored
+     * @return numbers of recipes by type, null when the index is not ready
+     */
+    public synchronized Map<MealType, Integer> countByType(RecipeQuery query) {
+        if (!ready) {
+            return null;
+        }
+        BitSet selected = select(null, query.getCategory(), query.getFromTime(), query.getToTime());
+        Map<MealType, Integer> counts = new EnumMap<MealType, Integer>(MealType.class);
+        for (MealType type : MealType.values()) {
+            counts.put(type, countAnd(selected, types.get(type)));
+        }
+        return counts;
+    }
+
+    /**
+     * counts recipes of every category, which satisfy type and cooking time criteria of given query
+     * @param query query, its category and other criteria are ignored
+     * @return numbers of recipes by category, null when the index is not ready
+     */
+    public synchronized Map<MealCategory, Integer> countByCategory(RecipeQuery query) {
+        if (!ready) {
+            return null;
+        }
+        BitSet selected = select(query.getType(), null, query.getFromTime(), query.getToTime());
+        Map<MealCategory, Integer> counts = new EnumMap<MealCategory, Integer>(MealCategory.class);
+        for (MealCategory category : MealCategory.values()) {
+            counts.put(category, countAnd(selected, categories.get(category)));
+        }
+        return counts;
+    }
+
+    /**
+     * counts recipes in every cooking time bucket, which satisfy type and category criteria of given query
+     * @param query query, its cooking time and other criteria are ignored
+     * @return numbers of recipes by bucket of TIME_BUCKETS, null when the index is not ready
+     */
+    public synchronized int[] countByCookingTime(RecipeQuery query) {
+        if (!ready) {
+            return null;
+        }
+        BitSet selected = select(query.getType(), query.getCategory(), null, null);
+        int[] counts = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            counts[i] = countAnd(selected, times[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * finds IDs of recipes satisfying given query, only queries with type,
+     * category and cooking time criteria ordered by ID or cooking time are
+     * answered
+     * @param query query to answer
+     * @return IDs of found recipes in order of the query and limited by its limit,
+     *         null when the index is not ready or cannot answer the query
+     */
+    public synchronized long[] findRecipeIds(RecipeQuery query) {
+        if (!ready || query.getName() != null || query.getNamePrefix() != null
+                || query.getMinPortions() != null || !query.getIngredientNames().isEmpty()
+                || query.getOrder() == RecipeQuery.Order.NAME) {
+            return null;
+        }
+        BitSet selected = select(query.getType(), query.getCategory(), query.getFromTime(), query.getToTime());
+        int count = selected.cardinality();
+        int limit = query.getLimit() > 0 ? Math.min(query.getLimit(), count) : count;
+
+        if (query.getOrder() == RecipeQuery.Order.COOKING_TIME) {
+            // cooking time takes upper bits, so sorted keys are ordered by time and ID
+            long[] keys = new long[count];
+            int i = 0;
+            for (int id = selected.nextSetBit(0); id >= 0; id = selected.nextSetBit(id + 1)) {
+                keys[i++] = ((long) cookingTimes[id] << 32) | id;
+            }
+            Arrays.sort(keys);
+            long[] ids = new long[limit];
+            for (i = 0; i < limit; i++) {
+                ids[i] = keys[i] & 0xFFFFFFFFL;
+            }
+            return ids;
+        }
+
+        long[] ids = new long[limit];
+        int id = selected.nextSetBit(0);
+        for (int i = 0; i < limit; i++) {
+            ids[i] = id;
+            id = selected.nextSetBit(id + 1);
+        }
+        return ids;
+    }
+
+    /**
+     * removes all recipes, index is not used until it is built again
+     */
+    public synchronized void clear() {
+        for (MealType type : MealType.values()) {
+            types.put(type, new BitSet());
+        }
+        for (MealCategory category : MealCategory.values()) {
+            categories.put(category, new BitSet());
+        }
+        for (int i = 0; i < times.length; i++) {
+            times[i] = new BitSet();
+        }
+        all.clear();
+        cookingTimes = new int[0];
+        ready = false;
+    }
+
+    /**
+     * indexes recipe or moves indexed recipe to its new type, category and cooking time
+     * @param recipe recipe with ID
+     * @return false when ID of the recipe cannot be used as bit position
+     */
+    synchronized boolean put(Recipe recipe) {
+        long id = recipe.getId();
+        if (id < 0 || id >= Integer.MAX_VALUE) {
+            return false;
+        }
+        int bit = (int) id;
+        remove(bit);
+        if (recipe.getType() != null) {
+            types.get(recipe.getType()).set(bit);
+        }
+        if (recipe.getCategory() != null) {
+            categories.get(recipe.getCategory()).set(bit);
+        }
+        times[bucketOf(recipe.getCookingTime())].set(bit);
+        if (bit >= cookingTimes.length) {
+            cookingTimes = Arrays.copyOf(cookingTimes, Math.max(bit + 1, 2 * cookingTimes.length));
+        }
+        cookingTimes[bit] = recipe.getCookingTime();
+        all.set(bit);
+        return true;
+    }
+
+    /**
+     * removes recipe from the index
+     * @param id ID of the recipe
+     */
+    synchronized void remove(long id) {
+        if (id < 0 || id >= Integer.MAX_VALUE || !all.get((int) id)) {
+            return;
+        }
+        int bit = (int) id;
+        for (BitSet bitmap : types.values()) {
+            bitmap.clear(bit);
+        }
+        for (BitSet bitmap : categories.values()) {
+            bitmap.clear(bit);
+        }
+        times[bucketOf(cookingTimes[bit])].clear(bit);
+        all.clear(bit);
+    }
+
+    /**
+     * builds the index from all recipes read by one pass of given manager,
+     * the index is searched by the old content meanwhile and it is ready
+     * after the build, unless some recipe has too big ID
+     * @param source manager to read recipes from
+     * @return number of indexed recipes
+     * @throws ServiceFailureException when reading of recipes fails
+     */
+    long build(RecipeManager source) throws ServiceFailureException {
+        final RecipeFacetIndex built = new RecipeFacetIndex();
+        final boolean[] indexed = {true};
+        long count = source.streamAllRecipes(new RecipeHandler() {
+            @Override
+            public void handle(Recipe recipe) {
+                indexed[0] &= built.put(recipe);
+            }
+        });
+
+        synchronized (this) {
+            types.putAll(built.types);
+            categories.putAll(built.categories);
+            System.arraycopy(built.times, 0, times, 0, times.length);
+            all.clear();
+            all.or(built.all);
+            cookingTimes = built.cookingTimes;
+            ready = indexed[0];
+        }
+        return count;
+    }
+
+    /**
+     * selects recipes satisfying given criteria, null criteria are not checked
+     */
+    private BitSet select(MealType type, MealCategory category, Integer fromTime, Integer toTime) {
+        BitSet selected = (BitSet) all.clone();
+        if (type != null) {
+            selected.and(types.get(type));
+        }
+        if (category != null) {
+            selected.and(categories.get(category));
+        }
+        if (fromTime != null) {
+            selected.and(selectCookingTime(fromTime, toTime));
+        }
+        return selected;
+    }
+
+    /**
+     * selects recipes with cooking time between given borders, buckets inside
+     * the borders are taken whole, recipes of buckets on the borders are checked
+     */
+    private BitSet selectCookingTime(int fromTime, int toTime) {
+        BitSet selected = new BitSet();
+        for (int i = bucketOf(fromTime); i <= bucketOf(toTime); i++) {
+            int lower = i == 0 ? Integer.MIN_VALUE : TIME_BUCKETS[i - 1] + 1;
+            int upper = i == TIME_BUCKETS.length ? Integer.MAX_VALUE : TIME_BUCKETS[i];
+            if (fromTime <= lower && upper <= toTime) {
+                selected.or(times[i]);
+            } else {
+                BitSet bucket = times[i];
+                for (int id = bucket.nextSetBit(0); id >= 0; id = bucket.nextSetBit(id + 1)) {
+                    if (cookingTimes[id] >= fromTime && cookingTimes[id] <= toTime) {
+                        selected.set(id);
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static int countAnd(BitSet selected, BitSet bitmap) {
+        BitSet both = (BitSet) selected.clone();
+        both.and(bitmap);
+        return both.cardinality();
+    }
+
+    private static int bucketOf(int cookingTime) {
+        int i = Arrays.binarySearch(TIME_BUCKETS, cookingTime);
+        return i >= 0 ? i : -i - 1;
+    }
+}
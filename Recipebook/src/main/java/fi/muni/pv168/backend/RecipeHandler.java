@@ -0,0 +1,17 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+
+/**
+ * callback for recipes streamed from database one by one
+ * @author mulan
+ */
+public interface RecipeHandler {
+
+    /**
+     * handles one recipe read from database
+     * @param recipe recipe read from database, its ingredients are not loaded
+     * @throws ServiceFailureException when handling fails, streaming is stopped
+     */
+    void handle(Recipe recipe) throws ServiceFailureException;
+}
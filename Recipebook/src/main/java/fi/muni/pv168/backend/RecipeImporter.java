@@ -0,0 +1,450 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.JdbcSession;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.NameNormalizer;
+import fi.muni.pv168.utils.RowMapper;
+import fi.muni.pv168.utils.SessionCallback;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * imports recipes with their ingredients from CSV, one recipe per line:
+ * <pre>
+ * name,type,category,cookingTime,numPortions,instructions,ingredients
+ * Goulash,MAIN_DISH,MEAT,120,4,"cut meat, add onion",beef:500:g|onion:2:pcs
+ * </pre>
+ * type and category are names of MealType and MealCategory constants,
+ * ingredients are name:amount:unit separated by '|', fields containing
+ * commas or quotes are quoted by '"' and quotes inside them are doubled,
+ * fields cannot contain line breaks, empty lines and lines starting with '#'
+ * are skipped
+ * <p>
+ * lines are parsed by worker threads in chunks, every chunk is written in
+ * one transaction, its ingredients by one JDBC batch, number of its last line
+ * is stored in IMPORT_CHECKPOINT table in the same transaction (when name of
+ * checkpoint is set), so interrupted import continues after the last committed
+ * chunk and no chunk is imported twice, checkpoint is deleted when import
+ * finishes, invalid lines are logged and skipped
+ *
+ * @author mulan
+ */
+public class RecipeImporter {
+
+    private static final Logger logger = Logger.getLogger(
+            RecipeImporter.class.getName());
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final String INSERT_RECIPE =
+            "INSERT INTO RECIPES (NAME, TYPE, CATEGORY, COOKINGTIME, NUMPORTIONS, INSTRUCTIONS, NAME_NORM) VALUES(?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_INGREDIENT =
+            "INSERT INTO INGREDIENTS (NAME, AMOUNT, UNIT, RECIPEID) VALUES(?, ?, ?, ?)";
+    private static final RowMapper<Long> LINE_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            return rs.getLong("LINE");
+        }
+    };
+
+    private JdbcTemplate jdbc;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String checkpointName;
+
+    /**
+     * constructor, sets data source to given one
+     * @param dataSource given data source
+     */
+    public RecipeImporter(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * constructor, statements are executed by given template
+     * @param jdbc given template
+     */
+    public RecipeImporter(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * sets number of lines parsed and committed together
+     * @param chunkSize number of lines
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size has to be possitive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * sets number of threads parsing lines
+     * @param threads number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("number of threads has to be possitive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * sets name of checkpoint storing number of the last committed line,
+     * null switches checkpoints off
+     * @param checkpointName name of the checkpoint, e.g. name of imported file
+     */
+    public void setCheckpointName(String checkpointName) {
+        this.checkpointName = checkpointName;
+    }
+
+    /**
+     * imports recipes from given input, lines before checkpoint are skipped
+     * @param input CSV input, it is not closed
+     * @return statistics of the import
+     * @throws IOException when reading of input fails
+     * @throws ServiceFailureException when reading checkpoint or writing into database fails,
+     * chunks committed before are kept and import may be resumed
+     */
+    public ImportResult importRecipes(Reader input) throws IOException, ServiceFailureException {
+        if (jdbc.getDataSource() == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+        if (input == null) {
+            throw new IllegalArgumentException("input is null");
+        }
+
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        long checkpoint = readCheckpoint();
+        BufferedReader reader = new BufferedReader(input);
+
+        // futures are written in order of chunks, number of chunks
+        // waiting for writing is limited, so the input is not read whole
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Chunk>> parsed = new ArrayDeque<Future<Chunk>>();
+        try {
+            long lineNumber = 0;
+            List<String> lines = new ArrayList<String>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= checkpoint) {
+                    result.skippedLines++;
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    parsed.add(executor.submit(new Chunk(lineNumber - lines.size() + 1, lines)));
+                    lines = new ArrayList<String>(chunkSize);
+                    if (parsed.size() > 2 * threads) {
+                        write(parsed.poll(), result, start);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                parsed.add(executor.submit(new Chunk(lineNumber - lines.size() + 1, lines)));
+            }
+            while (!parsed.isEmpty()) {
+                write(parsed.poll(), result, start);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        deleteCheckpoint();
+        result.nanos = System.nanoTime() - start;
+        logger.log(Level.INFO, "Import finished: {0}", result);
+        return result;
+    }
+
+    /**
+     * waits for parsing of chunk and writes it in one transaction
+     */
+    private void write(Future<Chunk> future, ImportResult result, long start) throws ServiceFailureException {
+        final Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceFailureException("Import interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new ServiceFailureException("Parsing of recipes failed", ex.getCause());
+        }
+
+        if (!chunk.recipes.isEmpty() || checkpointName != null) {
+            try {
+                jdbc.executeInTransaction(new SessionCallback<Void>() {
+                    @Override
+                    public Void doInSession(JdbcSession session) throws SQLException, ServiceFailureException {
+                        insertChunk(session, chunk);
+                        writeCheckpoint(session, chunk.lastLine());
+                        return null;
+                    }
+                });
+            } catch (SQLException ex) {
+                String msg = "Error when importing recipes from lines " + chunk.firstLine + " - " + chunk.lastLine();
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            }
+        }
+
+        result.lines += chunk.lines.size();
+        result.rejectedLines += chunk.rejected;
+        result.recipes += chunk.recipes.size();
+        for (Recipe recipe : chunk.recipes) {
+            result.ingredients += recipe.getIngredients().size();
+        }
+        result.nanos = System.nanoTime() - start;
+        logger.log(Level.INFO, "Imported lines up to {0}, {1} rows/s",
+                new Object[] {chunk.lastLine(), (long) result.getRowsPerSecond()});
+    }
+
+    /**
+     * inserts recipes of chunk one by one and then their ingredients by one batch
+     */
+    private static void insertChunk(JdbcSession session, Chunk chunk) throws SQLException, ServiceFailureException {
+        // Derby reports only the key of the last row of a batch, so recipes are
+        // inserted one by one to get their keys, ingredients do not need keys
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (Recipe recipe : chunk.recipes) {
+            long id = session.insert(INSERT_RECIPE, recipe.getName(), MealType.toInt(recipe.getType()),
+                    MealCategory.toInt(recipe.getCategory()), recipe.getCookingTime(), recipe.getNumPortions(),
+                    recipe.getInstructions(), NameNormalizer.normalize(recipe.getName()));
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                rows.add(new Object[] {ingredient.getName(), ingredient.getAmount(), ingredient.getUnit(), id});
+            }
+        }
+        if (!rows.isEmpty()) {
+            for (int count : session.batch(INSERT_INGREDIENT, rows)) {
+                if (count == 0) {
+                    throw new ServiceFailureException("Ingredient was not imported");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of the last committed line, 0 when there is no checkpoint
+     */
+    private long readCheckpoint() throws ServiceFailureException {
+        if (checkpointName == null) {
+            return 0;
+        }
+        try {
+            Long checkpoint = jdbc.queryForObject("SELECT LINE FROM IMPORT_CHECKPOINT WHERE NAME = ?",
+                    LINE_MAPPER, checkpointName);
+            if (checkpoint == null) {
+                return 0;
+            }
+            logger.log(Level.INFO, "Resuming import after line {0}", checkpoint);
+            return checkpoint;
+        } catch (SQLException ex) {
+            String msg = "Error reading checkpoint " + checkpointName + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * stores number of the last line of chunk in transaction writing the chunk
+     */
+    private void writeCheckpoint(JdbcSession session, long lineNumber) throws SQLException {
+        if (checkpointName == null) {
+            return;
+        }
+        if (session.update("UPDATE IMPORT_CHECKPOINT SET LINE = ? WHERE NAME = ?", lineNumber, checkpointName) == 0) {
+            session.update("INSERT INTO IMPORT_CHECKPOINT (NAME, LINE) VALUES(?, ?)", checkpointName, lineNumber);
+        }
+    }
+
+    /**
+     * removes checkpoint of finished import
+     */
+    private void deleteCheckpoint() throws ServiceFailureException {
+        if (checkpointName == null) {
+            return;
+        }
+        try {
+            jdbc.update("DELETE FROM IMPORT_CHECKPOINT WHERE NAME = ?", checkpointName);
+        } catch (SQLException ex) {
+            String msg = "Error deleting checkpoint " + checkpointName + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    /**
+     * parses one line into recipe with ingredients
+     * @param line line of input
+     * @return parsed recipe
+     * @throws IllegalArgumentException when line is not valid recipe
+     */
+    static Recipe parseRecipe(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 7) {
+            throw new IllegalArgumentException("expected 7 fields, found " + fields.size());
+        }
+
+        Recipe recipe = new Recipe();
+        recipe.setName(fields.get(0));
+        recipe.setType(MealType.valueOf(fields.get(1).trim()));
+        recipe.setCategory(MealCategory.valueOf(fields.get(2).trim()));
+        recipe.setCookingTime(Integer.parseInt(fields.get(3).trim()));
+        recipe.setNumPortions(Integer.parseInt(fields.get(4).trim()));
+        recipe.setInstructions(fields.get(5));
+        if (recipe.getName().isEmpty()) {
+            throw new IllegalArgumentException("name is empty");
+        }
+        // rows, which RecipeManagerImpl would not read back, are rejected
+        if (recipe.getCookingTime() <= 0) {
+            throw new IllegalArgumentException("cooking time is 0 or less");
+        }
+        if (recipe.getNumPortions() <= 0) {
+            throw new IllegalArgumentException("number of portions is 0 or less");
+        }
+
+        String ingredients = fields.get(6).trim();
+        if (!ingredients.isEmpty()) {
+            for (String item : ingredients.split("\\|")) {
+                String[] parts = item.split(":");
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("wrong ingredient " + item);
+                }
+                double amount = Double.parseDouble(parts[1].trim());
+                if (amount <= 0) {
+                    throw new IllegalArgumentException("amount is 0 or less");
+                }
+                recipe.addIngredient(new Ingredient(parts[0].trim(), amount, parts[2].trim()));
+            }
+        }
+        return recipe;
+    }
+
+    /**
+     * splits CSV line into fields, quoted fields are unquoted
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quotes");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * lines parsed together by one worker thread
+     */
+    private static class Chunk implements Callable<Chunk> {
+
+        private final long firstLine;
+        private final List<String> lines;
+        private final List<Recipe> recipes;
+        private int rejected;
+
+        Chunk(long firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.recipes = new ArrayList<Recipe>(lines.size());
+        }
+
+        long lastLine() {
+            return firstLine + lines.size() - 1;
+        }
+
+        @Override
+        public Chunk call() {
+            long lineNumber = firstLine;
+            for (String line : lines) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    try {
+                        recipes.add(parseRecipe(line));
+                    } catch (IllegalArgumentException ex) {
+                        rejected++;
+                        logger.log(Level.WARNING, "Skipping line {0}: {1}", new Object[] {lineNumber, ex.getMessage()});
+                    }
+                }
+                lineNumber++;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * statistics of finished import
+     */
+    public static class ImportResult {
+
+        private long skippedLines;
+        private long lines;
+        private long rejectedLines;
+        private long recipes;
+        private long ingredients;
+        private long nanos;
+
+        /** @return number of lines skipped because they were committed before checkpoint */
+        public long getSkippedLines() {return skippedLines;}
+        /** @return number of lines read after checkpoint */
+        public long getLines() {return lines;}
+        /** @return number of invalid lines */
+        public long getRejectedLines() {return rejectedLines;}
+        public long getRecipes() {return recipes;}
+        public long getIngredients() {return ingredients;}
+        public long getNanos() {return nanos;}
+
+        /**
+         * @return number of inserted recipes and ingredients per second
+         */
+        public double getRowsPerSecond() {
+            return nanos == 0 ? 0 : (recipes + ingredients) * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ImportResult{" + "skippedLines=" + skippedLines + ", lines=" + lines
+                    + ", rejectedLines=" + rejectedLines + ", recipes=" + recipes
+                    + ", ingredients=" + ingredients + ", ms=" + nanos / 1000000
+                    + ", rowsPerSecond=" + (long) getRowsPerSecond() + '}';
+        }
+    }
+}
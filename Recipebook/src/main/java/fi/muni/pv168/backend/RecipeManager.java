@@ -1,6 +1,8 @@
 package fi.muni.pv168.backend;
 
 import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.Collection;
+import java.util.List;
 import java.util.SortedSet;
 
 /**
@@ -21,6 +23,20 @@ public interface RecipeManager {
      */
     void deleteRecipe(Recipe recipe) throws ServiceFailureException;
     
+    /**
+     * deletes a recipe together with all its ingredients from DB in one transaction
+     * @param id id of the recipe to be deleted
+     */
+    void deleteRecipeCascade(long id) throws ServiceFailureException;
+    
+    /**
+     * deletes recipes together with all their ingredients from DB in one transaction,
+     * ids of recipes, that are not in DB, are ignored
+     * @param ids ids of the recipes to be deleted
+     * @return number of deleted recipes
+     */
+    int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException;
+    
     /**
      * edit a recipe in DB
      * @param recipe recipe to be edited 
@@ -35,12 +51,19 @@ public interface RecipeManager {
     Recipe findRecipeById(Long id) throws ServiceFailureException;
     
     /**
-     * find recipes, that have this substring in their names
+     * find recipes, that have this substring in their names, case and accents are ignored
      * @param name name of the searched recipes
      * @return set of recipes with entered substring
      */
     SortedSet<Recipe> findRecipesByName(String name) throws ServiceFailureException;
     
+    /**
+     * find recipes, which names start with given prefix, case and accents are ignored
+     * @param prefix beginning of the name of the searched recipes
+     * @return set of recipes with names starting with prefix
+     */
+    SortedSet<Recipe> findRecipesByNamePrefix(String prefix) throws ServiceFailureException;
+    
     /**
      * find recipes by it's type
      * @param type type of the searched recipes
@@ -65,9 +88,50 @@ public interface RecipeManager {
     SortedSet<Recipe> findRecipesUptoCookingTime(int toTime) throws ServiceFailureException;
     SortedSet<Recipe> findRecipesFromCookingTime(int fromTime) throws ServiceFailureException;
     
+    /**
+     * find recipes, that contain ingredient with given name, together with all their ingredients
+     * recipes and ingredients are loaded by single query
+     * @param ingredientName name of the ingredient
+     * @return set of recipes with their ingredients set
+     */
+    SortedSet<Recipe> findRecipesByIngredientName(String ingredientName) throws ServiceFailureException;
+    
     /**
      * find all recipes in the recipe book
      * @return all recipes in the system
      */
     SortedSet<Recipe> findAllRecipes() throws ServiceFailureException;
+    
+    /**
+     * find one page of recipes ordered by ID, pages are addressed by the last ID
+     * of previous page, so every page costs the same
+     * @param lastId ID of the last recipe of previous page, 0 for the first page
+     * @param limit maximal number of recipes in the page
+     * @return at most limit recipes with ID greater than lastId
+     */
+    SortedSet<Recipe> findRecipesAfter(long lastId, int limit) throws ServiceFailureException;
+    
+    /**
+     * reads all recipes by forward-only cursor and passes them one by one to the handler,
+     * recipes are not collected, so whole recipe table never has to fit into memory
+     * @param handler handler of read recipes
+     * @return number of handled recipes
+     */
+    long streamAllRecipes(RecipeHandler handler) throws ServiceFailureException;
+    
+    /**
+     * find recipes satisfying all criteria of given query by single database query
+     * @param query criteria of searched recipes
+     * @return recipes in order and count given by query
+     */
+    List<Recipe> findRecipes(RecipeQuery query) throws ServiceFailureException;
+    
+    /**
+     * reads recipes satisfying all criteria of given query by forward-only cursor
+     * and passes them one by one to the handler
+     * @param query criteria of searched recipes
+     * @param handler handler of read recipes
+     * @return number of handled recipes
+     */
+    long streamRecipes(RecipeQuery query, RecipeHandler handler) throws ServiceFailureException;
 }
@@ -3,11 +3,17 @@ package fi.muni.pv168.backend;
 import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import fi.muni.pv168.utils.JdbcSession;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.NameNormalizer;
+import fi.muni.pv168.utils.RowCallback;
+import fi.muni.pv168.utils.RowMapper;
+import fi.muni.pv168.utils.SessionCallback;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -22,14 +28,44 @@ public class RecipeManagerImpl implements RecipeManager {
 
     private static final Logger logger = Logger.getLogger(
             IngredientManagerImpl.class.getName());
-    private DataSource dataSource;
+    private static final int DEFAULT_FETCH_SIZE = 100;
+    private static final RowMapper<Recipe> RECIPE_MAPPER = new RowMapper<Recipe>() {
+        @Override
+        public Recipe mapRow(ResultSet rs) throws SQLException {
+            Recipe recipe = rowToRecipe(rs);
+            validate(recipe);
+            return recipe;
+        }
+    };
+    private JdbcTemplate jdbc;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
 
     /**
      * constructor, sets data source to given one
      * @param dataSource given data source
      */
     public RecipeManagerImpl(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(new JdbcTemplate(dataSource));
+    }
+
+    /**
+     * constructor, statements are executed by given template, so more managers
+     * may share its statement timings
+     * @param jdbc given template
+     */
+    public RecipeManagerImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * sets number of rows fetched from database at once by streaming methods
+     * @param fetchSize number of rows
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size has to be possitive");
+        }
+        this.fetchSize = fetchSize;
     }
 
     @Override
@@ -37,40 +73,18 @@ public class RecipeManagerImpl implements RecipeManager {
         checkDataSource();
         validate(recipe);
 
-        Connection con = null;
-        PreparedStatement query = null;
-
         try {
-            con = dataSource.getConnection();
-            con.setAutoCommit(false);
-
-            query = con.prepareStatement(
-                    "INSERT INTO RECIPES (NAME, TYPE, CATEGORY, COOKINGTIME, NUMPORTIONS, INSTRUCTIONS) VALUES(?, ?, ?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-
-            query.setString(1, recipe.getName());
-            query.setInt(2, MealType.toInt(recipe.getType()));
-            query.setInt(3, MealCategory.toInt(recipe.getCategory()));
-            query.setInt(4, recipe.getCookingTime());
-            query.setInt(5, recipe.getNumPortions());
-            query.setString(6, recipe.getInstructions());
-
-            int count = query.executeUpdate();
-
-            DBUtils.checkUpdatesCount(count, true);
-
-            long newId = DBUtils.getId(query.getGeneratedKeys());
+            long newId = jdbc.insert(
+                    "INSERT INTO RECIPES (NAME, TYPE, CATEGORY, COOKINGTIME, NUMPORTIONS, INSTRUCTIONS, NAME_NORM) VALUES(?, ?, ?, ?, ?, ?, ?)",
+                    recipe.getName(), MealType.toInt(recipe.getType()), MealCategory.toInt(recipe.getCategory()),
+                    recipe.getCookingTime(), recipe.getNumPortions(), recipe.getInstructions(),
+                    NameNormalizer.normalize(recipe.getName()));
 
             recipe.setId(newId);
-
-            con.commit();
         } catch (SQLException ex) {
             String msg = "Error when inserting recipe into database";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
         }
     }
 
@@ -83,35 +97,18 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new InvalidEntityException("recipe id is null");
         }
 
-        Connection con = null;
-        PreparedStatement query = null;
         try {
-            con = dataSource.getConnection();
-            con.setAutoCommit(false);
-
-            query = con.prepareStatement(
-                    "UPDATE RECIPES SET NAME = ?, TYPE = ?, CATEGORY = ?, COOKINGTIME = ?, NUMPORTIONS = ?, INSTRUCTIONS = ? WHERE ID = ?");
-
-            query.setString(1, recipe.getName());
-            query.setInt(2, MealType.toInt(recipe.getType()));
-            query.setInt(3, MealCategory.toInt(recipe.getCategory()));
-            query.setInt(4, recipe.getCookingTime());
-            query.setInt(5, recipe.getNumPortions());
-            query.setString(6, recipe.getInstructions());
-            query.setLong(7, recipe.getId());
-
-            int count = query.executeUpdate();
+            int count = jdbc.update(
+                    "UPDATE RECIPES SET NAME = ?, TYPE = ?, CATEGORY = ?, COOKINGTIME = ?, NUMPORTIONS = ?, INSTRUCTIONS = ?, NAME_NORM = ? WHERE ID = ?",
+                    recipe.getName(), MealType.toInt(recipe.getType()), MealCategory.toInt(recipe.getCategory()),
+                    recipe.getCookingTime(), recipe.getNumPortions(), recipe.getInstructions(),
+                    NameNormalizer.normalize(recipe.getName()), recipe.getId());
 
             DBUtils.checkUpdatesCount(count, false);
-
-            con.commit();
         } catch (SQLException ex) {
             String msg = "Error when updating recipe in the DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
         }
     }
 
@@ -124,36 +121,65 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new InvalidEntityException("recipe ID is null");
         }
 
-        if (this.findRecipeById(recipe.getId()) == null) {
-            throw new IllegalArgumentException("recipe is not in DB");
-        }
+        deleteRecipeCascade(recipe.getId());
+    }
 
-        Connection connection = null;
-        PreparedStatement querry = null;
+    @Override
+    public void deleteRecipeCascade(long id) throws ServiceFailureException {
+        checkDataSource();
 
         try {
-            connection = dataSource.getConnection();
+            // ingredients are deleted by ON DELETE CASCADE of their foreign key
+            int count = jdbc.update("DELETE FROM RECIPES WHERE ID = ?", id);
 
-            connection.setAutoCommit(false);
-
-            querry = connection.prepareStatement(
-                    "DELETE FROM RECIPES WHERE ID = ?");
+            if (count == 0) {
+                throw new IllegalArgumentException("recipe is not in DB");
+            }
+            DBUtils.checkUpdatesCount(count, false);
 
-            querry.setLong(1, recipe.getId());
+        } catch (SQLException ex) {
+            String msg = "Error when deleting recipe " + id + " from the db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
 
-            int count = querry.executeUpdate();
+    @Override
+    public int deleteRecipesCascade(Collection<Long> ids) throws ServiceFailureException {
+        checkDataSource();
 
-            DBUtils.checkUpdatesCount(count, false);
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
 
-            connection.commit();
+        final List<Object[]> rows = new ArrayList<Object[]>(ids.size());
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id is null");
+            }
+            rows.add(new Object[] {id});
+        }
 
+        try {
+            return jdbc.executeInTransaction(new SessionCallback<Integer>() {
+                @Override
+                public Integer doInSession(JdbcSession session) throws SQLException {
+                    int deleted = 0;
+                    for (int count : session.batch("DELETE FROM RECIPES WHERE ID = ?", rows)) {
+                        if (count > 0) {
+                            deleted += count;
+                        }
+                    }
+                    return deleted;
+                }
+            });
         } catch (SQLException ex) {
-            String msg = "Error when updating recipe in the db";
+            String msg = "Error when deleting recipes " + ids + " from the db";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.doRollbackQuietly(connection);
-            DBUtils.closeQuietly(connection, querry);
         }
     }
 
@@ -165,108 +191,76 @@ public class RecipeManagerImpl implements RecipeManager {
             throw new IllegalArgumentException();
         }
 
-        Connection con = null;
-        PreparedStatement query = null;
-
+        Recipe output;
         try {
-            con = dataSource.getConnection();
-            query = con.prepareStatement("SELECT * FROM RECIPES WHERE ID = ?");
-
-            query.setLong(1, id);
-
-            ResultSet resultDB = query.executeQuery();
-
-            boolean b = resultDB.next();
-            
-            if (!b) {
-                throw new IllegalArgumentException();
-            }
-            
-            Recipe output = rowToRecipe(resultDB);
-            validate(output);
-
-            return output;
+            output = jdbc.queryForObject("SELECT * FROM RECIPES WHERE ID = ?", RECIPE_MAPPER, id);
         } catch (SQLException ex) {
             String msg = "Error getting recipe for ID " + id + " from DB";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-        } finally {
-            DBUtils.closeQuietly(con, query);
         }
+
+        if (output == null) {
+            throw new IllegalArgumentException();
+        }
+        return output;
     }
 
     @Override
     public SortedSet<Recipe> findRecipesByName(String name) throws ServiceFailureException {
         checkDataSource();
 
-        Connection connection = null;
-        Statement query = null;
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
 
         try {
-            connection = dataSource.getConnection();
-            query = connection.createStatement();
-
-            boolean res = query.execute("SELECT * FROM RECIPES WHERE UPPER(NAME) LIKE UPPER('%" + name + "%')");
-            if (!res) {
-                throw new ServiceFailureException("selecting by name failure");
-            }
-            
-            ResultSet resultsDB = query.getResultSet();
-
-            SortedSet<Recipe> result = new TreeSet<Recipe>();
-            while (resultsDB.next()) {
-                Recipe output = rowToRecipe(resultsDB);
-                validate(output);
-
-                result.add(output);
-            }
-
-            return result;
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE NAME_NORM LIKE ? ESCAPE '\\'", RECIPE_MAPPER,
+                    "%" + NameNormalizer.escapeLike(NameNormalizer.normalize(name)) + "%"));
 
         } catch (SQLException ex) {
             String msg = "Error getting recipe for name " + name + " from DB";
 
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-
-        } finally {
-            DBUtils.closeQuietly(connection, query);
         }
     }
 
     @Override
-    public SortedSet<Recipe> findRecipesByType(MealType type) throws ServiceFailureException {
+    public SortedSet<Recipe> findRecipesByNamePrefix(String prefix) throws ServiceFailureException {
         checkDataSource();
 
-        Connection connection = null;
-        PreparedStatement query = null;
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix is null");
+        }
 
         try {
-            connection = dataSource.getConnection();
-            query = connection.prepareStatement("SELECT * FROM RECIPES WHERE TYPE = ?");
+            // range instead of LIKE, so that index on NAME_NORM is always used
+            String normalized = NameNormalizer.normalize(prefix);
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE NAME_NORM >= ? AND NAME_NORM < ?", RECIPE_MAPPER,
+                    normalized, normalized + Character.MAX_VALUE));
 
-            query.setInt(1, MealType.toInt(type));
-
-            ResultSet resultsDB = query.executeQuery();
+        } catch (SQLException ex) {
+            String msg = "Error getting recipe for name prefix " + prefix + " from DB";
 
-            SortedSet<Recipe> result = new TreeSet<Recipe>();
-            while (resultsDB.next()) {
-                Recipe output = rowToRecipe(resultsDB);
-                validate(output);
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
 
-                result.add(output);
-            }
+    @Override
+    public SortedSet<Recipe> findRecipesByType(MealType type) throws ServiceFailureException {
+        checkDataSource();
 
-            return result;
+        try {
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE TYPE = ?", RECIPE_MAPPER,
+                    MealType.toInt(type)));
 
         } catch (SQLException ex) {
             String msg = "Error getting recipe for type " + type + " from DB";
 
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-
-        } finally {
-            DBUtils.closeQuietly(connection, query);
         }
     }
 
@@ -274,35 +268,15 @@ public class RecipeManagerImpl implements RecipeManager {
     public SortedSet<Recipe> findRecipesByCategory(MealCategory category) throws ServiceFailureException {
         checkDataSource();
 
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-            query = connection.prepareStatement("SELECT * FROM RECIPES WHERE CATEGORY = ?");
-
-            query.setInt(1, MealCategory.toInt(category));
-
-            ResultSet resultsDB = query.executeQuery();
-
-            SortedSet<Recipe> result = new TreeSet<Recipe>();
-            while (resultsDB.next()) {
-                Recipe output = rowToRecipe(resultsDB);
-                validate(output);
-
-                result.add(output);
-            }
-
-            return result;
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE CATEGORY = ?", RECIPE_MAPPER,
+                    MealCategory.toInt(category)));
 
         } catch (SQLException ex) {
             String msg = "Error getting recipe for category " + category + " from DB";
 
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-
-        } finally {
-            DBUtils.closeQuietly(connection, query);
         }
     }
 
@@ -310,36 +284,15 @@ public class RecipeManagerImpl implements RecipeManager {
     public SortedSet<Recipe> findRecipesByCookingTime(int fromTime, int toTime) throws ServiceFailureException {
         checkDataSource();
 
-        Connection connection = null;
-        PreparedStatement query = null;
-
         try {
-            connection = dataSource.getConnection();
-            query = connection.prepareStatement("SELECT * FROM RECIPES WHERE COOKINGTIME BETWEEN ? AND ?");
-
-            query.setInt(1, fromTime);
-            query.setInt(2, toTime);
-            
-            ResultSet resultsDB = query.executeQuery();
-
-            SortedSet<Recipe> result = new TreeSet<Recipe>();
-            while (resultsDB.next()) {
-                Recipe output = rowToRecipe(resultsDB);
-                validate(output);
-
-                result.add(output);
-            }
-
-            return result;
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE COOKINGTIME BETWEEN ? AND ?", RECIPE_MAPPER,
+                    fromTime, toTime));
 
         } catch (SQLException ex) {
             String msg = "Error getting recipe for cooking times " + fromTime + " and " + toTime + " from DB";
 
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
-
-        } finally {
-            DBUtils.closeQuietly(connection, query);
         }
     }
 
@@ -354,36 +307,143 @@ public class RecipeManagerImpl implements RecipeManager {
     }
 
     @Override
-    public SortedSet<Recipe> findAllRecipes() throws ServiceFailureException {
+    public SortedSet<Recipe> findRecipesByIngredientName(String ingredientName) throws ServiceFailureException {
         checkDataSource();
 
-        Connection connection = null;
-        PreparedStatement query = null;
+        if (ingredientName == null) {
+            throw new IllegalArgumentException("ingredient name is null");
+        }
 
+        // rows are ordered by recipe id, so every recipe is built from one block of rows
+        final SortedSet<Recipe> result = new TreeSet<Recipe>();
         try {
-            connection = dataSource.getConnection();
-            query = connection.prepareStatement("SELECT * FROM RECIPES");
+            jdbc.queryForEach(
+                    "SELECT R.ID, R.NAME, R.TYPE, R.CATEGORY, R.COOKINGTIME, R.NUMPORTIONS, R.INSTRUCTIONS, "
+                    + "I.ID AS INGREDIENTID, I.NAME AS INGREDIENTNAME, I.AMOUNT AS INGREDIENTAMOUNT, I.UNIT AS INGREDIENTUNIT "
+                    + "FROM RECIPES R JOIN INGREDIENTS I ON I.RECIPEID = R.ID "
+                    + "WHERE R.ID IN (SELECT RECIPEID FROM INGREDIENTS WHERE NAME = ?) "
+                    + "ORDER BY R.ID",
+                    fetchSize, new RowCallback() {
+                private Recipe current;
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    if (current == null || current.getId() != rs.getLong("ID")) {
+                        current = RECIPE_MAPPER.mapRow(rs);
+                        result.add(current);
+                    }
+                    current.addIngredient(rowToJoinedIngredient(rs));
+                }
+            }, ingredientName);
 
-            ResultSet resultsDB = query.executeQuery();
+            return result;
 
-            SortedSet<Recipe> result = new TreeSet<Recipe>();
-            while (resultsDB.next()) {
-                Recipe output = rowToRecipe(resultsDB);
-                validate(output);
+        } catch (SQLException ex) {
+            String msg = "Error getting recipes for ingredient " + ingredientName + " from DB";
 
-                result.add(output);
-            }
-            
-            return result;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public SortedSet<Recipe> findAllRecipes() throws ServiceFailureException {
+        checkDataSource();
+
+        try {
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES", RECIPE_MAPPER));
 
         } catch (SQLException ex) {
             String msg = "Error getting recipe from DB";
 
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public SortedSet<Recipe> findRecipesAfter(long lastId, int limit) throws ServiceFailureException {
+        checkDataSource();
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit has to be possitive");
+        }
+
+        try {
+            return new TreeSet<Recipe>(jdbc.query("SELECT * FROM RECIPES WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY",
+                    RECIPE_MAPPER, lastId, limit));
+
+        } catch (SQLException ex) {
+            String msg = "Error getting recipes after ID " + lastId + " from DB";
+
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public long streamAllRecipes(RecipeHandler handler) throws ServiceFailureException {
+        checkDataSource();
+
+        if (handler == null) {
+            throw new IllegalArgumentException("handler is null");
+        }
+
+        try {
+            return jdbc.queryForEach("SELECT * FROM RECIPES", fetchSize, handlingCallback(handler));
+
+        } catch (SQLException ex) {
+            String msg = "Error streaming recipes from DB";
+
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public List<Recipe> findRecipes(RecipeQuery recipeQuery) throws ServiceFailureException {
+        checkDataSource();
+
+        if (recipeQuery == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+
+        try {
+            List<Object> params = new ArrayList<Object>();
+            String sql = recipeQuerySql(recipeQuery, params);
+
+            return jdbc.query(sql, RECIPE_MAPPER, params.toArray());
+
+        } catch (SQLException ex) {
+            String msg = "Error getting recipes for " + recipeQuery + " from DB";
+
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public long streamRecipes(RecipeQuery recipeQuery, RecipeHandler handler) throws ServiceFailureException {
+        checkDataSource();
+
+        if (recipeQuery == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("handler is null");
+        }
+
+        try {
+            List<Object> params = new ArrayList<Object>();
+            String sql = recipeQuerySql(recipeQuery, params);
+
+            return jdbc.queryForEach(sql, fetchSize, handlingCallback(handler), params.toArray());
+
+        } catch (SQLException ex) {
+            String msg = "Error streaming recipes for " + recipeQuery + " from DB";
 
-        } finally {
-            DBUtils.closeQuietly(connection, query);
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
         }
     }
 
@@ -391,33 +451,121 @@ public class RecipeManagerImpl implements RecipeManager {
      * checks if data source is not null
      */
     private void checkDataSource() {
-        if (dataSource == null) {
+        if (jdbc.getDataSource() == null) {
             throw new IllegalStateException("DataSource is not set");
         }
     }
 
+    /**
+     * creates callback passing mapped recipes to given handler
+     * @param handler handler of recipes
+     * @return row callback
+     */
+    static private RowCallback handlingCallback(final RecipeHandler handler) {
+        return new RowCallback() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException, ServiceFailureException {
+                handler.handle(RECIPE_MAPPER.mapRow(rs));
+            }
+        };
+    }
+
+    /**
+     * compiles given query into text of one statement, statement text depends only
+     * on which criteria are set, so there is small number of statements to cache
+     * @param recipeQuery query to compile
+     * @param params list, parameters of the statement are added to
+     * @return text of the statement
+     */
+    static private String recipeQuerySql(RecipeQuery recipeQuery, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM RECIPES WHERE 1 = 1");
+
+        if (recipeQuery.getNamePrefix() != null) {
+            String normalized = NameNormalizer.normalize(recipeQuery.getNamePrefix());
+            sql.append(" AND NAME_NORM >= ? AND NAME_NORM < ?");
+            params.add(normalized);
+            params.add(normalized + Character.MAX_VALUE);
+        }
+        if (recipeQuery.getName() != null) {
+            sql.append(" AND NAME_NORM LIKE ? ESCAPE '\\'");
+            params.add("%" + NameNormalizer.escapeLike(NameNormalizer.normalize(recipeQuery.getName())) + "%");
+        }
+        if (recipeQuery.getType() != null) {
+            sql.append(" AND TYPE = ?");
+            params.add(MealType.toInt(recipeQuery.getType()));
+        }
+        if (recipeQuery.getCategory() != null) {
+            sql.append(" AND CATEGORY = ?");
+            params.add(MealCategory.toInt(recipeQuery.getCategory()));
+        }
+        if (recipeQuery.getFromTime() != null) {
+            sql.append(" AND COOKINGTIME BETWEEN ? AND ?");
+            params.add(recipeQuery.getFromTime());
+            params.add(recipeQuery.getToTime());
+        }
+        if (recipeQuery.getMinPortions() != null) {
+            sql.append(" AND NUMPORTIONS BETWEEN ? AND ?");
+            params.add(recipeQuery.getMinPortions());
+            params.add(recipeQuery.getMaxPortions());
+        }
+        for (String ingredientName : recipeQuery.getIngredientNames()) {
+            sql.append(" AND EXISTS (SELECT 1 FROM INGREDIENTS WHERE INGREDIENTS.RECIPEID = RECIPES.ID AND INGREDIENTS.NAME = ?)");
+            params.add(ingredientName);
+        }
+
+        switch (recipeQuery.getOrder()) {
+            case NAME:
+                sql.append(" ORDER BY NAME_NORM, ID");
+                break;
+            case COOKING_TIME:
+                sql.append(" ORDER BY COOKINGTIME, ID");
+                break;
+            default:
+                sql.append(" ORDER BY ID");
+        }
+        if (recipeQuery.getLimit() > 0) {
+            sql.append(" FETCH FIRST ? ROWS ONLY");
+            params.add(recipeQuery.getLimit());
+        }
+
+        return sql.toString();
+    }
+
     /**
      * transfers results from database into new recipe
      * @param results database output
      * @return new recipe
+     * @throws SQLException when reading of the row fails
      */
-    static private Recipe rowToRecipe(ResultSet results) {
+    static private Recipe rowToRecipe(ResultSet results) throws SQLException {
         Recipe newRecipe = new Recipe();
 
-        try {
-            newRecipe.setId(results.getLong("id"));
-            newRecipe.setName(results.getString("name"));
-            newRecipe.setType(MealType.fromInt(results.getInt("type")));
-            newRecipe.setCategory(MealCategory.fromInt(results.getInt("category")));
-            newRecipe.setCookingTime(results.getInt("cookingTime"));
-            newRecipe.setNumPortions(results.getInt("numPortions"));
-            newRecipe.setInstructions(results.getString("instructions"));
-        } catch (SQLException ex) {
-            logger.log(Level.SEVERE, null, ex);
-        }
+        newRecipe.setId(results.getLong("id"));
+        newRecipe.setName(results.getString("name"));
+        newRecipe.setType(MealType.fromInt(results.getInt("type")));
+        newRecipe.setCategory(MealCategory.fromInt(results.getInt("category")));
+        newRecipe.setCookingTime(results.getInt("cookingTime"));
+        newRecipe.setNumPortions(results.getInt("numPortions"));
+        newRecipe.setInstructions(results.getString("instructions"));
         return newRecipe;
     }
 
+    /**
+     * transfers ingredient columns of joined recipe and ingredient row into new ingredient
+     * @param results database output
+     * @return new ingredient
+     * @throws SQLException when reading of the row fails
+     */
+    static private Ingredient rowToJoinedIngredient(ResultSet results) throws SQLException {
+        Ingredient newIngredient = new Ingredient();
+
+        newIngredient.setId(results.getLong("ingredientId"));
+        newIngredient.setName(results.getString("ingredientName"));
+        newIngredient.setAmount(results.getDouble("ingredientAmount"));
+        newIngredient.setUnit(results.getString("ingredientUnit"));
+        return newIngredient;
+    }
+
     /**
      * validate, that given recipe is valid entity
      * @param recipe 
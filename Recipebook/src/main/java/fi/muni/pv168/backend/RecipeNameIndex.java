@@ -0,0 +1,332 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.CompletionTrie;
+import fi.muni.pv168.utils.FuzzyDictionary;
+import fi.muni.pv168.utils.NameNormalizer;
+import fi.muni.pv168.utils.PostingList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * trigram index of recipe names, every three consecutive characters of
+ * normalized names have a posting list of IDs of recipes containing them,
+ * recipes containing searched text are found by intersection of posting
+ * lists of its trigrams and the candidates are verified against kept
+ * normalized names, so the search does not read names, which cannot match
+ * <p>
+ * texts shorter than three characters have no trigram, they are searched
+ * in all kept names, names are kept in CompletionTrie too, which suggests
+ * names weighted by number of recipes having them, and words of names are
+ * kept in FuzzyDictionary, which corrects misspelled words of searched
+ * text, index is not used until it is built and is maintained by
+ * NameIndexingRecipeManager
+ *
+ * @author mulan
+ */
+public class RecipeNameIndex {
+
+    /**
+     * biggest edit distance of misspelled words
+     */
+    public static final int MAX_EDIT_DISTANCE = 2;
+
+    /**
+     * number of corrections of one misspelled word, which are searched
+     */
+    private static final int MAX_CORRECTIONS = 3;
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Map<Long, PostingList> postings = new HashMap<Long, PostingList>();
+    private final Map<Long, String> names = new HashMap<Long, String>();
+    private CompletionTrie completions = new CompletionTrie();
+    private FuzzyDictionary words = new FuzzyDictionary(MAX_EDIT_DISTANCE);
+    private boolean ready;
+
+    /**
+     * @return true when the index was built and was not invalidated since then
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    synchronized void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * @return number of indexed recipes
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    /**
+     * @return number of distinct trigrams
+     */
+    public synchronized int getTrigramCount() {
+        return postings.size();
+    }
+
+    /**
+     * finds recipes, which contain given text in their names, case and accents are ignored
+     * @param text searched text
+     * @return IDs of the recipes, null when the index is not ready
+     */
+    public synchronized SortedSet<Long> findRecipeIds(String text) {
+        if (!ready) {
+            return null;
+        }
+        return find(NameNormalizer.normalize(text));
+    }
+
+    /**
+     * finds recipes, which contain all words of given text in their names,
+     * words, which are not in any name, are replaced by closest words of
+     * names, longer words may be corrected more, up to MAX_EDIT_DISTANCE
+     * @param text searched text
+     * @return IDs of the recipes ordered by sum of distances of corrected
+     *         words and by ID, null when the index is not ready
+     */
+    public synchronized List<Long> findRecipeIdsFuzzy(String text) {
+        if (!ready) {
+            return null;
+        }
+        String searched = NameNormalizer.normalize(text);
+        final Map<Long, Integer> distances = new HashMap<Long, Integer>();
+        boolean first = true;
+        for (String word : wordsOf(searched)) {
+            Map<Long, Integer> wordDistances = new HashMap<Long, Integer>();
+            for (Long id : find(word)) {
+                wordDistances.put(id, 0);
+            }
+            if (wordDistances.isEmpty()) {
+                for (FuzzyDictionary.Match match : corrections(word)) {
+                    for (Long id : find(match.getKey())) {
+                        Integer known = wordDistances.get(id);
+                        if (known == null || known > match.getDistance()) {
+                            wordDistances.put(id, match.getDistance());
+                        }
+                    }
+                }
+            }
+            if (first) {
+                distances.putAll(wordDistances);
+                first = false;
+            } else {
+                // every word has to match, distances of words are summed
+                distances.keySet().retainAll(wordDistances.keySet());
+                for (Map.Entry<Long, Integer> entry : distances.entrySet()) {
+                    entry.setValue(entry.getValue() + wordDistances.get(entry.getKey()));
+                }
+            }
+        }
+
+        List<Long> result = new ArrayList<Long>(distances.keySet());
+        Collections.sort(result, new Comparator<Long>() {
+            @Override
+            public int compare(Long id1, Long id2) {
+                int d = distances.get(id1) - distances.get(id2);
+                return d != 0 ? d : id1.compareTo(id2);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * returns closest words of names, short words are corrected less,
+     * so they do not match almost anything
+     */
+    private List<FuzzyDictionary.Match> corrections(String word) {
+        int distance = Math.min(MAX_EDIT_DISTANCE, word.length() / 3);
+        List<FuzzyDictionary.Match> matches = words.lookup(word, distance);
+        return matches.size() > MAX_CORRECTIONS ? matches.subList(0, MAX_CORRECTIONS) : matches;
+    }
+
+    private SortedSet<Long> find(String searched) {
+        SortedSet<Long> result = new TreeSet<Long>();
+        Set<Long> trigrams = trigrams(searched);
+        if (trigrams.isEmpty()) {
+            for (Map.Entry<Long, String> entry : names.entrySet()) {
+                if (entry.getValue().contains(searched)) {
+                    result.add(entry.getKey());
+                }
+            }
+            return result;
+        }
+
+        PostingList[] lists = new PostingList[trigrams.size()];
+        int i = 0;
+        for (Long trigram : trigrams) {
+            PostingList list = postings.get(trigram);
+            if (list == null) {
+                return result;
+            }
+            lists[i++] = list;
+        }
+        // trigrams of a candidate may be in other order than in searched text
+        for (long id : PostingList.intersect(lists)) {
+            if (names.get(id).contains(searched)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * suggests names of recipes starting with given prefix, case and accents are ignored
+     * @param prefix beginning of the name
+     * @param k maximal number of suggestions
+     * @return names shared by most recipes first, null when the index is not ready
+     */
+    public synchronized List<String> suggest(String prefix, int k) {
+        if (!ready) {
+            return null;
+        }
+        return completions.complete(NameNormalizer.normalize(prefix), k);
+    }
+
+    /**
+     * indexes recipe or moves indexed recipe to its new name
+     * @param id ID of the recipe
+     * @param name name of the recipe
+     */
+    synchronized void put(long id, String name) {
+        String normalized = NameNormalizer.normalize(name);
+        String previous = names.put(id, normalized);
+        if (normalized.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            completions.add(previous, null, -1);
+            addWords(words, previous, -1);
+        }
+        completions.add(normalized, name, 1);
+        addWords(words, normalized, 1);
+        Set<Long> added = trigrams(normalized);
+        if (previous != null) {
+            Set<Long> removed = trigrams(previous);
+            removed.removeAll(added);
+            removeTrigrams(id, removed);
+        }
+        for (Long trigram : added) {
+            PostingList list = postings.get(trigram);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(trigram, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * removes recipe from the index
+     * @param id ID of the recipe
+     */
+    synchronized void remove(long id) {
+        String previous = names.remove(id);
+        if (previous != null) {
+            removeTrigrams(id, trigrams(previous));
+            completions.add(previous, null, -1);
+            addWords(words, previous, -1);
+        }
+    }
+
+    /**
+     * builds the index from all recipes read by one pass of given manager,
+     * the index is searched by the old content meanwhile and it is ready
+     * after the build
+     * @param source manager to read recipes from
+     * @return number of indexed recipes
+     * @throws ServiceFailureException when reading of recipes fails
+     */
+    long build(RecipeManager source) throws ServiceFailureException {
+        final Map<Long, String> builtNames = new HashMap<Long, String>();
+        final Map<Long, PostingList.Builder> builders = new HashMap<Long, PostingList.Builder>();
+        final CompletionTrie builtCompletions = new CompletionTrie();
+        final FuzzyDictionary builtWords = new FuzzyDictionary(MAX_EDIT_DISTANCE);
+        long count = source.streamAllRecipes(new RecipeHandler() {
+            @Override
+            public void handle(Recipe recipe) {
+                String normalized = NameNormalizer.normalize(recipe.getName());
+                builtNames.put(recipe.getId(), normalized);
+                builtCompletions.add(normalized, recipe.getName(), 1);
+                addWords(builtWords, normalized, 1);
+                for (Long trigram : trigrams(normalized)) {
+                    PostingList.Builder builder = builders.get(trigram);
+                    if (builder == null) {
+                        builder = new PostingList.Builder();
+                        builders.put(trigram, builder);
+                    }
+                    builder.add(recipe.getId());
+                }
+            }
+        });
+
+        Map<Long, PostingList> built = new HashMap<Long, PostingList>();
+        for (Map.Entry<Long, PostingList.Builder> entry : builders.entrySet()) {
+            built.put(entry.getKey(), entry.getValue().build());
+        }
+
+        synchronized (this) {
+            postings.clear();
+            postings.putAll(built);
+            names.clear();
+            names.putAll(builtNames);
+            completions = builtCompletions;
+            words = builtWords;
+            ready = true;
+        }
+        return count;
+    }
+
+    private void removeTrigrams(long id, Set<Long> trigrams) {
+        for (Long trigram : trigrams) {
+            PostingList list = postings.get(trigram);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    private static void addWords(FuzzyDictionary dictionary, String normalized, long delta) {
+        for (String word : wordsOf(normalized)) {
+            dictionary.add(word, null, delta);
+        }
+    }
+
+    static List<String> wordsOf(String text) {
+        List<String> result = new ArrayList<String>();
+        for (String word : WORD_SEPARATOR.split(text)) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns distinct trigrams of given text, characters of every trigram
+     * are packed into one number
+     */
+    static Set<Long> trigrams(String text) {
+        Set<Long> trigrams = new HashSet<Long>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,180 @@
+package fi.muni.pv168.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * criteria for searching recipes, every set criterion has to be satisfied
+ * by found recipes, criteria are combined by chaining:
+ * <pre>
+ * new RecipeQuery().type(MealType.SOUP).cookingTime(0, 30).ingredient("potatoes").limit(10)
+ * </pre>
+ * @author mulan
+ */
+public class RecipeQuery {
+
+    /**
+     * order of found recipes
+     */
+    public enum Order {
+        ID, NAME, COOKING_TIME
+    }
+
+    private String name;
+    private String namePrefix;
+    private MealType type;
+    private MealCategory category;
+    private Integer fromTime;
+    private Integer toTime;
+    private Integer minPortions;
+    private Integer maxPortions;
+    private List<String> ingredientNames = new ArrayList<String>();
+    private Order order = Order.ID;
+    private int limit;
+
+    /**
+     * recipes have to contain given substring in their names, case and accents are ignored
+     * @param name substring of the name
+     * @return this query
+     */
+    public RecipeQuery name(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * recipes names have to start with given prefix, case and accents are ignored
+     * @param prefix beginning of the name
+     * @return this query
+     */
+    public RecipeQuery namePrefix(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix cannot be null");
+        }
+        this.namePrefix = prefix;
+        return this;
+    }
+
+    /**
+     * recipes have to be of given type
+     * @param type type of the meal
+     * @return this query
+     */
+    public RecipeQuery type(MealType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("type cannot be null");
+        }
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * recipes have to be of given category
+     * @param category category of the meal
+     * @return this query
+     */
+    public RecipeQuery category(MealCategory category) {
+        if (category == null) {
+            throw new IllegalArgumentException("category cannot be null");
+        }
+        this.category = category;
+        return this;
+    }
+
+    /**
+     * cooking time of recipes has to be between given borders, borders included
+     * @param fromTime lower border of cooking time
+     * @param toTime upper border of cooking time
+     * @return this query
+     */
+    public RecipeQuery cookingTime(int fromTime, int toTime) {
+        if (fromTime < 0 || toTime < fromTime) {
+            throw new IllegalArgumentException("wrong cooking time borders");
+        }
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        return this;
+    }
+
+    /**
+     * number of portions of recipes has to be between given borders, borders included
+     * @param minPortions lower border of number of portions
+     * @param maxPortions upper border of number of portions
+     * @return this query
+     */
+    public RecipeQuery portions(int minPortions, int maxPortions) {
+        if (minPortions < 1 || maxPortions < minPortions) {
+            throw new IllegalArgumentException("wrong number of portions borders");
+        }
+        this.minPortions = minPortions;
+        this.maxPortions = maxPortions;
+        return this;
+    }
+
+    /**
+     * recipes have to contain ingredient with given name, may be called repeatedly
+     * @param ingredientName name of required ingredient
+     * @return this query
+     */
+    public RecipeQuery ingredient(String ingredientName) {
+        if (ingredientName == null) {
+            throw new IllegalArgumentException("ingredient name cannot be null");
+        }
+        this.ingredientNames.add(ingredientName);
+        return this;
+    }
+
+    /**
+     * sets order of found recipes, recipes are ordered by ID by default
+     * @param order order of recipes
+     * @return this query
+     */
+    public RecipeQuery orderBy(Order order) {
+        if (order == null) {
+            throw new IllegalArgumentException("order cannot be null");
+        }
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * sets maximal number of found recipes
+     * @param limit maximal number of recipes
+     * @return this query
+     */
+    public RecipeQuery limit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit has to be possitive");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * getters, unset criteria are null
+     */
+    public String getName() {return name;}
+    public String getNamePrefix() {return namePrefix;}
+    public MealType getType() {return type;}
+    public MealCategory getCategory() {return category;}
+    public Integer getFromTime() {return fromTime;}
+    public Integer getToTime() {return toTime;}
+    public Integer getMinPortions() {return minPortions;}
+    public Integer getMaxPortions() {return maxPortions;}
+    public List<String> getIngredientNames() {return Collections.unmodifiableList(ingredientNames);}
+    public Order getOrder() {return order;}
+    /** @return maximal number of recipes, 0 when not limited */
+    public int getLimit() {return limit;}
+
+    @Override
+    public String toString() {
+        return "RecipeQuery{" + "name=" + name + ", namePrefix=" + namePrefix + ", type=" + type
+                + ", category=" + category + ", cookingTime=" + fromTime + "-" + toTime
+                + ", portions=" + minPortions + "-" + maxPortions + ", ingredients=" + ingredientNames
+                + ", order=" + order + ", limit=" + limit + '}';
+    }
+}
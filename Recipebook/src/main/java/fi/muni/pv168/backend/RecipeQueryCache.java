@@ -0,0 +1,236 @@
+package fi.muni.pv168.backend;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cache of IDs of recipes found by type, category and cooking time, write
+ * of recipe invalidates only results, which contained the recipe or which
+ * would contain it after the write
+ * <p>
+ * every invalidation increases version of the cache, results are stored only
+ * when no invalidation happened since the version was read before the query
+ *
+ * @author mulan
+ */
+class RecipeQueryCache {
+
+    private final int maxResults;
+    private final LinkedHashMap<Key, Result> results;
+    private long ttlNanos;
+    private long version;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * constructor, creates empty cache
+     * @param maxResults maximal number of cached results
+     */
+    RecipeQueryCache(int maxResults) {
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maximal number of results has to be possitive");
+        }
+        this.maxResults = maxResults;
+        this.results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                return size() > RecipeQueryCache.this.maxResults;
+            }
+        };
+    }
+
+    synchronized void setTimeToLive(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("time to live is negative");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * @param key finder and its arguments
+     * @return sorted IDs of found recipes, null when result is not cached
+     */
+    synchronized long[] get(Key key) {
+        Result result = results.get(key);
+        if (result != null && result.expiresAt != 0 && result.expiresAt - System.nanoTime() <= 0) {
+            results.remove(key);
+            result = null;
+        }
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return result.ids;
+    }
+
+    /**
+     * @return current version, it has to be read before the query
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * caches IDs of found recipes unless some write happened since given version
+     * @param key finder and its arguments
+     * @param recipes found recipes
+     * @param sinceVersion version read before the query
+     */
+    synchronized void put(Key key, Collection<Recipe> recipes, long sinceVersion) {
+        if (sinceVersion != version) {
+            return;
+        }
+        long[] ids = new long[recipes.size()];
+        int i = 0;
+        for (Recipe recipe : recipes) {
+            ids[i++] = recipe.getId();
+        }
+        Arrays.sort(ids);
+
+        long expiresAt = 0;
+        if (ttlNanos > 0) {
+            // 0 means that result never expires
+            expiresAt = System.nanoTime() + ttlNanos;
+            if (expiresAt == 0) {
+                expiresAt = 1;
+            }
+        }
+        results.put(key, new Result(ids, expiresAt));
+    }
+
+    /**
+     * invalidates results, which contain given recipe or which match its current attributes
+     * @param recipe created or updated recipe
+     */
+    synchronized void invalidate(Recipe recipe) {
+        version++;
+        Iterator<Map.Entry<Key, Result>> it = results.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Result> entry = it.next();
+            if (entry.getKey().matches(recipe)
+                    || (recipe.getId() != null && Arrays.binarySearch(entry.getValue().ids, recipe.getId()) >= 0)) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * invalidates results, which contain recipe with given ID
+     * @param id ID of deleted recipe
+     */
+    synchronized void invalidate(long id) {
+        version++;
+        Iterator<Result> it = results.values().iterator();
+        while (it.hasNext()) {
+            if (Arrays.binarySearch(it.next().ids, id) >= 0) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * removes all cached results
+     */
+    synchronized void clear() {
+        version++;
+        invalidations += results.size();
+        results.clear();
+    }
+
+    synchronized int size() {return results.size();}
+    synchronized long getHits() {return hits;}
+    synchronized long getMisses() {return misses;}
+    synchronized long getInvalidations() {return invalidations;}
+
+    /**
+     * finder together with its arguments
+     */
+    static final class Key {
+
+        private enum Finder {TYPE, CATEGORY, COOKING_TIME}
+
+        private final Finder finder;
+        private final int from;
+        private final int to;
+
+        private Key(Finder finder, int from, int to) {
+            this.finder = finder;
+            this.from = from;
+            this.to = to;
+        }
+
+        static Key type(MealType type) {
+            int code = MealType.toInt(type);
+            return new Key(Finder.TYPE, code, code);
+        }
+
+        static Key category(MealCategory category) {
+            int code = MealCategory.toInt(category);
+            return new Key(Finder.CATEGORY, code, code);
+        }
+
+        static Key cookingTime(int fromTime, int toTime) {
+            return new Key(Finder.COOKING_TIME, fromTime, toTime);
+        }
+
+        /**
+         * @param recipe recipe to check
+         * @return true, when finder would find given recipe
+         */
+        boolean matches(Recipe recipe) {
+            switch (finder) {
+                case TYPE:
+                    return recipe.getType() != null && MealType.toInt(recipe.getType()) == from;
+                case CATEGORY:
+                    return recipe.getCategory() != null && MealCategory.toInt(recipe.getCategory()) == from;
+                default:
+                    return from <= recipe.getCookingTime() && recipe.getCookingTime() <= to;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 41 * hash + finder.hashCode();
+            hash = 41 * hash + from;
+            hash = 41 * hash + to;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return finder == other.finder && from == other.from && to == other.to;
+        }
+
+        @Override
+        public String toString() {
+            return finder + "(" + from + ", " + to + ")";
+        }
+    }
+
+    /**
+     * cached IDs with expiration time
+     */
+    private static final class Result {
+
+        private final long[] ids;
+        private final long expiresAt;
+
+        Result(long[] ids, long expiresAt) {
+            this.ids = ids;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -38,5 +38,11 @@ public interface Recipebook {
      */
     public SortedSet<Ingredient> getIngredientsOfRecipe(Recipe recipe) throws ServiceFailureException;
     
+    /**
+     * find recipes, that contain ingredient with given name
+     * @param ingredientName name of the ingredient
+     * @return all recipes with ingredient of given name, with their ingredients loaded
+     * @throws ServiceFailureException problem with database
+     */
     public SortedSet<Recipe> findRecipesByIngredientName(String ingredientName) throws ServiceFailureException;
 }
@@ -2,6 +2,8 @@ package fi.muni.pv168.backend;
 
 import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -19,6 +21,7 @@ public class RecipebookImpl implements Recipebook {
     
     private IngredientManager ingredientManager;
     private RecipeManager recipeManager;
+    private IngredientIndex ingredientIndex;
     
     private static final Object LOCK = new Object();
 
@@ -32,6 +35,15 @@ public class RecipebookImpl implements Recipebook {
         this.recipeManager = recipeManager;
     }
 
+    /**
+     * sets index of ingredient names, findRecipesByIngredients loads only
+     * recipes, which have ingredients of all searched names, when the index is ready
+     * @param ingredientIndex index maintained by IndexingIngredientManager, null to search without index
+     */
+    public void setIngredientIndex(IngredientIndex ingredientIndex) {
+        this.ingredientIndex = ingredientIndex;
+    }
+
     @Override
     public void addIngredientsToRecipe(SortedSet<Ingredient> ingredients, Recipe recipe) throws ServiceFailureException {
         
@@ -52,10 +64,9 @@ public class RecipebookImpl implements Recipebook {
             ingredients.removeAll(toRemove);
 
             try {
-                for (Ingredient ingredient : ingredients) {
-
-                    ingredientManager.createIngredient(ingredient, recipe.getId());
+                ingredientManager.createIngredients(ingredients, recipe.getId());
 
+                for (Ingredient ingredient : ingredients) {
                     recipe.addIngredient(ingredient);
                 }
             } catch (ServiceFailureException ex) {
@@ -93,21 +104,37 @@ public class RecipebookImpl implements Recipebook {
     public SortedSet<Recipe> findRecipesByIngredients(SortedSet<Ingredient> ingredients) throws ServiceFailureException {
         validate(ingredients);
 
-        SortedSet<Long> ids = new TreeSet<Long>();
+        SortedSet<Long> ids = null;
         SortedSet<Recipe> result = new TreeSet<Recipe>();
         
-        try {
+        if (ingredientIndex != null) {
+            Set<String> names = new HashSet<String>();
             for (Ingredient ingredient : ingredients) {
-                ids.addAll( ingredientManager.getRecipeIdsByIngredient(ingredient) );
+                names.add(ingredient.getName());
             }
-        } catch (ServiceFailureException ex) {
-            Logger.getLogger(RecipebookImpl.class.getName()).log(Level.SEVERE, null, ex);
-            throw new ServiceFailureException();
-        } 
+            ids = ingredientIndex.findRecipeIds(names);
+        }
+        if (ids == null) {
+            ids = new TreeSet<Long>();
+            try {
+                for (Ingredient ingredient : ingredients) {
+                    ids.addAll( ingredientManager.getRecipeIdsByIngredient(ingredient) );
+                }
+            } catch (ServiceFailureException ex) {
+                Logger.getLogger(RecipebookImpl.class.getName()).log(Level.SEVERE, null, ex);
+                throw new ServiceFailureException();
+            } 
+        }
         
         try {
             for (Long id : ids) {
-                Recipe recipe = recipeManager.findRecipeById(id);
+                Recipe recipe;
+                try {
+                    recipe = recipeManager.findRecipeById(id);
+                } catch (IllegalArgumentException ex) {
+                    // recipe was deleted, its ingredients are not removed from the index yet
+                    continue;
+                }
                 recipe.setIngredients(ingredientManager.getIngredientsOfRecipe(recipe.getId()));
                 result.add(recipe);
             }
@@ -129,17 +156,10 @@ public class RecipebookImpl implements Recipebook {
     
     @Override
     public SortedSet<Recipe> findRecipesByIngredientName(String ingredientName) throws ServiceFailureException {
-        SortedSet<Long> ids;
-        SortedSet<Recipe> result = new TreeSet<Recipe>();
-        
+        SortedSet<Recipe> result;
+
         try {
-            ids = ingredientManager.getRecipeIdsByIngredientName(ingredientName);
-            
-            for (Long id : ids) {
-                Recipe recipe = recipeManager.findRecipeById(id);
-                recipe.setIngredients(ingredientManager.getIngredientsOfRecipe(id));
-                result.add(recipe);
-            }
+            result = recipeManager.findRecipesByIngredientName(ingredientName);
         } catch (ServiceFailureException e) {
             logger.log(Level.SEVERE, "check exception's message", e);
             throw new ServiceFailureException();
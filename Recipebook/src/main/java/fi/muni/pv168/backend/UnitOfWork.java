@@ -0,0 +1,492 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.InvalidEntityException;
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcSession;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.NameNormalizer;
+import fi.muni.pv168.utils.RowMapper;
+import fi.muni.pv168.utils.SessionCallback;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * work of one request or one background task, recipes and ingredients are
+ * loaded by managers at most once and the same instances are returned by
+ * later lookups, loaded entities are changed by their setters and flush
+ * writes all changed, created and deleted entities in one transaction with
+ * one batch per statement
+ * <p>
+ * writes bypass the managers, so caches have to be registered as listeners
+ * to see them before ChangeLogPoller finds them, unit of work is not thread
+ * safe
+ *
+ * @author mulan
+ */
+public class UnitOfWork {
+
+    private static final Logger logger = Logger.getLogger(
+            UnitOfWork.class.getName());
+
+    private static final String UPDATE_RECIPE =
+            "UPDATE RECIPES SET NAME = ?, TYPE = ?, CATEGORY = ?, COOKINGTIME = ?, NUMPORTIONS = ?, INSTRUCTIONS = ?, NAME_NORM = ? WHERE ID = ?";
+    private static final String UPDATE_INGREDIENT =
+            "UPDATE INGREDIENTS SET NAME = ?, AMOUNT = ?, UNIT = ? WHERE ID = ?";
+    private static final String DELETE_INGREDIENT =
+            "DELETE FROM INGREDIENTS WHERE ID = ?";
+    private static final String INSERT_INGREDIENT =
+            "INSERT INTO INGREDIENTS (NAME, AMOUNT, UNIT, RECIPEID) VALUES(?, ?, ?, ?)";
+
+    private static final RowMapper<Long> RECIPE_ID_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            return rs.getLong(1);
+        }
+    };
+
+    private final JdbcTemplate jdbc;
+    private final RecipeManager recipeManager;
+    private final IngredientManager ingredientManager;
+    private final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
+
+    // identity maps and copies of entities as they were loaded or flushed, null copy means changed
+    private final Map<Long, Recipe> recipes = new HashMap<Long, Recipe>();
+    private final Map<Long, Recipe> cleanRecipes = new HashMap<Long, Recipe>();
+    private final Map<Long, Ingredient> ingredients = new HashMap<Long, Ingredient>();
+    private final Map<Long, Ingredient> cleanIngredients = new HashMap<Long, Ingredient>();
+    // recipe IDs of ingredients, ingredients loaded by getIngredient do not have them
+    private final Map<Long, Long> ingredientRecipes = new HashMap<Long, Long>();
+    // IDs of ingredients of recipes loaded by getIngredientsOfRecipe
+    private final Map<Long, List<Long>> recipeIngredients = new HashMap<Long, List<Long>>();
+
+    private final List<Ingredient> created = new ArrayList<Ingredient>();
+    private final List<Long> createdRecipes = new ArrayList<Long>();
+    private final Map<Long, Long> deleted = new LinkedHashMap<Long, Long>();
+
+    /**
+     * constructor, entities are loaded by given managers and written by given template
+     * @param jdbc template used by flush
+     * @param recipeManager manager loading recipes
+     * @param ingredientManager manager loading ingredients
+     */
+    public UnitOfWork(JdbcTemplate jdbc, RecipeManager recipeManager, IngredientManager ingredientManager) {
+        if (jdbc == null) {
+            throw new IllegalArgumentException("jdbc template is null");
+        }
+        if (recipeManager == null) {
+            throw new IllegalArgumentException("recipe manager is null");
+        }
+        if (ingredientManager == null) {
+            throw new IllegalArgumentException("ingredient manager is null");
+        }
+        this.jdbc = jdbc;
+        this.recipeManager = recipeManager;
+        this.ingredientManager = ingredientManager;
+    }
+
+    /**
+     * adds listener told about every written entity after flush is committed
+     * @param listener listener, usually a cache of given managers
+     */
+    public void addListener(ChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * finds recipe by ID, recipe is loaded only by the first call
+     * @param id ID of the recipe
+     * @return recipe without ingredients
+     * @throws ServiceFailureException problem with database
+     */
+    public Recipe findRecipeById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        Recipe recipe = recipes.get(id);
+        if (recipe == null) {
+            recipe = recipeManager.findRecipeById(id);
+            recipes.put(id, recipe);
+            cleanRecipes.put(id, new Recipe(recipe));
+        }
+        return recipe;
+    }
+
+    /**
+     * gets ingredient by ID, ingredient is loaded only by the first call
+     * @param id ID of the ingredient
+     * @return ingredient
+     * @throws ServiceFailureException problem with database
+     */
+    public Ingredient getIngredient(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        if (deleted.containsKey(id)) {
+            throw new IllegalArgumentException("ingredient " + id + " is deleted");
+        }
+        Ingredient ingredient = ingredients.get(id);
+        if (ingredient == null) {
+            ingredient = ingredientManager.getIngredient(id);
+            ingredients.put(id, ingredient);
+            cleanIngredients.put(id, new Ingredient(ingredient));
+        }
+        return ingredient;
+    }
+
+    /**
+     * gets ingredients of recipe, they are loaded only by the first call,
+     * ingredients created and deleted by this unit are taken into account
+     * @param recipeId ID of the recipe
+     * @return new set of ingredients, which are the same instances as returned by getIngredient
+     * @throws ServiceFailureException problem with database
+     */
+    public SortedSet<Ingredient> getIngredientsOfRecipe(long recipeId) throws ServiceFailureException {
+        List<Long> ids = recipeIngredients.get(recipeId);
+        if (ids == null) {
+            ids = new ArrayList<Long>();
+            for (Ingredient loaded : ingredientManager.getIngredientsOfRecipe(recipeId)) {
+                if (deleted.containsKey(loaded.getId())) {
+                    continue;
+                }
+                if (!ingredients.containsKey(loaded.getId())) {
+                    ingredients.put(loaded.getId(), loaded);
+                    cleanIngredients.put(loaded.getId(), new Ingredient(loaded));
+                }
+                ingredientRecipes.put(loaded.getId(), recipeId);
+                ids.add(loaded.getId());
+            }
+            recipeIngredients.put(recipeId, ids);
+        }
+
+        SortedSet<Ingredient> result = new TreeSet<Ingredient>();
+        for (Long id : ids) {
+            result.add(ingredients.get(id));
+        }
+        for (int i = 0; i < created.size(); i++) {
+            if (createdRecipes.get(i) == recipeId) {
+                result.add(created.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * attaches recipe, which was not loaded by this unit, recipe is written by flush
+     * @param recipe recipe with ID
+     */
+    public void updateRecipe(Recipe recipe) {
+        validate(recipe);
+        if (recipe.getId() == null) {
+            throw new InvalidEntityException("recipe id is null");
+        }
+        Recipe loaded = recipes.get(recipe.getId());
+        if (loaded != null && loaded != recipe) {
+            throw new IllegalArgumentException("another instance of recipe " + recipe.getId() + " is loaded");
+        }
+        recipes.put(recipe.getId(), recipe);
+        cleanRecipes.put(recipe.getId(), null);
+    }
+
+    /**
+     * attaches ingredient, which was not loaded by this unit, ingredient is written by flush
+     * @param ingredient ingredient with ID
+     * @param recipeId recipe of the ingredient
+     */
+    public void updateIngredient(Ingredient ingredient, long recipeId) {
+        validate(ingredient);
+        if (ingredient.getId() == null) {
+            throw new InvalidEntityException("ingredient id is null");
+        }
+        if (deleted.containsKey(ingredient.getId())) {
+            throw new IllegalArgumentException("ingredient " + ingredient.getId() + " is deleted");
+        }
+        Ingredient loaded = ingredients.get(ingredient.getId());
+        if (loaded != null && loaded != ingredient) {
+            throw new IllegalArgumentException("another instance of ingredient " + ingredient.getId() + " is loaded");
+        }
+        ingredients.put(ingredient.getId(), ingredient);
+        cleanIngredients.put(ingredient.getId(), null);
+        ingredientRecipes.put(ingredient.getId(), recipeId);
+    }
+
+    /**
+     * creates ingredient by flush, ID is set when flush is committed
+     * @param ingredient new ingredient without ID
+     * @param recipeId recipe, you want to add ingredient into
+     */
+    public void createIngredient(Ingredient ingredient, long recipeId) {
+        validate(ingredient);
+        if (ingredient.getId() != null) {
+            throw new InvalidEntityException("ingredient id is already set");
+        }
+        created.add(ingredient);
+        createdRecipes.add(recipeId);
+    }
+
+    /**
+     * deletes ingredient by flush, ingredient created by this unit is only forgotten
+     * @param ingredient ingredient to delete
+     * @param recipeId recipe, from which you want to delete ingredient
+     */
+    public void deleteIngredient(Ingredient ingredient, long recipeId) {
+        if (ingredient == null) {
+            throw new IllegalArgumentException("Ingredient is null");
+        }
+        if (ingredient.getId() == null) {
+            for (int i = 0; i < created.size(); i++) {
+                if (created.get(i) == ingredient) {
+                    created.remove(i);
+                    createdRecipes.remove(i);
+                    return;
+                }
+            }
+            throw new InvalidEntityException("ingredient id is null");
+        }
+
+        Long id = ingredient.getId();
+        ingredients.remove(id);
+        cleanIngredients.remove(id);
+        ingredientRecipes.remove(id);
+        List<Long> ids = recipeIngredients.get(recipeId);
+        if (ids != null) {
+            ids.remove(id);
+        }
+        deleted.put(id, recipeId);
+    }
+
+    /**
+     * @return true when flush has something to write
+     */
+    public boolean isDirty() {
+        return !getDirtyRecipes().isEmpty() || !getDirtyIngredients().isEmpty()
+                || !created.isEmpty() || !deleted.isEmpty();
+    }
+
+    /**
+     * writes changed recipes and ingredients, deletes and creates ingredients
+     * in one transaction, nothing is written when anything fails
+     * @return number of written entities
+     * @throws ServiceFailureException problem with database, unit stays dirty
+     */
+    public int flush() throws ServiceFailureException {
+        final List<Recipe> dirtyRecipes = getDirtyRecipes();
+        final List<Ingredient> dirtyIngredients = getDirtyIngredients();
+        for (Recipe recipe : dirtyRecipes) {
+            validate(recipe);
+        }
+        for (Ingredient ingredient : dirtyIngredients) {
+            validate(ingredient);
+        }
+        int count = dirtyRecipes.size() + dirtyIngredients.size() + created.size() + deleted.size();
+        if (count == 0) {
+            return 0;
+        }
+
+        final List<Object[]> recipeRows = new ArrayList<Object[]>(dirtyRecipes.size());
+        for (Recipe recipe : dirtyRecipes) {
+            recipeRows.add(new Object[] {recipe.getName(), MealType.toInt(recipe.getType()),
+                MealCategory.toInt(recipe.getCategory()), recipe.getCookingTime(), recipe.getNumPortions(),
+                recipe.getInstructions(), NameNormalizer.normalize(recipe.getName()), recipe.getId()});
+        }
+        final List<Object[]> ingredientRows = new ArrayList<Object[]>(dirtyIngredients.size());
+        for (Ingredient ingredient : dirtyIngredients) {
+            ingredientRows.add(new Object[] {ingredient.getName(), ingredient.getAmount(),
+                ingredient.getUnit(), ingredient.getId()});
+        }
+        final List<Object[]> deleteRows = new ArrayList<Object[]>(deleted.size());
+        for (Long id : deleted.keySet()) {
+            deleteRows.add(new Object[] {id});
+        }
+
+        List<Long> createdIds;
+        try {
+            createdIds = jdbc.executeInTransaction(new SessionCallback<List<Long>>() {
+                @Override
+                public List<Long> doInSession(JdbcSession session) throws SQLException, ServiceFailureException {
+                    // listeners need recipes of ingredients loaded by getIngredient
+                    for (Ingredient ingredient : dirtyIngredients) {
+                        if (!listeners.isEmpty() && !ingredientRecipes.containsKey(ingredient.getId())) {
+                            Long recipeId = session.queryForObject("SELECT RECIPEID FROM INGREDIENTS WHERE ID = ?",
+                                    RECIPE_ID_MAPPER, ingredient.getId());
+                            if (recipeId == null) {
+                                throw new ServiceFailureException("Update failed, no such item.");
+                            }
+                            ingredientRecipes.put(ingredient.getId(), recipeId);
+                        }
+                    }
+
+                    if (!recipeRows.isEmpty()) {
+                        checkUpdatesCounts(session.batch(UPDATE_RECIPE, recipeRows));
+                    }
+                    if (!ingredientRows.isEmpty()) {
+                        checkUpdatesCounts(session.batch(UPDATE_INGREDIENT, ingredientRows));
+                    }
+                    if (!deleteRows.isEmpty()) {
+                        checkUpdatesCounts(session.batch(DELETE_INGREDIENT, deleteRows));
+                    }
+
+                    // Derby reports only the key of the last row of a batch, so new
+                    // ingredients are inserted one by one to get their keys
+                    List<Long> ids = new ArrayList<Long>(created.size());
+                    for (int i = 0; i < created.size(); i++) {
+                        Ingredient ingredient = created.get(i);
+                        ids.add(session.insert(INSERT_INGREDIENT, ingredient.getName(), ingredient.getAmount(),
+                                ingredient.getUnit(), createdRecipes.get(i)));
+                    }
+                    return ids;
+                }
+            });
+        } catch (SQLException ex) {
+            String msg = "Error when flushing unit of work into DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+
+        for (Recipe recipe : dirtyRecipes) {
+            cleanRecipes.put(recipe.getId(), new Recipe(recipe));
+        }
+        for (Ingredient ingredient : dirtyIngredients) {
+            cleanIngredients.put(ingredient.getId(), new Ingredient(ingredient));
+        }
+        List<Ingredient> createdIngredients = new ArrayList<Ingredient>(created);
+        List<Long> createdRecipeIds = new ArrayList<Long>(createdRecipes);
+        for (int i = 0; i < createdIngredients.size(); i++) {
+            Ingredient ingredient = createdIngredients.get(i);
+            Long recipeId = createdRecipeIds.get(i);
+            ingredient.setId(createdIds.get(i));
+            ingredients.put(ingredient.getId(), ingredient);
+            cleanIngredients.put(ingredient.getId(), new Ingredient(ingredient));
+            ingredientRecipes.put(ingredient.getId(), recipeId);
+            List<Long> ids = recipeIngredients.get(recipeId);
+            if (ids != null) {
+                ids.add(ingredient.getId());
+            }
+        }
+        Map<Long, Long> deletedIngredients = new LinkedHashMap<Long, Long>(deleted);
+        created.clear();
+        createdRecipes.clear();
+        deleted.clear();
+
+        for (ChangeListener listener : listeners) {
+            for (Recipe recipe : dirtyRecipes) {
+                listener.recipeChanged(recipe.getId());
+            }
+            for (Ingredient ingredient : dirtyIngredients) {
+                listener.ingredientChanged(ingredient.getId(), ingredientRecipes.get(ingredient.getId()));
+            }
+            for (Map.Entry<Long, Long> entry : deletedIngredients.entrySet()) {
+                listener.ingredientChanged(entry.getKey(), entry.getValue());
+            }
+            for (int i = 0; i < createdIngredients.size(); i++) {
+                listener.ingredientChanged(createdIngredients.get(i).getId(), createdRecipeIds.get(i));
+            }
+        }
+        return count;
+    }
+
+    private List<Recipe> getDirtyRecipes() {
+        List<Recipe> dirty = new ArrayList<Recipe>();
+        for (Recipe recipe : recipes.values()) {
+            if (!sameState(recipe, cleanRecipes.get(recipe.getId()))) {
+                dirty.add(recipe);
+            }
+        }
+        return dirty;
+    }
+
+    private List<Ingredient> getDirtyIngredients() {
+        List<Ingredient> dirty = new ArrayList<Ingredient>();
+        for (Ingredient ingredient : ingredients.values()) {
+            if (!ingredient.equals(cleanIngredients.get(ingredient.getId()))) {
+                dirty.add(ingredient);
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * compares columns of recipe, ingredients are not columns of recipe
+     */
+    private static boolean sameState(Recipe recipe, Recipe clean) {
+        return clean != null
+                && equal(recipe.getName(), clean.getName())
+                && recipe.getType() == clean.getType()
+                && recipe.getCategory() == clean.getCategory()
+                && recipe.getCookingTime() == clean.getCookingTime()
+                && recipe.getNumPortions() == clean.getNumPortions()
+                && equal(recipe.getInstructions(), clean.getInstructions());
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    private static void checkUpdatesCounts(int[] counts) throws ServiceFailureException {
+        for (int count : counts) {
+            if (count != Statement.SUCCESS_NO_INFO) {
+                DBUtils.checkUpdatesCount(count, false);
+            }
+        }
+    }
+
+    /**
+     * validates, that given recipe is a valid entity
+     * @param recipe recipe to check
+     */
+    static private void validate(Recipe recipe) {
+        if (recipe == null) {
+            throw new IllegalArgumentException("Recipe is null");
+        }
+        if (recipe.getName() == null) {
+            throw new InvalidEntityException("name is null");
+        }
+        if (recipe.getType() == null) {
+            throw new InvalidEntityException("type is null");
+        }
+        if (recipe.getCategory() == null) {
+            throw new InvalidEntityException("category is null");
+        }
+        if (recipe.getCookingTime() <= 0) {
+            throw new InvalidEntityException("cooking time is negative");
+        }
+        if (recipe.getNumPortions() <= 0) {
+            throw new InvalidEntityException("number of portions is negative");
+        }
+        if (recipe.getInstructions() == null) {
+            throw new InvalidEntityException("instructions are null");
+        }
+    }
+
+    /**
+     * validates, that given ingredient is a valid entity
+     * @param ingredient ingredient to check
+     */
+    static private void validate(Ingredient ingredient) {
+        if (ingredient == null) {
+            throw new IllegalArgumentException("Ingredient is null");
+        }
+        if (ingredient.getName() == null) {
+            throw new InvalidEntityException("name is null");
+        }
+        if (ingredient.getUnit() == null) {
+            throw new InvalidEntityException("unit is null");
+        }
+        if ((Double.compare(ingredient.getAmount(), 0.0) == 0) || (ingredient.getAmount() < 0)) {
+            throw new InvalidEntityException("amount is 0 or less");
+        }
+    }
+}
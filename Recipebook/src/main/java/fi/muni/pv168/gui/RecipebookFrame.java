@@ -1,23 +1,41 @@
 package fi.muni.pv168.gui;
 
 import fi.muni.pv168.backend.Ingredient;
+import fi.muni.pv168.backend.CachingIngredientManager;
+import fi.muni.pv168.backend.CachingRecipeManager;
+import fi.muni.pv168.backend.ChangeListener;
+import fi.muni.pv168.backend.ChangeLogPoller;
+import fi.muni.pv168.backend.FacetIndexingRecipeManager;
+import fi.muni.pv168.backend.IngredientIndex;
 import fi.muni.pv168.backend.IngredientManager;
 import fi.muni.pv168.backend.IngredientManagerImpl;
+import fi.muni.pv168.backend.IndexingIngredientManager;
 import fi.muni.pv168.backend.MealCategory;
 import fi.muni.pv168.backend.MealType;
+import fi.muni.pv168.backend.MissFilteringIngredientManager;
+import fi.muni.pv168.backend.MissFilteringRecipeManager;
+import fi.muni.pv168.backend.NameIndexingRecipeManager;
+import fi.muni.pv168.backend.OffHeapCachingRecipeManager;
 import fi.muni.pv168.backend.Recipe;
 import fi.muni.pv168.backend.RecipeManager;
 import fi.muni.pv168.backend.RecipeManagerImpl;
+import fi.muni.pv168.backend.RecipeNameIndex;
 import fi.muni.pv168.backend.Recipebook;
 import fi.muni.pv168.backend.RecipebookImpl;
+import fi.muni.pv168.backend.UnitOfWork;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcTemplate;
 import java.awt.CardLayout;
 import java.awt.EventQueue;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -25,6 +43,8 @@ import javax.swing.DefaultListModel;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
 import javax.swing.JList;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
 import javax.swing.SwingWorker;
 import org.apache.commons.dbcp.BasicDataSource;
 
@@ -39,14 +59,38 @@ public class RecipebookFrame extends javax.swing.JFrame {
     private Recipebook recipebook;
     private RecipeManager recipeManager;
     private IngredientManager ingredientManager;
+    private CachingIngredientManager ingredientCache;
+    private NameIndexingRecipeManager nameIndexer;
+    private RecipeNameIndex recipeNameIndex;
+    private IngredientIndex ingredientIndex;
+    private JPopupMenu suggestionMenu;
     private RecipeFrame recipeFrame;
     private ConfirmationFrame confirmationFrame;
     private Recipe selectedRecipe = new Recipe();
     private static final Logger logger = Logger.getLogger(RecipebookFrame.class.getName());
+    private static final int RECIPE_PAGE_SIZE = 100;
+    private static final long RECIPE_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final long INGREDIENT_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int OFF_HEAP_SLAB_BYTES = 4 * 1024 * 1024;
+    private static final int OFF_HEAP_SLABS = 32;
+    private static final int MAX_CACHED_MISSES = 10000;
+    private static final long MISS_TTL_SECONDS = 30;
+    private static final long CHANGE_POLL_SECONDS = 5;
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final String DB_URL = "jdbc:derby:memory:recipebook;create=true";
+    private JdbcTemplate jdbc;
+    private ChangeLogPoller changePoller;
+    private final List<ChangeListener> cacheListeners = new ArrayList<ChangeListener>();
+    // list of all recipes is read page by page as it is scrolled
+    private DefaultListModel pagedModel;
+    private long lastPagedRecipeId;
+    private boolean morePages;
+    private boolean pageLoading;
 
     private static BasicDataSource prepareDataSource() throws SQLException {
         BasicDataSource ds = new BasicDataSource();
-        ds.setUrl("jdbc:derby:memory:recipebook;create=true");
+        ds.setUrl(DB_URL);
+        ds.setPoolPreparedStatements(true);
         return ds;
     }
 
@@ -62,9 +106,47 @@ public class RecipebookFrame extends javax.swing.JFrame {
             System.exit(1);
         }
 
-        this.recipeManager = new RecipeManagerImpl(ds);
-        this.ingredientManager = new IngredientManagerImpl(ds);
-        this.recipebook = new RecipebookImpl(this.ingredientManager, this.recipeManager);
+        final JdbcTemplate jdbc = new JdbcTemplate(ds);
+        final MissFilteringRecipeManager recipeFilter = new MissFilteringRecipeManager(
+                new RecipeManagerImpl(jdbc), MAX_CACHED_MISSES, MISS_TTL_SECONDS, TimeUnit.SECONDS);
+        final MissFilteringIngredientManager ingredientFilter = new MissFilteringIngredientManager(
+                new IngredientManagerImpl(jdbc), MAX_CACHED_MISSES, MISS_TTL_SECONDS, TimeUnit.SECONDS);
+        OffHeapCachingRecipeManager offHeapCache = new OffHeapCachingRecipeManager(
+                recipeFilter, OFF_HEAP_SLAB_BYTES, OFF_HEAP_SLABS);
+        CachingRecipeManager recipeCache = new CachingRecipeManager(offHeapCache, RECIPE_CACHE_BYTES);
+        final FacetIndexingRecipeManager recipeIndexer = new FacetIndexingRecipeManager(recipeCache);
+        final NameIndexingRecipeManager nameIndexer = new NameIndexingRecipeManager(recipeIndexer);
+        this.recipeManager = nameIndexer;
+        final IndexingIngredientManager ingredientIndexer = new IndexingIngredientManager(ingredientFilter);
+        this.ingredientCache = new CachingIngredientManager(ingredientIndexer, INGREDIENT_CACHE_BYTES);
+        this.ingredientManager = ingredientCache;
+        this.nameIndexer = nameIndexer;
+        this.recipeNameIndex = nameIndexer.getIndex();
+        this.ingredientIndex = ingredientIndexer.getIndex();
+
+        // caches see writes of other applications using the same database and writes of units of work
+        cacheListeners.add(recipeFilter);
+        cacheListeners.add(offHeapCache);
+        cacheListeners.add(recipeCache);
+        cacheListeners.add(recipeIndexer);
+        cacheListeners.add(nameIndexer);
+        cacheListeners.add(ingredientFilter);
+        cacheListeners.add(ingredientIndexer);
+        cacheListeners.add(ingredientCache);
+        this.changePoller = new ChangeLogPoller(jdbc);
+        for (ChangeListener listener : cacheListeners) {
+            changePoller.addListener(listener);
+        }
+        this.jdbc = jdbc;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                jdbc.logStatistics(Level.INFO);
+            }
+        });
+        RecipebookImpl recipebookImpl = new RecipebookImpl(this.ingredientManager, this.recipeManager);
+        recipebookImpl.setIngredientIndex(ingredientIndexer.getIndex());
+        this.recipebook = recipebookImpl;
         logger.log(Level.INFO, "Managers initialized");
 
         try {
@@ -75,6 +157,60 @@ public class RecipebookFrame extends javax.swing.JFrame {
 
         logger.log(Level.INFO, "Tables inserted into internal database, continuing happily");
 
+        changePoller.start(CHANGE_POLL_SECONDS, TimeUnit.SECONDS);
+
+        // lookups of missing recipes and ingredients are answered by database until filters are built,
+        // searches by ingredients, type, category, cooking time and name query database until indexes are built,
+        // only one build runs at a time, build requested meanwhile runs once after it
+        final AtomicBoolean building = new AtomicBoolean();
+        final AtomicBoolean buildRequested = new AtomicBoolean();
+        final Runnable buildIndexes = new Runnable() {
+            @Override
+            public void run() {
+                buildRequested.set(true);
+                if (!building.compareAndSet(false, true)) {
+                    return;
+                }
+                final Runnable build = this;
+                buildRequested.set(false);
+                new SwingWorker<Void, Void>() {
+                    @Override
+                    protected Void doInBackground() throws Exception {
+                        recipeFilter.buildFilter();
+                        ingredientFilter.buildFilter();
+                        ingredientIndexer.buildIndex();
+                        recipeIndexer.buildIndex();
+                        nameIndexer.buildIndex();
+                        return null;
+                    }
+
+                    @Override
+                    protected void done() {
+                        building.set(false);
+                        if (buildRequested.get()) {
+                            build.run();
+                        }
+                    }
+                }.execute();
+            }
+        };
+        // filters and indexes dropped after many or pruned changes of other applications are built again
+        changePoller.addListener(new ChangeListener() {
+            @Override
+            public void recipeChanged(long recipeId) {
+            }
+
+            @Override
+            public void ingredientChanged(long ingredientId, long recipeId) {
+            }
+
+            @Override
+            public void allChanged() {
+                buildIndexes.run();
+            }
+        });
+        buildIndexes.run();
+
         initComponents();
 
         isSearchTextOn = true;
@@ -91,7 +227,25 @@ public class RecipebookFrame extends javax.swing.JFrame {
             }
         });
 
+        // names are suggested while typing from indexes, database is not queried per keystroke
+        suggestionMenu = new JPopupMenu();
+        suggestionMenu.setFocusable(false);
+        searchText.addKeyListener(new java.awt.event.KeyAdapter() {
+            @Override
+            public void keyReleased(java.awt.event.KeyEvent evt) {
+                if (evt.getKeyCode() != java.awt.event.KeyEvent.VK_ENTER) {
+                    showSuggestions();
+                }
+            }
+        });
+
         recipeList.setFixedCellWidth(258);
+        jScrollPane1.getVerticalScrollBar().addAdjustmentListener(new java.awt.event.AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(java.awt.event.AdjustmentEvent evt) {
+                loadNextPageIfNeeded();
+            }
+        });
 
         // test stuff
         Ingredient chicken = new Ingredient();
@@ -136,40 +290,7 @@ public class RecipebookFrame extends javax.swing.JFrame {
         }
         // end of test stuff
 
-        SwingWorker<SortedSet<Recipe>, Void> worker = new SwingWorker<SortedSet<Recipe>, Void>() {
-            @Override
-            protected SortedSet<Recipe> doInBackground() throws Exception {
-                SortedSet<Recipe> recipes = new TreeSet<Recipe>();
-                try {
-                    recipes = recipeManager.findAllRecipes();
-                    for (Recipe r : recipes) {
-                        r.setIngredients(recipebook.getIngredientsOfRecipe(r));
-                    }
-                } catch (ServiceFailureException ex) {
-                    Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
-                }
-                return recipes;
-            }
-
-            @Override
-            protected void done() {
-                try {
-                    DefaultListModel listModel = new DefaultListModel();
-                    SortedSet<Recipe> recipes = get();
-                    for (Recipe r : recipes) {
-                        listModel.addElement(r);
-                    }
-                    recipeList.setModel(listModel);
-                    selectedRecipe = recipes.first();
-                    loadRecipeToLabels(selectedRecipe);
-                } catch (InterruptedException ex) {
-                    Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
-                } catch (ExecutionException ex) {
-                    Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            }
-        };
-        worker.execute();
+        loadAllRecipes(true);
     }
 
     /**
@@ -532,10 +653,14 @@ public class RecipebookFrame extends javax.swing.JFrame {
     private void searchTextActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_searchTextActionPerformed
 
         if (searchOptionsCombo.getSelectedIndex() == 1) {
-            SwingWorker<SortedSet<Recipe>, Void> worker = new SwingWorker<SortedSet<Recipe>, Void>() {
+            SwingWorker<List<Recipe>, Void> worker = new SwingWorker<List<Recipe>, Void>() {
                 @Override
-                protected SortedSet<Recipe> doInBackground() throws Exception {
-                    SortedSet<Recipe> set = recipeManager.findRecipesByName(searchText.getText());
+                protected List<Recipe> doInBackground() throws Exception {
+                    List<Recipe> set = new ArrayList<Recipe>(recipeManager.findRecipesByName(searchText.getText()));
+                    if (set.isEmpty()) {
+                        // misspelled words are corrected, closest recipes are shown first
+                        set = nameIndexer.findRecipesByNameFuzzy(searchText.getText());
+                    }
                     for (Recipe r : set) {
                         r.setIngredients(recipebook.getIngredientsOfRecipe(r));
                     }
@@ -623,8 +748,13 @@ public class RecipebookFrame extends javax.swing.JFrame {
                 @Override
                 protected SortedSet<Recipe> doInBackground() throws Exception {
                     SortedSet<Recipe> set = recipebook.findRecipesByIngredientName(searchText.getText());
-                    for (Recipe r : set) {
-                        r.setIngredients(recipebook.getIngredientsOfRecipe(r));
+                    if (set.isEmpty()) {
+                        // misspelled name is replaced by the closest used name
+                        List<String> names = ingredientIndex.findSimilarNames(
+                                searchText.getText(), IngredientIndex.MAX_EDIT_DISTANCE);
+                        if (names != null && !names.isEmpty()) {
+                            set = recipebook.findRecipesByIngredientName(names.get(0));
+                        }
                     }
                     return set;
                 }
@@ -658,6 +788,41 @@ public class RecipebookFrame extends javax.swing.JFrame {
         searchText.setText("");
     }//GEN-LAST:event_searchTextMouseClicked
 
+    /**
+     * shows names starting with text of the search box, when recipes are
+     * searched by name or by ingredient, suggestions are not shown until
+     * indexes are built
+     */
+    private void showSuggestions() {
+        suggestionMenu.setVisible(false);
+        String prefix = searchText.getText();
+        if (prefix.isEmpty()) {
+            return;
+        }
+        List<String> suggestions = null;
+        if (searchOptionsCombo.getSelectedIndex() == 1) {
+            suggestions = recipeNameIndex.suggest(prefix, MAX_SUGGESTIONS);
+        } else if (searchOptionsCombo.getSelectedIndex() == 5) {
+            suggestions = ingredientIndex.suggest(prefix, MAX_SUGGESTIONS);
+        }
+        if (suggestions == null || suggestions.isEmpty()) {
+            return;
+        }
+
+        suggestionMenu.removeAll();
+        for (final String suggestion : suggestions) {
+            JMenuItem item = new JMenuItem(suggestion);
+            item.addActionListener(new java.awt.event.ActionListener() {
+                public void actionPerformed(java.awt.event.ActionEvent evt) {
+                    searchText.setText(suggestion);
+                    searchTextActionPerformed(evt);
+                }
+            });
+            suggestionMenu.add(item);
+        }
+        suggestionMenu.show(searchText, 0, searchText.getHeight());
+    }
+
     private void searchOptionsComboActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_searchOptionsComboActionPerformed
         if (searchOptionsCombo.getSelectedIndex() == 0) {
             if (!isSearchTextOn) {
@@ -668,38 +833,7 @@ public class RecipebookFrame extends javax.swing.JFrame {
                 isSearchTextOn = true;
             }
             searchText.setText("Search recipes by...");
-            SwingWorker<SortedSet<Recipe>, Void> worker = new SwingWorker<SortedSet<Recipe>, Void>() {
-                @Override
-                protected SortedSet<Recipe> doInBackground() throws Exception {
-                    SortedSet<Recipe> set = recipeManager.findAllRecipes();
-                    for (Recipe r : set) {
-                        r.setIngredients(recipebook.getIngredientsOfRecipe(r));
-                    }
-                    return set;
-                }
-
-                @Override
-                protected void done() {
-                    try {
-                        if (get().isEmpty()) {
-                            WarningFrame frame = new WarningFrame();
-                            frame.setText("No recipes found");
-                            frame.setVisible(true);
-                        } else {
-                            DefaultListModel model = new DefaultListModel();
-                            for (Recipe recipe : get()) {
-                                model.addElement(recipe);
-                            }
-                            recipeList.setModel(model);
-                        }
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch (ExecutionException ex) {
-                        Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                }
-            };
-            worker.execute();
+            loadAllRecipes(false);
         }
 
         if (searchOptionsCombo.getSelectedIndex() == 1) {
@@ -927,6 +1061,95 @@ public class RecipebookFrame extends javax.swing.JFrame {
     private javax.swing.JTextField searchText;
     // End of variables declaration//GEN-END:variables
 
+    /**
+     * shows all recipes in recipe list, only first page is read from database,
+     * next pages are read when list is scrolled to its end
+     * @param selectFirst whether first loaded recipe should be selected
+     */
+    private void loadAllRecipes(boolean selectFirst) {
+        pagedModel = new DefaultListModel();
+        lastPagedRecipeId = 0;
+        morePages = true;
+        recipeList.setModel(pagedModel);
+        loadNextPage(selectFirst);
+    }
+
+    /**
+     * reads next page of recipes when list of all recipes is shown and its end
+     * is visible, nothing happens while another page is being read
+     */
+    private void loadNextPageIfNeeded() {
+        if (recipeList.getModel() == pagedModel
+                && recipeList.getLastVisibleIndex() >= pagedModel.getSize() - 1) {
+            loadNextPage(false);
+        }
+    }
+
+    private void loadNextPage(final boolean selectFirst) {
+        if (pageLoading || !morePages) {
+            return;
+        }
+        pageLoading = true;
+        final DefaultListModel model = pagedModel;
+        final long lastId = lastPagedRecipeId;
+        SwingWorker<SortedSet<Recipe>, Void> worker = new SwingWorker<SortedSet<Recipe>, Void>() {
+            @Override
+            protected SortedSet<Recipe> doInBackground() throws Exception {
+                if (lastId == 0) {
+                    ingredientCache.warmUp();
+                }
+                SortedSet<Recipe> page = recipeManager.findRecipesAfter(lastId, RECIPE_PAGE_SIZE);
+                for (Recipe r : page) {
+                    r.setIngredients(recipebook.getIngredientsOfRecipe(r));
+                }
+                return page;
+            }
+
+            @Override
+            protected void done() {
+                pageLoading = false;
+                SortedSet<Recipe> page;
+                try {
+                    page = get();
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
+                    return;
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(RecipebookFrame.class.getName()).log(Level.SEVERE, null, ex);
+                    return;
+                }
+                if (model != pagedModel) {
+                    // list was loaded again while this page was read
+                    loadNextPageIfNeeded();
+                    return;
+                }
+                for (Recipe recipe : page) {
+                    model.addElement(recipe);
+                }
+                morePages = page.size() == RECIPE_PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    lastPagedRecipeId = page.last().getId();
+                    if (selectFirst) {
+                        selectedRecipe = page.first();
+                        loadRecipeToLabels(selectedRecipe);
+                    }
+                } else if (lastId == 0 && !selectFirst) {
+                    WarningFrame frame = new WarningFrame();
+                    frame.setText("No recipes found");
+                    frame.setVisible(true);
+                }
+                // list may still be shorter than its view, it is checked after layout
+                EventQueue.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadNextPageIfNeeded();
+                    }
+                });
+            }
+        };
+        worker.execute();
+    }
+
     private void loadRecipeToLabels(Recipe recipe) {
         label_RecipeName.setText(recipe.getName());
         label_RecipeCategory.setText(recipe.getCategory().toString());
@@ -944,7 +1167,10 @@ public class RecipebookFrame extends javax.swing.JFrame {
     public void updateRecipeList(Recipe recipe, boolean b) {
         DefaultListModel model = (DefaultListModel) recipeList.getModel();
         if (b) {
-            model.addElement(recipe);
+            // new recipe has the highest id, it comes with the last page of all recipes
+            if (model != pagedModel || !morePages) {
+                model.addElement(recipe);
+            }
         } else {
             if (model.indexOf(recipe) + 1 < model.size()) {
                 selectedRecipe = (Recipe) model.get(model.indexOf(recipe) + 1);
@@ -1004,10 +1230,16 @@ public class RecipebookFrame extends javax.swing.JFrame {
             @Override
             protected Recipe doInBackground() throws Exception {
                 try {
-                    for (Ingredient ingredient : recipe.getIngredients()) {
-                        ingredientManager.deleteIngredient(ingredient, recipe.getId());
+                    // cascade deletes ingredients without ingredient managers, so their caches
+                    // and indexes are told about them like about writes of a unit of work
+                    SortedSet<Ingredient> ingredients = ingredientManager.getIngredientsOfRecipe(recipe.getId());
+                    recipeManager.deleteRecipeCascade(recipe.getId());
+                    for (ChangeListener listener : cacheListeners) {
+                        for (Ingredient ingredient : ingredients) {
+                            listener.ingredientChanged(ingredient.getId(), recipe.getId());
+                        }
                     }
-                    recipeManager.deleteRecipe(recipe);
+                    ingredientCache.invalidateRecipe(recipe.getId());
                 } catch (ServiceFailureException ex) {
                     logger.log(Level.SEVERE, "error while deleting recipe from DB", recipe);
                 }
@@ -1026,13 +1258,23 @@ public class RecipebookFrame extends javax.swing.JFrame {
         worker.execute();
     }
 
+    /**
+     * @return new unit of work, which invalidates caches of this frame
+     */
+    private UnitOfWork newUnitOfWork() {
+        UnitOfWork work = new UnitOfWork(jdbc, recipeManager, ingredientManager);
+        for (ChangeListener listener : cacheListeners) {
+            work.addListener(listener);
+        }
+        return work;
+    }
+
     public void updateRecipe(final Recipe recipe, final SortedSet<Ingredient> toAdd, final SortedSet<Ingredient> toUpdate) {
 
         SwingWorker<Recipe, Void> worker = new SwingWorker<Recipe, Void>() {
             @Override
             protected Recipe doInBackground() throws Exception {
                 try {
-                    SortedSet<Ingredient> is = new TreeSet<Ingredient>(toAdd);
                     Recipe r = new Recipe();
 
                     r.setId(recipe.getId());
@@ -1045,13 +1287,20 @@ public class RecipebookFrame extends javax.swing.JFrame {
 
                     r.setIngredients(new TreeSet<Ingredient>());
 
+                    // recipe and all its ingredients are written in one transaction
+                    UnitOfWork work = newUnitOfWork();
                     for (Ingredient ingredient : toUpdate) {
-                        ingredientManager.updateIngredient(ingredient);
+                        work.updateIngredient(ingredient, r.getId());
                         r.addIngredient(ingredient);
                     }
-
-                    recipeManager.updateRecipe(r);
-                    recipebook.addIngredientsToRecipe(is, r);
+                    work.updateRecipe(r);
+                    for (Ingredient ingredient : toAdd) {
+                        if (!r.getIngredients().contains(ingredient)) {
+                            work.createIngredient(ingredient, r.getId());
+                            r.addIngredient(ingredient);
+                        }
+                    }
+                    work.flush();
                     return r;
                 } catch (ServiceFailureException e) {
                     logger.log(Level.SEVERE, "adding recipe to DB failed", e);
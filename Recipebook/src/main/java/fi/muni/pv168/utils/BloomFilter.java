@@ -0,0 +1,112 @@
+package fi.muni.pv168.utils;
+
+/**
+ * bloom filter over 64 bit hashes, it tells for sure that a value was never
+ * added, values cannot be removed, so removed values are reported as possibly
+ * present until the filter is built again
+ * <p>
+ * hashes of values are computed by static hash methods, k probes are derived
+ * from the two halves of the hash
+ *
+ * @author mulan
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private long added;
+
+    /**
+     * constructor, creates empty filter sized for given number of values
+     * @param expectedValues expected number of added values
+     * @param falsePositiveRate probability, that never added value is reported as present
+     */
+    public BloomFilter(long expectedValues, double falsePositiveRate) {
+        if (expectedValues < 1) {
+            throw new IllegalArgumentException("expected number of values has to be possitive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("false positive rate has to be between 0 and 1");
+        }
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expectedValues * Math.log(falsePositiveRate) / (ln2 * ln2));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.bits = new long[(int) (m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / expectedValues * ln2));
+    }
+
+    /**
+     * adds value with given hash
+     * @param hash hash computed by one of hash methods
+     */
+    public synchronized void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        added++;
+    }
+
+    /**
+     * @param hash hash computed by one of hash methods
+     * @return false when value with given hash was never added
+     */
+    public synchronized boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of put calls, values added more times are counted more times
+     */
+    public synchronized long getAddedCount() {
+        return added;
+    }
+
+    /**
+     * @return size of the filter in bits
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * @param value number to hash
+     * @return 64 bit hash of given number
+     */
+    public static long hash(long value) {
+        // finalizer of MurmurHash3, every input bit affects all output bits
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param value string to hash
+     * @return 64 bit hash of given string
+     */
+    public static long hash(String value) {
+        // FNV-1a over characters
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+}
@@ -0,0 +1,203 @@
+package fi.muni.pv168.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * prefix tree of weighted keys, which returns the heaviest completions of
+ * a prefix, every node keeps the biggest weight below it, so completions
+ * are visited heaviest first and only about k paths are walked for top k
+ * completions, independently of number of keys with the prefix
+ * <p>
+ * children of a node are kept in sorted arrays, weights are changed by
+ * deltas, so counts of uses can be kept up to date, key with zero weight is
+ * removed, tree is not thread safe
+ *
+ * @author mulan
+ */
+public final class CompletionTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final Comparator<Candidate> HEAVIEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate c1, Candidate c2) {
+            if (c1.weight != c2.weight) {
+                return c1.weight > c2.weight ? -1 : 1;
+            }
+            // complete key is taken before subtrees of the same weight
+            return c1.complete == c2.complete ? 0 : c1.complete ? -1 : 1;
+        }
+    };
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * changes weight of given key, key is added when it is not present
+     * and removed when its weight drops to zero or below
+     * @param key key, usually normalized form of the value
+     * @param value value returned as completion of the key, the last non-null value is kept
+     * @param delta change of the weight
+     */
+    public void add(String key, String value, long delta) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                if (delta <= 0) {
+                    return;
+                }
+                child = node.addChild(key.charAt(i));
+            }
+            node = child;
+            path[i + 1] = node;
+        }
+
+        boolean present = node.weight > 0;
+        node.weight = Math.max(0, node.weight + delta);
+        if (node.weight > 0) {
+            if (!present) {
+                size++;
+            }
+            if (value != null) {
+                node.value = value;
+            }
+        } else {
+            if (present) {
+                size--;
+            }
+            node.value = null;
+        }
+
+        for (int i = key.length(); i >= 0; i--) {
+            Node current = path[i];
+            current.updateMaxWeight();
+            if (i > 0 && current.maxWeight == 0) {
+                path[i - 1].removeChild(key.charAt(i - 1));
+            }
+        }
+    }
+
+    /**
+     * @param key key to look up
+     * @return weight of the key, 0 when it is not present
+     */
+    public long getWeight(String key) {
+        Node node = find(key);
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * returns values of the heaviest keys starting with given prefix
+     * @param prefix prefix of keys
+     * @param k maximal number of completions
+     * @return values ordered from the heaviest key
+     */
+    public List<String> complete(String prefix, int k) {
+        List<String> completions = new ArrayList<String>(Math.min(k, 16));
+        Node start = find(prefix);
+        if (start == null || k <= 0) {
+            return completions;
+        }
+        PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(16, HEAVIEST_FIRST);
+        queue.add(new Candidate(start, start.maxWeight, false));
+        while (!queue.isEmpty() && completions.size() < k) {
+            Candidate candidate = queue.poll();
+            Node node = candidate.node;
+            if (candidate.complete) {
+                completions.add(node.value);
+                continue;
+            }
+            if (node.weight > 0) {
+                queue.add(new Candidate(node, node.weight, true));
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                queue.add(new Candidate(node.children[i], node.children[i].maxWeight, false));
+            }
+        }
+        return completions;
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+
+    private static final class Node {
+
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private long weight;
+        private long maxWeight;
+        private String value;
+
+        Node child(char label) {
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char label) {
+            int i = -Arrays.binarySearch(labels, 0, childCount, label) - 1;
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, 2 * childCount);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, i, labels, i + 1, childCount - i);
+            System.arraycopy(children, i, children, i + 1, childCount - i);
+            Node child = new Node();
+            labels[i] = label;
+            children[i] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int i = Arrays.binarySearch(labels, 0, childCount, label);
+            if (i >= 0) {
+                System.arraycopy(labels, i + 1, labels, i, childCount - i - 1);
+                System.arraycopy(children, i + 1, children, i, childCount - i - 1);
+                children[--childCount] = null;
+            }
+        }
+
+        void updateMaxWeight() {
+            long max = weight;
+            for (int i = 0; i < childCount; i++) {
+                max = Math.max(max, children[i].maxWeight);
+            }
+            maxWeight = max;
+        }
+    }
+
+    private static final class Candidate {
+
+        private final Node node;
+        private final long weight;
+        private final boolean complete;
+
+        Candidate(Node node, long weight, boolean complete) {
+            this.node = node;
+            this.weight = weight;
+            this.complete = complete;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -22,6 +23,13 @@ public class DBUtils {
     private static final Logger logger = Logger.getLogger(
             DBUtils.class.getName());
 
+    /**
+     * version of the schema created by createTables.sql, older schemas are
+     * brought to this version by scripts migrateTables-N.sql, where N is the
+     * version script migrates to
+     */
+    public static final int SCHEMA_VERSION = 7;
+
     /**
      * Closes connection and logs possible error.
      *
@@ -136,7 +144,8 @@ public class DBUtils {
 
     /**
      * Try to execute script for creating tables. If tables already exist,
-     * appropriate exception is catched and ignored.
+     * appropriate exception is catched and existing tables are migrated
+     * to current schema version.
      *
      * @param ds dataSource
      * @param scriptUrl url of script for creating tables
@@ -150,7 +159,7 @@ public class DBUtils {
             if ("X0Y32".equals(ex.getSQLState())) {
                 // This code represents "Table/View/... already exists"
                 // This code is Derby specific!
-                return;
+                migrateTables(ds);
             } else {
                 throw ex;
             }
@@ -177,4 +186,130 @@ public class DBUtils {
             closeQuietly(conn);
         }
     }
+
+    /**
+     * Returns version of schema in database. Schema without version table
+     * is the original schema of version 1.
+     *
+     * @param ds datasource
+     * @return version of schema
+     * @throws SQLException when operation fails
+     */
+    public static int getSchemaVersion(DataSource ds) throws SQLException {
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = ds.getConnection();
+            st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT MAX(VERSION) FROM SCHEMA_VERSION");
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException ex) {
+            if ("42X05".equals(ex.getSQLState())) {
+                // This code represents "Table/View does not exist"
+                // This code is Derby specific!
+                return 1;
+            }
+            throw ex;
+        } finally {
+            closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Returns sequence number of the last change of recipes or ingredients.
+     * Changes are appended to CHANGE_LOG by triggers, so writes of all
+     * applications are counted. Data read when the count was the same are
+     * still valid.
+     *
+     * @param ds datasource
+     * @return change count
+     * @throws SQLException when operation fails
+     */
+    public static long getChangeCount(DataSource ds) throws SQLException {
+        Connection conn = null;
+        Statement st = null;
+        try {
+            conn = ds.getConnection();
+            st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT MAX(SEQ) FROM CHANGE_LOG");
+            rs.next();
+            // empty log gives NULL, which is read as 0
+            return rs.getLong(1);
+        } finally {
+            closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Migrates existing tables to current schema version. Every migration
+     * script is executed in its own transaction. Rows removed by DELETE
+     * statements of scripts are logged. Normalized recipe names added by
+     * version 2 are computed by NameNormalizer, because SQL cannot remove
+     * accents.
+     *
+     * @param ds datasource
+     * @throws SQLException when operation fails
+     */
+    public static void migrateTables(DataSource ds) throws SQLException {
+        int version = getSchemaVersion(ds);
+        while (version < SCHEMA_VERSION) {
+            version++;
+            URL scriptUrl = DBUtils.class.getResource("/migrateTables-" + version + ".sql");
+            if (scriptUrl == null) {
+                throw new IllegalStateException("Missing migration script to schema version " + version);
+            }
+
+            Connection conn = null;
+            Statement st = null;
+            try {
+                conn = ds.getConnection();
+                conn.setAutoCommit(false);
+                st = conn.createStatement();
+                for (String sqlStatement : readSqlStatements(scriptUrl)) {
+                    if (!sqlStatement.trim().isEmpty()) {
+                        int rows = st.executeUpdate(sqlStatement);
+                        if (rows > 0 && sqlStatement.trim().toUpperCase().startsWith("DELETE")) {
+                            logger.log(Level.WARNING, "Migration to schema version {0} removed {1} rows by {2}",
+                                    new Object[] {version, rows, sqlStatement.trim()});
+                        }
+                    }
+                }
+                if (version == 2) {
+                    normalizeRecipeNames(conn);
+                }
+                st.executeUpdate("UPDATE SCHEMA_VERSION SET VERSION = " + version);
+                conn.commit();
+                logger.log(Level.WARNING, "Tables migrated to schema version {0}", version);
+            } finally {
+                doRollbackQuietly(conn);
+                closeQuietly(conn, st);
+            }
+        }
+    }
+
+    /**
+     * Fills NAME_NORM of all recipes the same way as RecipeManagerImpl does.
+     */
+    private static void normalizeRecipeNames(Connection conn) throws SQLException {
+        Statement select = null;
+        PreparedStatement update = null;
+        try {
+            select = conn.createStatement();
+            update = conn.prepareStatement("UPDATE RECIPES SET NAME_NORM = ? WHERE ID = ?");
+            ResultSet rs = select.executeQuery("SELECT ID, NAME FROM RECIPES");
+            int count = 0;
+            while (rs.next()) {
+                update.setString(1, NameNormalizer.normalize(rs.getString(2)));
+                update.setLong(2, rs.getLong(1));
+                update.addBatch();
+                if (++count % 1000 == 0) {
+                    update.executeBatch();
+                }
+            }
+            update.executeBatch();
+        } finally {
+            closeQuietly(null, select, update);
+        }
+    }
 }
@@ -0,0 +1,241 @@
+package fi.muni.pv168.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * dictionary of weighted keys, which finds keys within small edit distance
+ * of a misspelled term by symmetric deletes, every key is kept under all
+ * strings made by deleting up to maxDistance of its characters, a term is
+ * looked up by its own deletes, so only keys sharing a delete with the term
+ * are compared with it, no matter how many keys there are
+ * <p>
+ * distance counts insertions, deletions, substitutions and transpositions
+ * of neighbouring characters, weights are changed by deltas and key with
+ * zero weight is removed, dictionary is not thread safe
+ *
+ * @author mulan
+ */
+public final class FuzzyDictionary {
+
+    /**
+     * key found by lookup
+     */
+    public static final class Match {
+
+        private final String key;
+        private final String value;
+        private final int distance;
+        private final long weight;
+
+        Match(String key, String value, int distance, long weight) {
+            this.key = key;
+            this.value = value;
+            this.distance = distance;
+            this.weight = weight;
+        }
+
+        public String getKey() {return key;}
+        public String getValue() {return value;}
+        public int getDistance() {return distance;}
+        public long getWeight() {return weight;}
+
+        @Override
+        public String toString() {
+            return key + "(" + distance + ", " + weight + ")";
+        }
+    }
+
+    private static final Comparator<Match> CLOSEST_FIRST = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            if (m1.distance != m2.distance) {
+                return m1.distance - m2.distance;
+            }
+            if (m1.weight != m2.weight) {
+                return m1.weight > m2.weight ? -1 : 1;
+            }
+            return m1.key.compareTo(m2.key);
+        }
+    };
+
+    private final int maxDistance;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, List<String>> deletes = new HashMap<String, List<String>>();
+
+    /**
+     * constructor
+     * @param maxDistance biggest distance lookups can use, every key is kept
+     *        under number of deletes growing with this power of key length
+     */
+    public FuzzyDictionary(int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("max distance is negative");
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * changes weight of given key, key is added when it is not present
+     * and removed when its weight drops to zero or below
+     * @param key key, usually normalized form of the value
+     * @param value value of the key, the last non-null value is kept
+     * @param delta change of the weight
+     */
+    public void add(String key, String value, long delta) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (delta <= 0) {
+                return;
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+            for (String delete : deletesOf(key, maxDistance)) {
+                List<String> keys = deletes.get(delete);
+                if (keys == null) {
+                    keys = new ArrayList<String>(1);
+                    deletes.put(delete, keys);
+                }
+                keys.add(key);
+            }
+        }
+        entry.weight += delta;
+        if (value != null) {
+            entry.value = value;
+        }
+        if (entry.weight <= 0) {
+            entries.remove(key);
+            for (String delete : deletesOf(key, maxDistance)) {
+                List<String> keys = deletes.get(delete);
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    deletes.remove(delete);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key key to look up
+     * @return weight of the key, 0 when it is not present
+     */
+    public long getWeight(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.weight;
+    }
+
+    /**
+     * finds keys within given distance of the term
+     * @param term searched term
+     * @param distance biggest distance of found keys, at most maxDistance of the dictionary
+     * @return found keys, closest first, heavier first among keys of the same distance
+     */
+    public List<Match> lookup(String term, int distance) {
+        if (distance > maxDistance) {
+            throw new IllegalArgumentException("distance is bigger than " + maxDistance);
+        }
+        List<Match> matches = new ArrayList<Match>();
+        Set<String> compared = new HashSet<String>();
+        for (String delete : deletesOf(term, distance)) {
+            Entry entry = entries.get(delete);
+            if (entry != null && compared.add(delete)) {
+                addMatch(matches, term, delete, entry, distance);
+            }
+            List<String> keys = deletes.get(delete);
+            if (keys != null) {
+                for (String key : keys) {
+                    if (compared.add(key)) {
+                        addMatch(matches, term, key, entries.get(key), distance);
+                    }
+                }
+            }
+        }
+        Collections.sort(matches, CLOSEST_FIRST);
+        return matches;
+    }
+
+    private static void addMatch(List<Match> matches, String term, String key, Entry entry, int distance) {
+        int d = distance(term, key, distance);
+        if (d <= distance) {
+            matches.add(new Match(key, entry.value, d, entry.weight));
+        }
+    }
+
+    /**
+     * returns given text and all strings made by deleting up to given number of its characters
+     */
+    static Set<String> deletesOf(String text, int distance) {
+        Set<String> result = new HashSet<String>();
+        result.add(text);
+        List<String> current = Collections.singletonList(text);
+        for (int d = 0; d < distance; d++) {
+            List<String> next = new ArrayList<String>();
+            for (String s : current) {
+                for (int i = 0; i < s.length(); i++) {
+                    String delete = s.substring(0, i) + s.substring(i + 1);
+                    if (result.add(delete)) {
+                        next.add(delete);
+                    }
+                }
+            }
+            current = next;
+        }
+        return result;
+    }
+
+    /**
+     * computes edit distance with transpositions of neighbouring characters
+     * @return the distance, or a number bigger than max when the distance is bigger
+     */
+    static int distance(String s, String t, int max) {
+        if (Math.abs(s.length() - t.length()) > max) {
+            return max + 1;
+        }
+        int[] previous2 = new int[t.length() + 1];
+        int[] previous = new int[t.length() + 1];
+        int[] current = new int[t.length() + 1];
+        for (int j = 0; j <= t.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= s.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && s.charAt(i - 1) == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1)) {
+                    d = Math.min(d, previous2[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] rotated = previous2;
+            previous2 = previous;
+            previous = current;
+            current = rotated;
+        }
+        return previous[t.length()];
+    }
+
+    private static final class Entry {
+
+        private long weight;
+        private String value;
+    }
+}
@@ -0,0 +1,316 @@
+package fi.muni.pv168.utils;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * work with one connection borrowed by JdbcTemplate, statements prepared
+ * in the session are reused until the session is closed by the template,
+ * session is not thread safe
+ *
+ * @author mulan
+ */
+public class JdbcSession {
+
+    private static final Logger logger = Logger.getLogger(
+            JdbcSession.class.getName());
+
+    private final Connection connection;
+    private final JdbcTemplate template;
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+    private final Map<String, PreparedStatement> keyStatements = new HashMap<String, PreparedStatement>();
+
+    JdbcSession(Connection connection, JdbcTemplate template) {
+        this.connection = connection;
+        this.template = template;
+    }
+
+    /**
+     * @return connection of this session, it must not be closed
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * returns prepared statement for given SQL, statement is prepared only once
+     * in the session, its result sets have to be closed before it is used again
+     *
+     * @param sql text of the statement
+     * @return prepared statement
+     * @throws SQLException when statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * returns prepared statement for given insert, which returns generated keys
+     *
+     * @param sql text of the insert
+     * @return prepared statement
+     * @throws SQLException when statement cannot be prepared
+     */
+    public PreparedStatement prepareInsert(String sql) throws SQLException {
+        PreparedStatement statement = keyStatements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            keyStatements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * executes query and maps all rows
+     *
+     * @param sql text of the query
+     * @param mapper mapper of rows
+     * @param params parameters of the query
+     * @return mapped rows in order of result set
+     * @throws SQLException when query fails
+     */
+    public <T> List<T> query(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        ResultSet rs = null;
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, params);
+            rs = statement.executeQuery();
+            List<T> result = new ArrayList<T>();
+            while (rs.next()) {
+                result.add(mapper.mapRow(rs));
+            }
+            failed = false;
+            return result;
+        } finally {
+            closeQuietly(rs);
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes query and maps its first row
+     *
+     * @param sql text of the query
+     * @param mapper mapper of the row
+     * @param params parameters of the query
+     * @return mapped row, null when query returned no rows
+     * @throws SQLException when query fails
+     */
+    public <T> T queryForObject(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        ResultSet rs = null;
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, params);
+            rs = statement.executeQuery();
+            T result = rs.next() ? mapper.mapRow(rs) : null;
+            failed = false;
+            return result;
+        } finally {
+            closeQuietly(rs);
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes query and passes rows to given callback one by one, recorded
+     * time includes time spent in the callback
+     *
+     * @param sql text of the query
+     * @param fetchSize number of rows fetched from database at once
+     * @param callback callback processing rows
+     * @param params parameters of the query
+     * @return number of processed rows
+     * @throws SQLException when query fails
+     * @throws ServiceFailureException when callback fails
+     */
+    public long queryForEach(String sql, int fetchSize, RowCallback callback, Object... params)
+            throws SQLException, ServiceFailureException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        ResultSet rs = null;
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, params);
+            statement.setFetchSize(fetchSize);
+            rs = statement.executeQuery();
+            long count = 0;
+            while (rs.next()) {
+                callback.processRow(rs);
+                count++;
+            }
+            failed = false;
+            return count;
+        } finally {
+            closeQuietly(rs);
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes update, insert or delete
+     *
+     * @param sql text of the statement
+     * @param params parameters of the statement
+     * @return number of affected rows
+     * @throws SQLException when statement fails
+     */
+    public int update(String sql, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, params);
+            int count = statement.executeUpdate();
+            failed = false;
+            return count;
+        } finally {
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes insert of one row
+     *
+     * @param sql text of the insert
+     * @param params parameters of the insert
+     * @return generated key of inserted row
+     * @throws SQLException when insert fails
+     * @throws ServiceFailureException when insert did not insert exactly one row
+     */
+    public long insert(String sql, Object... params) throws SQLException, ServiceFailureException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PreparedStatement statement = prepareInsert(sql);
+            bind(statement, params);
+            DBUtils.checkUpdatesCount(statement.executeUpdate(), true);
+            long key = DBUtils.getId(statement.getGeneratedKeys());
+            failed = false;
+            return key;
+        } finally {
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes one statement as batch for every row of parameters
+     *
+     * @param sql text of the statement
+     * @param rows parameters of single executions
+     * @return numbers of affected rows for single executions
+     * @throws SQLException when batch fails
+     */
+    public int[] batch(String sql, List<Object[]> rows) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PreparedStatement statement = prepare(sql);
+            for (Object[] params : rows) {
+                bind(statement, params);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            failed = false;
+            return counts;
+        } finally {
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * executes insert as batch for every row of parameters, Derby reports only
+     * the key of the last row of a batch, so only that key is returned
+     *
+     * @param sql text of the insert
+     * @param rows parameters of single inserts
+     * @return generated key of the last inserted row
+     * @throws SQLException when batch fails
+     * @throws ServiceFailureException when some insert did not insert exactly one row
+     */
+    public long insertBatch(String sql, List<Object[]> rows) throws SQLException, ServiceFailureException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PreparedStatement statement = prepareInsert(sql);
+            for (Object[] params : rows) {
+                bind(statement, params);
+                statement.addBatch();
+            }
+            for (int count : statement.executeBatch()) {
+                if (count != Statement.SUCCESS_NO_INFO) {
+                    DBUtils.checkUpdatesCount(count, true);
+                }
+            }
+            long key = DBUtils.getId(statement.getGeneratedKeys());
+            failed = false;
+            return key;
+        } finally {
+            template.record(sql, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * closes all statements prepared in this session
+     */
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        for (PreparedStatement statement : keyStatements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        keyStatements.clear();
+    }
+
+    /**
+     * sets parameters of statement, nulls are set with type of the parameter
+     */
+    private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == null) {
+                statement.setNull(i + 1, statement.getParameterMetaData().getParameterType(i + 1));
+            } else {
+                statement.setObject(i + 1, params[i]);
+            }
+        }
+    }
+
+    private static void closeQuietly(ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, "Error while trying to close result set", ex);
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "Error while trying to close statement", ex);
+        }
+    }
+}
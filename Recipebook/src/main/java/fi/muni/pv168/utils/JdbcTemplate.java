@@ -0,0 +1,235 @@
+package fi.muni.pv168.utils;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * executes SQL statements on connections of data source, reads run in
+ * autocommit mode without any transaction control, work consisting of more
+ * statements is executed by executeInTransaction, prepared statements are
+ * reused within one connection borrowing (and across borrowings, when
+ * the pool caches prepared statements), every statement is timed
+ * and its timings are available from getStatistics
+ *
+ * @author mulan
+ */
+public class JdbcTemplate {
+
+    private static final Logger logger = Logger.getLogger(
+            JdbcTemplate.class.getName());
+
+    private final DataSource dataSource;
+    private final ConcurrentMap<String, StatementStatistics> statistics =
+            new ConcurrentHashMap<String, StatementStatistics>();
+
+    /**
+     * constructor, sets data source to given one
+     *
+     * @param dataSource given data source
+     */
+    public JdbcTemplate(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return data source of this template
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * executes given work in autocommit mode
+     *
+     * @param callback work to do
+     * @return result of the work
+     * @throws SQLException when database operation fails
+     * @throws ServiceFailureException when the work fails
+     */
+    public <T> T execute(SessionCallback<T> callback) throws SQLException, ServiceFailureException {
+        JdbcSession session = openSession();
+        try {
+            return callback.doInSession(session);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * executes given work in one transaction, transaction is rolled back,
+     * when the work throws any exception
+     *
+     * @param callback work to do
+     * @return result of the work
+     * @throws SQLException when database operation fails
+     * @throws ServiceFailureException when the work fails
+     */
+    public <T> T executeInTransaction(SessionCallback<T> callback) throws SQLException, ServiceFailureException {
+        Connection connection = null;
+        JdbcSession session = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            session = new JdbcSession(connection, this);
+
+            T result = callback.doInSession(session);
+
+            connection.commit();
+            return result;
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            if (session != null) {
+                session.close();
+            }
+            DBUtils.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * executes query and maps all rows
+     *
+     * @see JdbcSession#query
+     */
+    public <T> List<T> query(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        JdbcSession session = openSession();
+        try {
+            return session.query(sql, mapper, params);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * executes query and maps its first row
+     *
+     * @see JdbcSession#queryForObject
+     */
+    public <T> T queryForObject(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        JdbcSession session = openSession();
+        try {
+            return session.queryForObject(sql, mapper, params);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * executes query and passes rows to given callback one by one
+     *
+     * @see JdbcSession#queryForEach
+     */
+    public long queryForEach(String sql, int fetchSize, RowCallback callback, Object... params)
+            throws SQLException, ServiceFailureException {
+        JdbcSession session = openSession();
+        try {
+            return session.queryForEach(sql, fetchSize, callback, params);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * executes single update, insert or delete, single statement is atomic
+     * in autocommit mode, so no transaction control is needed
+     *
+     * @see JdbcSession#update
+     */
+    public int update(String sql, Object... params) throws SQLException {
+        JdbcSession session = openSession();
+        try {
+            return session.update(sql, params);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * executes single insert of one row
+     *
+     * @see JdbcSession#insert
+     */
+    public long insert(String sql, Object... params) throws SQLException, ServiceFailureException {
+        JdbcSession session = openSession();
+        try {
+            return session.insert(sql, params);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * returns timings of statements executed by this template
+     *
+     * @return copies of statistics ordered by SQL text
+     */
+    public Map<String, StatementStatistics> getStatistics() {
+        Map<String, StatementStatistics> result = new TreeMap<String, StatementStatistics>();
+        for (StatementStatistics stats : statistics.values()) {
+            result.put(stats.getSql(), stats.copy());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * forgets all recorded timings
+     */
+    public void resetStatistics() {
+        statistics.clear();
+    }
+
+    /**
+     * logs recorded timings of all statements
+     *
+     * @param level level to log with
+     */
+    public void logStatistics(Level level) {
+        for (StatementStatistics stats : getStatistics().values()) {
+            logger.log(level, stats.toString());
+        }
+    }
+
+    /**
+     * borrows connection in autocommit mode, connections of the pool are
+     * in autocommit mode by default, so no round trip is needed
+     */
+    private JdbcSession openSession() throws SQLException {
+        return new JdbcSession(dataSource.getConnection(), this);
+    }
+
+    /**
+     * closes statements of given session and returns its connection
+     */
+    private void closeSession(JdbcSession session) {
+        session.close();
+        try {
+            session.getConnection().close();
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "Error while closing connection", ex);
+        }
+    }
+
+    /**
+     * records one execution of given statement
+     */
+    void record(String sql, long nanos, boolean failed) {
+        StatementStatistics stats = statistics.get(sql);
+        if (stats == null) {
+            StatementStatistics newStats = new StatementStatistics(sql);
+            stats = statistics.putIfAbsent(sql, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        stats.record(nanos, failed);
+    }
+}
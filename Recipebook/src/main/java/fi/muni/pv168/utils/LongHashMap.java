@@ -0,0 +1,128 @@
+package fi.muni.pv168.utils;
+
+/**
+ * open addressing hash table from positive long keys to non-negative long
+ * values with linear probing, keys and values are kept in primitive arrays,
+ * so entries do not need objects, 0 marks empty slot
+ * <p>
+ * removed entry does not leave a marker, entries after it are shifted back
+ * instead, so table does not fill with deleted slots, table is not thread safe
+ *
+ * @author mulan
+ */
+public final class LongHashMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key positive key
+     * @return value of given key, -1 when key is not present
+     */
+    public long get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * sets value of given key
+     * @param key positive key
+     * @param value non-negative value
+     */
+    public void put(long key, long value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("key has to be possitive");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("value is negative");
+        }
+        if (2 * (size + 1) > keys.length) {
+            resize(2 * keys.length);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * removes given key, nothing happens when it is not present
+     * @param key positive key
+     */
+    public void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = 0;
+        size--;
+
+        // entries after removed one are shifted back, so probing
+        // does not stop at the empty slot
+        int j = (i + 1) & mask;
+        while (keys[j] != 0) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = 0;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    /**
+     * removes all keys
+     */
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[capacity];
+        values = new long[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,230 @@
+package fi.muni.pv168.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * thread safe cache, which keeps least recently used entries up to given
+ * total weight of values, entries may also expire after given time to live
+ * <p>
+ * every removal increases version of the cache, value loaded from database
+ * is stored by put(key, value, version) only when no removal happened since
+ * the version was read before loading, so value loaded concurrently with
+ * invalidating write is never cached
+ *
+ * @author mulan
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private final long maxWeight;
+    private final Weigher<? super V> weigher;
+    private long ttlNanos;
+    private long weight;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * constructor, creates empty cache
+     *
+     * @param maxWeight maximal total weight of cached values
+     * @param weigher weigher of values
+     */
+    public LruCache(long maxWeight, Weigher<? super V> weigher) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maximal weight has to be possitive");
+        }
+        if (weigher == null) {
+            throw new IllegalArgumentException("weigher is null");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * sets time after which entries expire, entries put before are not affected
+     *
+     * @param ttl time to live, 0 for entries which do not expire
+     * @param unit unit of ttl
+     */
+    public synchronized void setTimeToLive(long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("time to live is negative");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * returns cached value and marks it as recently used
+     *
+     * @param key key of the value
+     * @return cached value, null when value is not cached or it expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt != 0 && entry.expiresAt - System.nanoTime() <= 0) {
+            entries.remove(key);
+            weight -= entry.weight;
+            evictions++;
+            entryRemoved(key, entry.value);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * @return current version, it has to be read before loading of value
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * caches value unless some entry was removed since given version,
+     * least recently used entries are evicted when cache is full
+     *
+     * @param key key of the value
+     * @param value value to cache
+     * @param sinceVersion version read before value was loaded
+     * @return true, when value was cached
+     */
+    public synchronized boolean put(K key, V value, long sinceVersion) {
+        if (sinceVersion != version) {
+            return false;
+        }
+        long valueWeight = weigher.weigh(value);
+        if (valueWeight > maxWeight) {
+            return false;
+        }
+
+        long expiresAt = 0;
+        if (ttlNanos > 0) {
+            // 0 means that entry never expires
+            expiresAt = System.nanoTime() + ttlNanos;
+            if (expiresAt == 0) {
+                expiresAt = 1;
+            }
+        }
+        Entry<V> old = entries.put(key, new Entry<V>(value, valueWeight, expiresAt));
+        if (old != null) {
+            weight -= old.weight;
+            entryRemoved(key, old.value);
+        }
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<K, Entry<V>> evicted = eldest.next();
+            eldest.remove();
+            weight -= evicted.getValue().weight;
+            evictions++;
+            entryRemoved(evicted.getKey(), evicted.getValue().value);
+        }
+        return true;
+    }
+
+    /**
+     * removes cached value
+     *
+     * @param key key of the value
+     */
+    public synchronized void remove(K key) {
+        version++;
+        Entry<V> old = entries.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+            entryRemoved(key, old.value);
+        }
+    }
+
+    /**
+     * increases version without removing any value, so values loaded before
+     * a write, which does not affect any cached value, are not cached
+     */
+    public synchronized void invalidate() {
+        version++;
+    }
+
+    /**
+     * removes all cached values
+     */
+    public synchronized void clear() {
+        version++;
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            entryRemoved(entry.getKey(), entry.getValue().value);
+        }
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of cached values
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of cached values
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries removed because cache was full or they expired
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * called whenever value leaves the cache, because it was evicted, expired,
+     * replaced or removed, it is called while the cache is locked, so it must
+     * not wait for other locks, does nothing by default
+     *
+     * @param key key of the value
+     * @param value removed value
+     */
+    protected void entryRemoved(K key, V value) {
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LruCache{" + "size=" + entries.size() + ", weight=" + weight + ", maxWeight=" + maxWeight
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+
+    /**
+     * cached value with its weight and expiration time
+     */
+    private static class Entry<V> {
+
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
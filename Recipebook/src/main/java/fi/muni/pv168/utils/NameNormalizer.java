@@ -0,0 +1,48 @@
+package fi.muni.pv168.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * normalizes names for searching, stored normalized names are upper-cased
+ * and have accents removed, so "Šošovica" is searched as "SOSOVICA"
+ *
+ * @author mulan
+ */
+public class NameNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * returns normalized form of given name
+     *
+     * @param name name to normalize
+     * @return upper-cased name without accents, null for null name
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * escapes LIKE wildcards in given text, backslash is used as escape character
+     *
+     * @param text text to escape
+     * @return text safe to use inside of LIKE pattern with ESCAPE '\'
+     */
+    public static String escapeLike(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
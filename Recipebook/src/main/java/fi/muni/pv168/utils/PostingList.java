@@ -0,0 +1,260 @@
+package fi.muni.pv168.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * sorted set of non-negative IDs stored as differences of neighbouring IDs
+ * in variable-length bytes, seven bits per byte, so dense lists of IDs take
+ * about one byte per ID
+ * <p>
+ * IDs greater than the last one are appended, other changes decode and
+ * encode the whole list, list is not thread safe
+ *
+ * @author mulan
+ */
+public final class PostingList {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] data = EMPTY;
+    private int length;
+    private int size;
+    private long last = -1;
+
+    /**
+     * creates list of given IDs
+     * @param ids IDs sorted in ascending order, duplicates are skipped
+     * @param count number of IDs to take from the array
+     * @return new list
+     */
+    public static PostingList of(long[] ids, int count) {
+        PostingList list = new PostingList();
+        for (int i = 0; i < count; i++) {
+            if (ids[i] < list.last) {
+                throw new IllegalArgumentException("ids are not sorted");
+            }
+            if (ids[i] != list.last) {
+                list.append(ids[i]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * collects IDs in any order and builds lists of them, so lists built
+     * from one pass over a table are encoded by appending only
+     */
+    public static final class Builder {
+
+        private long[] ids = new long[4];
+        private int count;
+
+        public void add(long id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * count);
+            }
+            ids[count++] = id;
+        }
+
+        public PostingList build() {
+            Arrays.sort(ids, 0, count);
+            return of(ids, count);
+        }
+    }
+
+    /**
+     * @return number of IDs in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return number of bytes taken by encoded IDs
+     */
+    public int getEncodedSize() {
+        return length;
+    }
+
+    /**
+     * adds ID into the list
+     * @param id non-negative ID
+     * @return true when the ID was not in the list
+     */
+    public boolean add(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id is negative");
+        }
+        if (id > last) {
+            append(id);
+            return true;
+        }
+        long[] ids = toArray();
+        int i = Arrays.binarySearch(ids, id);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+        long[] inserted = new long[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, i);
+        inserted[i] = id;
+        System.arraycopy(ids, i, inserted, i + 1, ids.length - i);
+        encode(inserted, inserted.length);
+        return true;
+    }
+
+    /**
+     * removes ID from the list
+     * @param id ID to remove
+     * @return true when the ID was in the list
+     */
+    public boolean remove(long id) {
+        if (id < 0 || id > last) {
+            return false;
+        }
+        long[] ids = toArray();
+        int i = Arrays.binarySearch(ids, id);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(ids, i + 1, ids, i, ids.length - i - 1);
+        encode(ids, ids.length - 1);
+        return true;
+    }
+
+    public boolean contains(long id) {
+        if (id < 0 || id > last) {
+            return false;
+        }
+        long current = 0;
+        int pos = 0;
+        while (pos < length) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            current += delta;
+            if (current >= id) {
+                return current == id;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return decoded IDs in ascending order
+     */
+    public long[] toArray() {
+        long[] ids = new long[size];
+        long current = 0;
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            current += delta;
+            ids[i] = current;
+        }
+        return ids;
+    }
+
+    /**
+     * keeps only those of given IDs, which are in this list, by one merge pass
+     * @param ids IDs sorted in ascending order, kept IDs are moved to the start
+     * @param count number of IDs in the array
+     * @return number of kept IDs
+     */
+    public int retainAll(long[] ids, int count) {
+        int kept = 0;
+        int pos = 0;
+        int read = 0;
+        long current = -1;
+        for (int i = 0; i < count; i++) {
+            long id = ids[i];
+            while (current < id && read < size) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current = (read == 0 ? 0 : current) + delta;
+                read++;
+            }
+            if (current == id) {
+                ids[kept++] = id;
+            } else if (current < id) {
+                break;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * intersects given lists, shortest list is decoded and the others are
+     * merged into it one by one, so the cost follows the shortest list
+     * @param lists lists to intersect
+     * @return IDs present in all lists in ascending order, no IDs for no lists
+     */
+    public static long[] intersect(PostingList... lists) {
+        if (lists.length == 0) {
+            return new long[0];
+        }
+        PostingList[] sorted = lists.clone();
+        Arrays.sort(sorted, new Comparator<PostingList>() {
+            @Override
+            public int compare(PostingList l1, PostingList l2) {
+                return l1.size() - l2.size();
+            }
+        });
+        long[] ids = sorted[0].toArray();
+        int count = ids.length;
+        for (int i = 1; i < sorted.length && count > 0; i++) {
+            count = sorted[i].retainAll(ids, count);
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private void append(long id) {
+        long delta = size == 0 ? id : id - last;
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(16, data.length + data.length / 2 + 10));
+        }
+        while ((delta & ~0x7FL) != 0) {
+            data[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        data[length++] = (byte) delta;
+        last = id;
+        size++;
+    }
+
+    private void encode(long[] ids, int count) {
+        data = EMPTY;
+        length = 0;
+        size = 0;
+        last = -1;
+        for (int i = 0; i < count; i++) {
+            append(ids[i]);
+        }
+        if (length < data.length) {
+            data = Arrays.copyOf(data, length);
+        }
+    }
+}
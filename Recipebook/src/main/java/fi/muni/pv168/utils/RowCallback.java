@@ -0,0 +1,22 @@
+package fi.muni.pv168.utils;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * processes rows of result set one by one, rows are not collected
+ *
+ * @author mulan
+ */
+public interface RowCallback {
+
+    /**
+     * processes current row of given result set, implementations must not move the cursor
+     *
+     * @param rs result set positioned on the row to process
+     * @throws SQLException when reading of the row fails
+     * @throws ServiceFailureException when processing fails, remaining rows are skipped
+     */
+    void processRow(ResultSet rs) throws SQLException, ServiceFailureException;
+}
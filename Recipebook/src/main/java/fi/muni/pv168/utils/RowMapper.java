@@ -0,0 +1,21 @@
+package fi.muni.pv168.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * maps current row of result set into an object
+ *
+ * @author mulan
+ */
+public interface RowMapper<T> {
+
+    /**
+     * maps current row of given result set, implementations must not move the cursor
+     *
+     * @param rs result set positioned on the row to map
+     * @return object created from the row
+     * @throws SQLException when reading of the row fails
+     */
+    T mapRow(ResultSet rs) throws SQLException;
+}
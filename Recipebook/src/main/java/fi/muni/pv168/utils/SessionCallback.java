@@ -0,0 +1,22 @@
+package fi.muni.pv168.utils;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import java.sql.SQLException;
+
+/**
+ * work done with one connection of JdbcTemplate
+ *
+ * @author mulan
+ */
+public interface SessionCallback<T> {
+
+    /**
+     * does the work with given session, session is closed by the template
+     *
+     * @param session session to work with
+     * @return result of the work
+     * @throws SQLException when database operation fails
+     * @throws ServiceFailureException when the work fails, transaction is rolled back
+     */
+    T doInSession(JdbcSession session) throws SQLException, ServiceFailureException;
+}
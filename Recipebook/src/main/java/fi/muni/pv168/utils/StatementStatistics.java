@@ -0,0 +1,87 @@
+package fi.muni.pv168.utils;
+
+/**
+ * timings of one SQL statement executed by JdbcTemplate
+ *
+ * @author mulan
+ */
+public class StatementStatistics {
+
+    private final String sql;
+    private long count;
+    private long failures;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * constructor, creates empty statistics of given statement
+     *
+     * @param sql text of the statement
+     */
+    public StatementStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * records one execution of the statement
+     *
+     * @param nanos duration of the execution
+     * @param failed true, when the execution ended with exception
+     */
+    synchronized void record(long nanos, boolean failed) {
+        count++;
+        if (failed) {
+            failures++;
+        }
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    /**
+     * @return copy of these statistics, which does not change anymore
+     */
+    synchronized StatementStatistics copy() {
+        StatementStatistics copy = new StatementStatistics(sql);
+        copy.count = count;
+        copy.failures = failures;
+        copy.totalNanos = totalNanos;
+        copy.maxNanos = maxNanos;
+        return copy;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return average duration of one execution, 0 when statement was not executed
+     */
+    public synchronized long getAverageNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementStatistics{" + "count=" + count + ", failures=" + failures
+                + ", totalMs=" + totalNanos / 1000000 + ", avgUs=" + getAverageNanos() / 1000
+                + ", maxUs=" + maxNanos / 1000 + ", sql=" + sql + '}';
+    }
+}
@@ -0,0 +1,117 @@
+package fi.muni.pv168.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * assigns small integer codes to strings, which repeat in many rows, like
+ * ingredient names and units, every distinct string is kept once and its
+ * code is kept for the life of the application, so two strings are equal
+ * exactly when their codes are equal
+ * <p>
+ * lookups of known strings do not lock, new strings are added under lock,
+ * dictionary is never shrunk, so it is meant for values with few distinct
+ * strings only
+ *
+ * @author mulan
+ */
+public final class StringDictionary {
+
+    /**
+     * shared dictionaries of ingredient names and units
+     */
+    public static final StringDictionary INGREDIENT_NAMES = new StringDictionary();
+    public static final StringDictionary UNITS = new StringDictionary();
+
+    /**
+     * code of null, codes of strings start at 1
+     */
+    public static final int NULL_CODE = 0;
+
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] values = new String[64];
+    private int size = 1;
+
+    /**
+     * returns code of given string, new code is assigned to unknown string
+     * @param value string to encode
+     * @return code of the string, NULL_CODE for null
+     */
+    public int code(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        return add(value);
+    }
+
+    /**
+     * returns code of given string without adding it, so strings, which are
+     * only looked up, like searched names, do not grow the dictionary
+     * @param value string to look up
+     * @return code of the string, NULL_CODE for null or unknown string
+     */
+    public int find(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    /**
+     * returns string of given code, the same instance is returned for all
+     * strings with the same code
+     * @param code code returned by code method
+     * @return string of the code, null for NULL_CODE
+     */
+    public String valueOf(int code) {
+        if (code == NULL_CODE) {
+            return null;
+        }
+        String[] current = values;
+        String value = code < current.length ? current[code] : null;
+        if (value == null) {
+            // code was assigned by another thread and the array is not visible yet
+            synchronized (this) {
+                value = values[code];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * returns shared instance of given string
+     * @param value string to intern
+     * @return string equal to given one, null for null
+     */
+    public String intern(String value) {
+        return valueOf(code(value));
+    }
+
+    /**
+     * @return number of distinct strings
+     */
+    public synchronized int size() {
+        return size - 1;
+    }
+
+    private synchronized int add(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        // copy does not keep larger char array of a substring alive
+        String copy = new String(value);
+        values[size] = copy;
+        codes.put(copy, size);
+        return size++;
+    }
+}
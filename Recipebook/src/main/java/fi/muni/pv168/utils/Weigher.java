@@ -0,0 +1,17 @@
+package fi.muni.pv168.utils;
+
+/**
+ * estimates memory taken by cached values
+ *
+ * @author mulan
+ */
+public interface Weigher<V> {
+
+    /**
+     * returns estimated size of given value
+     *
+     * @param value cached value
+     * @return estimated size in bytes, has to be possitive
+     */
+    long weigh(V value);
+}
@@ -5,13 +5,59 @@ CREATE TABLE "RECIPES" (
     "CATEGORY" INTEGER NOT NULL,
     "COOKINGTIME" INTEGER NOT NULL,
     "NUMPORTIONS" INTEGER NOT NULL,
-    "INSTRUCTIONS" VARCHAR(255)
+    "INSTRUCTIONS" VARCHAR(255),
+    "NAME_NORM" VARCHAR(255)
 );
 
+CREATE INDEX "RECIPES_NAME_NORM" ON "RECIPES" ("NAME_NORM");
+
+CREATE INDEX "RECIPES_TYPE_CATEGORY_TIME" ON "RECIPES" ("TYPE", "CATEGORY", "COOKINGTIME");
+
 CREATE TABLE "INGREDIENTS" (
     "ID" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     "NAME" VARCHAR(255),
     "AMOUNT" DOUBLE,
     "UNIT" VARCHAR(255),
-    "RECIPEID" INTEGER NOT NULL
-);
\ No newline at end of file
+    "RECIPEID" BIGINT NOT NULL,
+    CONSTRAINT "INGREDIENTS_RECIPE_FK" FOREIGN KEY ("RECIPEID") REFERENCES "RECIPES" ("ID") ON DELETE CASCADE
+);
+
+CREATE INDEX "INGREDIENTS_RECIPEID" ON "INGREDIENTS" ("RECIPEID");
+
+CREATE INDEX "INGREDIENTS_NAME" ON "INGREDIENTS" ("NAME");
+
+CREATE TABLE "CHANGE_LOG" (
+    "SEQ" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    "ENTITY" CHAR(1) NOT NULL,
+    "ENTITY_ID" BIGINT NOT NULL,
+    "RECIPE_ID" BIGINT NOT NULL
+);
+
+CREATE TRIGGER "RECIPES_INSERT_LOG" AFTER INSERT ON "RECIPES" REFERENCING NEW AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "RECIPES_UPDATE_LOG" AFTER UPDATE ON "RECIPES" REFERENCING NEW AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "RECIPES_DELETE_LOG" AFTER DELETE ON "RECIPES" REFERENCING OLD AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "INGREDIENTS_INSERT_LOG" AFTER INSERT ON "INGREDIENTS" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
+
+CREATE TRIGGER "INGREDIENTS_UPDATE_LOG" AFTER UPDATE ON "INGREDIENTS" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
+
+CREATE TRIGGER "INGREDIENTS_DELETE_LOG" AFTER DELETE ON "INGREDIENTS" REFERENCING OLD AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
+
+CREATE TABLE "IMPORT_CHECKPOINT" (
+    "NAME" VARCHAR(255) NOT NULL PRIMARY KEY,
+    "LINE" BIGINT NOT NULL
+);
+
+CREATE TABLE "SCHEMA_VERSION" (
+    "VERSION" INTEGER NOT NULL
+);
+
+INSERT INTO "SCHEMA_VERSION" ("VERSION") VALUES (7)
@@ -0,0 +1,3 @@
+DROP TABLE "RECIPE_INGREDIENT";
+DROP TABLE "INGREDIENT_CATALOG";
+DROP TABLE "UNIT_CATALOG";
@@ -1,2 +1,5 @@
-DROP TABLE "RECIPES";
 DROP TABLE "INGREDIENTS";
+DROP TABLE "RECIPES";
+DROP TABLE "SCHEMA_VERSION";
+DROP TABLE "CHANGE_LOG";
+DROP TABLE "IMPORT_CHECKPOINT";
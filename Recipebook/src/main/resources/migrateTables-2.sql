@@ -0,0 +1,29 @@
+ALTER TABLE "RECIPES" ADD COLUMN "NAME_NORM" VARCHAR(255);
+
+CREATE INDEX "RECIPES_NAME_NORM" ON "RECIPES" ("NAME_NORM");
+
+CREATE INDEX "RECIPES_TYPE_CATEGORY_TIME" ON "RECIPES" ("TYPE", "CATEGORY", "COOKINGTIME");
+
+DELETE FROM "INGREDIENTS" WHERE "RECIPEID" NOT IN (SELECT "ID" FROM "RECIPES");
+
+ALTER TABLE "INGREDIENTS" ADD COLUMN "RECIPEID_BIGINT" BIGINT NOT NULL DEFAULT 0;
+
+UPDATE "INGREDIENTS" SET "RECIPEID_BIGINT" = "RECIPEID";
+
+ALTER TABLE "INGREDIENTS" DROP COLUMN "RECIPEID";
+
+RENAME COLUMN "INGREDIENTS"."RECIPEID_BIGINT" TO "RECIPEID";
+
+ALTER TABLE "INGREDIENTS" ALTER COLUMN "RECIPEID" DROP DEFAULT;
+
+ALTER TABLE "INGREDIENTS" ADD CONSTRAINT "INGREDIENTS_RECIPE_FK" FOREIGN KEY ("RECIPEID") REFERENCES "RECIPES" ("ID") ON DELETE CASCADE;
+
+CREATE INDEX "INGREDIENTS_RECIPEID" ON "INGREDIENTS" ("RECIPEID");
+
+CREATE INDEX "INGREDIENTS_NAME" ON "INGREDIENTS" ("NAME");
+
+CREATE TABLE "SCHEMA_VERSION" (
+    "VERSION" INTEGER NOT NULL
+);
+
+INSERT INTO "SCHEMA_VERSION" ("VERSION") VALUES (2)
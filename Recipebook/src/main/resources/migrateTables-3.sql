@@ -0,0 +1,23 @@
+CREATE TABLE "CHANGE_COUNTER" (
+    "CHANGES" BIGINT NOT NULL
+);
+
+INSERT INTO "CHANGE_COUNTER" ("CHANGES") VALUES (0);
+
+CREATE TRIGGER "RECIPES_INSERT_COUNT" AFTER INSERT ON "RECIPES"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
+
+CREATE TRIGGER "RECIPES_UPDATE_COUNT" AFTER UPDATE ON "RECIPES"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
+
+CREATE TRIGGER "RECIPES_DELETE_COUNT" AFTER DELETE ON "RECIPES"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
+
+CREATE TRIGGER "INGREDIENTS_INSERT_COUNT" AFTER INSERT ON "INGREDIENTS"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
+
+CREATE TRIGGER "INGREDIENTS_UPDATE_COUNT" AFTER UPDATE ON "INGREDIENTS"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
+
+CREATE TRIGGER "INGREDIENTS_DELETE_COUNT" AFTER DELETE ON "INGREDIENTS"
+    FOR EACH STATEMENT UPDATE "CHANGE_COUNTER" SET "CHANGES" = "CHANGES" + 1;
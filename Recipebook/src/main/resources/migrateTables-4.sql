@@ -0,0 +1,38 @@
+DROP TRIGGER "RECIPES_INSERT_COUNT";
+
+DROP TRIGGER "RECIPES_UPDATE_COUNT";
+
+DROP TRIGGER "RECIPES_DELETE_COUNT";
+
+DROP TRIGGER "INGREDIENTS_INSERT_COUNT";
+
+DROP TRIGGER "INGREDIENTS_UPDATE_COUNT";
+
+DROP TRIGGER "INGREDIENTS_DELETE_COUNT";
+
+DROP TABLE "CHANGE_COUNTER";
+
+CREATE TABLE "CHANGE_LOG" (
+    "SEQ" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    "ENTITY" CHAR(1) NOT NULL,
+    "ENTITY_ID" BIGINT NOT NULL,
+    "RECIPE_ID" BIGINT NOT NULL
+);
+
+CREATE TRIGGER "RECIPES_INSERT_LOG" AFTER INSERT ON "RECIPES" REFERENCING NEW AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "RECIPES_UPDATE_LOG" AFTER UPDATE ON "RECIPES" REFERENCING NEW AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "RECIPES_DELETE_LOG" AFTER DELETE ON "RECIPES" REFERENCING OLD AS R
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('R', R."ID", R."ID");
+
+CREATE TRIGGER "INGREDIENTS_INSERT_LOG" AFTER INSERT ON "INGREDIENTS" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
+
+CREATE TRIGGER "INGREDIENTS_UPDATE_LOG" AFTER UPDATE ON "INGREDIENTS" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
+
+CREATE TRIGGER "INGREDIENTS_DELETE_LOG" AFTER DELETE ON "INGREDIENTS" REFERENCING OLD AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPEID");
@@ -0,0 +1,35 @@
+CREATE TABLE "INGREDIENT_CATALOG" (
+    "ID" INTEGER NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    "NAME" VARCHAR(255) NOT NULL,
+    CONSTRAINT "INGREDIENT_CATALOG_NAME" UNIQUE ("NAME")
+);
+
+CREATE TABLE "UNIT_CATALOG" (
+    "ID" INTEGER NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    "NAME" VARCHAR(255) NOT NULL,
+    CONSTRAINT "UNIT_CATALOG_NAME" UNIQUE ("NAME")
+);
+
+CREATE TABLE "RECIPE_INGREDIENT" (
+    "ID" BIGINT NOT NULL PRIMARY KEY GENERATED BY DEFAULT AS IDENTITY,
+    "RECIPE_ID" BIGINT NOT NULL,
+    "INGREDIENT_ID" INTEGER NOT NULL,
+    "AMOUNT" DOUBLE NOT NULL,
+    "UNIT_ID" INTEGER NOT NULL,
+    CONSTRAINT "RECIPE_INGREDIENT_RECIPE_FK" FOREIGN KEY ("RECIPE_ID") REFERENCES "RECIPES" ("ID") ON DELETE CASCADE,
+    CONSTRAINT "RECIPE_INGREDIENT_INGREDIENT_FK" FOREIGN KEY ("INGREDIENT_ID") REFERENCES "INGREDIENT_CATALOG" ("ID"),
+    CONSTRAINT "RECIPE_INGREDIENT_UNIT_FK" FOREIGN KEY ("UNIT_ID") REFERENCES "UNIT_CATALOG" ("ID")
+);
+
+CREATE INDEX "RECIPE_INGREDIENT_RECIPE" ON "RECIPE_INGREDIENT" ("RECIPE_ID");
+
+CREATE INDEX "RECIPE_INGREDIENT_INGREDIENT" ON "RECIPE_INGREDIENT" ("INGREDIENT_ID", "AMOUNT", "UNIT_ID");
+
+CREATE TRIGGER "RECIPE_INGREDIENT_INSERT_LOG" AFTER INSERT ON "RECIPE_INGREDIENT" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPE_ID");
+
+CREATE TRIGGER "RECIPE_INGREDIENT_UPDATE_LOG" AFTER UPDATE ON "RECIPE_INGREDIENT" REFERENCING NEW AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPE_ID");
+
+CREATE TRIGGER "RECIPE_INGREDIENT_DELETE_LOG" AFTER DELETE ON "RECIPE_INGREDIENT" REFERENCING OLD AS I
+    FOR EACH ROW INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "RECIPE_ID") VALUES ('I', I."ID", I."RECIPE_ID");
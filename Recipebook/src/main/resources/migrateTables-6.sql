@@ -0,0 +1,11 @@
+DROP TRIGGER "RECIPE_INGREDIENT_INSERT_LOG";
+
+DROP TRIGGER "RECIPE_INGREDIENT_UPDATE_LOG";
+
+DROP TRIGGER "RECIPE_INGREDIENT_DELETE_LOG";
+
+DROP TABLE "RECIPE_INGREDIENT";
+
+DROP TABLE "INGREDIENT_CATALOG";
+
+DROP TABLE "UNIT_CATALOG";
@@ -0,0 +1,4 @@
+CREATE TABLE "IMPORT_CHECKPOINT" (
+    "NAME" VARCHAR(255) NOT NULL PRIMARY KEY,
+    "LINE" BIGINT NOT NULL
+);
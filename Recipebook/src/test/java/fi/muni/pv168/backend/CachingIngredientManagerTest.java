@@ -0,0 +1,144 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for CachingIngredientManager
+ * @author mulan
+ */
+public class CachingIngredientManagerTest {
+
+    private CachingIngredientManager manager;
+    private BasicDataSource ds;
+    private long recipe1;
+    private long recipe2;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:ingredient;create=true");
+        manager = new CachingIngredientManager(new IngredientManagerImpl(ds), 1024 * 1024);
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+
+        RecipeManagerImpl recipeManager = new RecipeManagerImpl(ds);
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 1; i <= 2; i++) {
+            Recipe recipe = new Recipe();
+            recipe.setName("recipe " + i);
+            recipe.setType(MealType.MAIN_DISH);
+            recipe.setCategory(MealCategory.MEAT);
+            recipe.setCookingTime(10);
+            recipe.setNumPortions(1);
+            recipe.setInstructions("cook");
+            recipeManager.createRecipe(recipe);
+            ids.add(recipe.getId());
+        }
+        recipe1 = ids.get(0);
+        recipe2 = ids.get(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    @Test
+    public void getIngredientsOfRecipeIsCached() {
+        try {
+            manager.createIngredient(new Ingredient("muka", 250, "g"), recipe1);
+            manager.createIngredient(new Ingredient("mlieko", 0.5, "l"), recipe1);
+
+            SortedSet<Ingredient> first = manager.getIngredientsOfRecipe(recipe1);
+            SortedSet<Ingredient> second = manager.getIngredientsOfRecipe(recipe1);
+
+            assertEquals(2, first.size());
+            assertEquals(first, second);
+            assertNotSame(first.first(), second.first());
+            assertNotNull(second.first().getId());
+            assertEquals(1, manager.getMisses());
+            assertEquals(1, manager.getHits());
+
+            second.first().setAmount(1000);
+            assertEquals(first, manager.getIngredientsOfRecipe(recipe1));
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingIngredientManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void writesInvalidateOnlyTheirRecipe() {
+        try {
+            Ingredient flour = new Ingredient("muka", 250, "g");
+            manager.createIngredient(flour, recipe1);
+            manager.createIngredient(new Ingredient("cesnak", 5, "strok"), recipe2);
+            manager.getIngredientsOfRecipe(recipe1);
+            manager.getIngredientsOfRecipe(recipe2);
+
+            flour.setAmount(500);
+            manager.updateIngredient(flour);
+            assertEquals(500, manager.getIngredientsOfRecipe(recipe1).first().getAmount(), 0.0);
+            manager.getIngredientsOfRecipe(recipe2);
+            assertEquals(3, manager.getMisses());
+            assertEquals(1, manager.getHits());
+
+            manager.deleteIngredient(flour, recipe1);
+            assertTrue(manager.getIngredientsOfRecipe(recipe1).isEmpty());
+            assertEquals(1, manager.getIngredientsOfRecipe(recipe2).size());
+            assertEquals(4, manager.getMisses());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingIngredientManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void warmUp() {
+        try {
+            manager.createIngredient(new Ingredient("muka", 250, "g"), recipe1);
+            manager.createIngredient(new Ingredient("mlieko", 0.5, "l"), recipe1);
+            manager.createIngredient(new Ingredient("cesnak", 5, "strok"), recipe2);
+
+            assertEquals(2, manager.warmUp());
+
+            assertEquals(2, manager.getIngredientsOfRecipe(recipe1).size());
+            assertEquals(1, manager.getIngredientsOfRecipe(recipe2).size());
+            assertEquals(0, manager.getMisses());
+            assertEquals(2, manager.getHits());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingIngredientManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void warmUpStopsWhenCacheIsFull() {
+        try {
+            Ingredient flour = new Ingredient("muka", 250, "g");
+            flour.setId(1L);
+            long oneRecipe = CachingIngredientManager.INGREDIENTS_WEIGHER.weigh(new Ingredient[]{flour});
+            manager = new CachingIngredientManager(new IngredientManagerImpl(ds), oneRecipe);
+            manager.createIngredient(new Ingredient("muka", 250, "g"), recipe1);
+            manager.createIngredient(new Ingredient("soli", 5, "g"), recipe2);
+
+            assertEquals(1, manager.warmUp());
+            assertEquals(1, manager.getCachedCount());
+            assertEquals(0, manager.getEvictions());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingIngredientManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for CachingRecipeManager
+ * @author mulan
+ */
+public class CachingRecipeManagerTest {
+
+    private CachingRecipeManager manager;
+    private BasicDataSource ds;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:recipe;create=true");
+        manager = new CachingRecipeManager(new RecipeManagerImpl(ds), 1024 * 1024);
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private static Recipe newRecipe(String name, int cookingTime) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.MAIN_DISH);
+        recipe.setCategory(MealCategory.MEAT);
+        recipe.setCookingTime(cookingTime);
+        recipe.setNumPortions(2);
+        recipe.setInstructions("uvarte");
+        return recipe;
+    }
+
+    @Test
+    public void findRecipeByIdIsCached() {
+        try {
+            Recipe recipe = newRecipe("Gulas", 120);
+            manager.createRecipe(recipe);
+
+            Recipe first = manager.findRecipeById(recipe.getId());
+            Recipe second = manager.findRecipeById(recipe.getId());
+
+            assertEquals(recipe, first);
+            assertEquals(recipe, second);
+            assertNotSame(first, second);
+            assertEquals(1, manager.getMisses());
+            assertEquals(1, manager.getHits());
+
+            second.setName("Zmeneny");
+            assertEquals("Gulas", manager.findRecipeById(recipe.getId()).getName());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void writesInvalidateCache() {
+        try {
+            Recipe recipe = newRecipe("Gulas", 120);
+            manager.createRecipe(recipe);
+            manager.findRecipeById(recipe.getId());
+
+            recipe.setCookingTime(90);
+            manager.updateRecipe(recipe);
+            assertEquals(90, manager.findRecipeById(recipe.getId()).getCookingTime());
+            assertEquals(2, manager.getMisses());
+
+            manager.deleteRecipe(recipe);
+            try {
+                manager.findRecipeById(recipe.getId());
+                fail();
+            } catch (IllegalArgumentException ex) {
+                //OK
+            }
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedRecipeIsEvicted() {
+        try {
+            Recipe r1 = newRecipe("Gulas", 120);
+            Recipe r2 = newRecipe("Lecso", 30);
+            Recipe r3 = newRecipe("Rezen", 40);
+            manager.createRecipe(r1);
+            manager.createRecipe(r2);
+            manager.createRecipe(r3);
+
+            long weight = CachingRecipeManager.RECIPE_WEIGHER.weigh(r1);
+            CachingRecipeManager small = new CachingRecipeManager(new RecipeManagerImpl(ds), 2 * weight + 1);
+            small.findRecipeById(r1.getId());
+            small.findRecipeById(r2.getId());
+            small.findRecipeById(r1.getId());
+            small.findRecipeById(r3.getId());
+
+            assertEquals(1, small.getEvictions());
+            assertEquals(2, small.getCachedCount());
+
+            small.findRecipeById(r1.getId());
+            assertEquals(2, small.getHits());
+            small.findRecipeById(r2.getId());
+            assertEquals(4, small.getMisses());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void expiredRecipeIsLoadedAgain() throws Exception {
+        Recipe recipe = newRecipe("Gulas", 120);
+        manager.createRecipe(recipe);
+        manager.setTimeToLive(1, TimeUnit.MILLISECONDS);
+
+        manager.findRecipeById(recipe.getId());
+        Thread.sleep(5);
+        manager.findRecipeById(recipe.getId());
+
+        assertEquals(0, manager.getHits());
+        assertEquals(2, manager.getMisses());
+    }
+
+    @Test
+    public void findRecipesByTypeIsCached() {
+        try {
+            Recipe r1 = newRecipe("Gulas", 120);
+            Recipe r2 = newRecipe("Lecso", 30);
+            manager.createRecipe(r1);
+            manager.createRecipe(r2);
+
+            SortedSet<Recipe> first = manager.findRecipesByType(MealType.MAIN_DISH);
+            SortedSet<Recipe> second = manager.findRecipesByType(MealType.MAIN_DISH);
+
+            assertEquals(2, first.size());
+            assertEquals(first, second);
+            assertEquals(1, manager.getQueryMisses());
+            assertEquals(1, manager.getQueryHits());
+
+            assertEquals(r1, manager.findRecipeById(r1.getId()));
+            assertEquals(0, manager.getMisses());
+            assertEquals(3, manager.getHits());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void writesInvalidateAffectedResults() {
+        try {
+            Recipe r1 = newRecipe("Gulas", 120);
+            Recipe r2 = newRecipe("Lecso", 30);
+            manager.createRecipe(r1);
+            manager.createRecipe(r2);
+
+            assertEquals(2, manager.findRecipesByType(MealType.MAIN_DISH).size());
+            assertTrue(manager.findRecipesByType(MealType.SOUP).isEmpty());
+            assertEquals(2, manager.findRecipesByCategory(MealCategory.MEAT).size());
+            assertEquals(1, manager.findRecipesByCookingTime(100, 200).size());
+
+            r2.setType(MealType.SOUP);
+            manager.updateRecipe(r2);
+
+            // both type results and category result containing the recipe are invalidated,
+            // cooking time result does not contain it and it stays cached
+            assertEquals(3, manager.getQueryInvalidations());
+            assertEquals(1, manager.findRecipesByType(MealType.MAIN_DISH).size());
+            assertEquals(1, manager.findRecipesByType(MealType.SOUP).size());
+            assertEquals(MealType.SOUP, manager.findRecipesByCategory(MealCategory.MEAT).last().getType());
+
+            Recipe r3 = newRecipe("Rezen", 150);
+            manager.createRecipe(r3);
+            assertEquals(2, manager.findRecipesByCookingTime(100, 200).size());
+
+            manager.deleteRecipeCascade(r1.getId());
+            assertEquals(1, manager.findRecipesByCookingTime(100, 200).size());
+            assertEquals(1, manager.findRecipesByType(MealType.MAIN_DISH).size());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void changesOfOtherApplicationsInvalidateAffectedResults() {
+        try {
+            Recipe r1 = newRecipe("Gulas", 120);
+            Recipe r2 = newRecipe("Lecso", 30);
+            manager.createRecipe(r1);
+            manager.createRecipe(r2);
+
+            assertEquals(2, manager.findRecipesByType(MealType.MAIN_DISH).size());
+            assertTrue(manager.findRecipesByType(MealType.SOUP).isEmpty());
+            assertEquals(1, manager.findRecipesByCookingTime(100, 200).size());
+
+            r2.setType(MealType.SOUP);
+            new RecipeManagerImpl(ds).updateRecipe(r2);
+            manager.recipeChanged(r2.getId());
+
+            // cooking time result neither contains old nor new version of the recipe
+            assertEquals(2, manager.getQueryInvalidations());
+            assertEquals(1, manager.findRecipesByType(MealType.SOUP).size());
+            assertEquals(1, manager.findRecipesByCookingTime(100, 200).size());
+            assertEquals(1, manager.getQueryHits());
+
+            new RecipeManagerImpl(ds).deleteRecipeCascade(r1.getId());
+            manager.recipeChanged(r1.getId());
+            assertTrue(manager.findRecipesByCookingTime(100, 200).isEmpty());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void changesOfOwnWritesAreSkipped() {
+        try {
+            Recipe r1 = newRecipe("Gulas", 120);
+            manager.createRecipe(r1);
+            r1.setCookingTime(90);
+            manager.updateRecipe(r1);
+
+            assertEquals(1, manager.findRecipesByType(MealType.MAIN_DISH).size());
+            long invalidations = manager.getQueryInvalidations();
+
+            manager.recipeChanged(r1.getId());
+            assertEquals(invalidations, manager.getQueryInvalidations());
+
+            // next change of the recipe comes from other application
+            manager.recipeChanged(r1.getId());
+            assertEquals(invalidations + 1, manager.getQueryInvalidations());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(CachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+}
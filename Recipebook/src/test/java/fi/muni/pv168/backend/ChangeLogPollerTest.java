@@ -0,0 +1,233 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.utils.DBUtils;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for ChangeLogPoller and triggers writing change log
+ * @author mulan
+ */
+public class ChangeLogPollerTest {
+
+    private BasicDataSource ds;
+    private RecipeManagerImpl recipeManager;
+    private IngredientManagerImpl ingredientManager;
+    private ChangeLogPoller poller;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:changes;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        recipeManager = new RecipeManagerImpl(ds);
+        ingredientManager = new IngredientManagerImpl(ds);
+        poller = new ChangeLogPoller(ds);
+        listener = new RecordingListener();
+        poller.addListener(listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        poller.stop();
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private static Recipe newRecipe(String name) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.DESSERT);
+        recipe.setCategory(MealCategory.SWEET);
+        recipe.setCookingTime(45);
+        recipe.setNumPortions(8);
+        recipe.setInstructions("upecte");
+        return recipe;
+    }
+
+    @Test
+    public void writesAreLogged() throws Exception {
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+        Ingredient flour = new Ingredient("muka", 300, "g");
+        ingredientManager.createIngredient(flour, recipe.getId());
+        recipeManager.deleteRecipeCascade(recipe.getId());
+
+        List<ChangeLogPoller.Change> changes = poller.readChanges(0);
+        assertEquals(4, changes.size());
+        assertTrue(changes.get(0).isRecipe());
+        assertEquals(recipe.getId().longValue(), changes.get(0).getEntityId());
+        assertFalse(changes.get(1).isRecipe());
+        assertEquals(flour.getId().longValue(), changes.get(1).getEntityId());
+        assertEquals(recipe.getId().longValue(), changes.get(1).getRecipeId());
+        assertEquals(changes.get(3).getSeq(), DBUtils.getChangeCount(ds));
+    }
+
+    @Test
+    public void writesIncreaseChangeCount() throws Exception {
+        long count = DBUtils.getChangeCount(ds);
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+        assertTrue(DBUtils.getChangeCount(ds) > count);
+
+        count = DBUtils.getChangeCount(ds);
+        recipeManager.findRecipeById(recipe.getId());
+        assertEquals(count, DBUtils.getChangeCount(ds));
+
+        ingredientManager.createIngredient(new Ingredient("muka", 300, "g"), recipe.getId());
+        assertTrue(DBUtils.getChangeCount(ds) > count);
+
+        count = DBUtils.getChangeCount(ds);
+        recipeManager.deleteRecipeCascade(recipe.getId());
+        assertTrue(DBUtils.getChangeCount(ds) > count);
+    }
+
+    @Test
+    public void pollPassesNewChanges() throws Exception {
+        recipeManager.createRecipe(newRecipe("Stary kolac"));
+        assertEquals(0, poller.poll());
+        assertTrue(listener.events.isEmpty());
+
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+        Ingredient flour = new Ingredient("muka", 300, "g");
+        ingredientManager.createIngredient(flour, recipe.getId());
+        assertEquals(2, poller.poll());
+        assertEquals("recipe " + recipe.getId(), listener.events.get(0));
+        assertEquals("ingredient " + flour.getId() + " of " + recipe.getId(), listener.events.get(1));
+
+        assertEquals(0, poller.poll());
+        assertEquals(2, listener.events.size());
+        assertEquals(DBUtils.getChangeCount(ds), poller.getLastSequence());
+    }
+
+    @Test
+    public void skippedSequenceNumbersAreReadAgainOnce() throws Exception {
+        recipeManager.createRecipe(newRecipe("Stary kolac"));
+        poller.poll();
+
+        // rolled back insert leaves a gap in sequence numbers
+        Connection conn = ds.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            conn.createStatement().executeUpdate("INSERT INTO RECIPES (NAME, NAME_NORM, TYPE, CATEGORY, "
+                    + "COOKINGTIME, NUMPORTIONS, INSTRUCTIONS) VALUES ('Zly', 'ZLY', 1, 1, 10, 1, 'nic')");
+            conn.rollback();
+        } finally {
+            conn.setAutoCommit(true);
+            conn.close();
+        }
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+
+        assertEquals(1, poller.poll());
+        assertEquals(0, poller.poll());
+        assertEquals(Arrays.asList("recipe " + recipe.getId()), listener.events);
+    }
+
+    @Test
+    public void prunedChangesInvalidateAll() throws Exception {
+        recipeManager.createRecipe(newRecipe("Kolac"));
+        poller.poll();
+        assertTrue(poller.isComplete(poller.getLastSequence()));
+
+        for (int i = 0; i < 3; i++) {
+            recipeManager.createRecipe(newRecipe("Kolac " + i));
+        }
+        assertEquals(3, poller.prune(1));
+        assertFalse(poller.isComplete(poller.getLastSequence()));
+
+        assertEquals(0, poller.poll());
+        assertEquals(1, listener.events.size());
+        assertEquals("all", listener.events.get(0));
+        assertTrue(poller.isComplete(poller.getLastSequence()));
+    }
+
+    @Test
+    public void manyChangesInvalidateAll() throws Exception {
+        poller.setMaxChanges(2);
+        poller.poll();
+
+        for (int i = 0; i < 3; i++) {
+            recipeManager.createRecipe(newRecipe("Kolac " + i));
+        }
+        assertEquals(3, poller.poll());
+        assertEquals(1, listener.events.size());
+        assertEquals("all", listener.events.get(0));
+        assertEquals(DBUtils.getChangeCount(ds), poller.getLastSequence());
+
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+        assertEquals(1, poller.poll());
+        assertEquals("recipe " + recipe.getId(), listener.events.get(1));
+    }
+
+    @Test
+    public void pollResumesAfterPruneOfReadChanges() throws Exception {
+        recipeManager.createRecipe(newRecipe("Kolac"));
+        poller.poll();
+        recipeManager.createRecipe(newRecipe("Kolac 1"));
+        assertEquals(1, poller.poll());
+
+        Recipe recipe1 = newRecipe("Kolac 2");
+        recipeManager.createRecipe(recipe1);
+        Recipe recipe2 = newRecipe("Kolac 3");
+        recipeManager.createRecipe(recipe2);
+        assertEquals(2, poller.prune(2));
+
+        assertEquals(2, poller.poll());
+        assertEquals(Arrays.asList("recipe " + (recipe1.getId() - 1), "recipe " + recipe1.getId(),
+                "recipe " + recipe2.getId()), listener.events);
+    }
+
+    @Test
+    public void startedPollerPrunesLog() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            recipeManager.createRecipe(newRecipe("Kolac " + i));
+        }
+        poller.setKeepChanges(2);
+        poller.start(10, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 500 && poller.readChanges(0).size() > 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, poller.readChanges(0).size());
+
+        Recipe recipe = newRecipe("Kolac");
+        recipeManager.createRecipe(recipe);
+        for (int i = 0; i < 500 && listener.events.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        poller.stop();
+        assertEquals(Arrays.asList("recipe " + recipe.getId()), listener.events);
+    }
+
+    private static class RecordingListener implements ChangeListener {
+
+        // events of started poller are added by its thread
+        private final List<String> events = new CopyOnWriteArrayList<String>();
+
+        @Override
+        public void recipeChanged(long recipeId) {
+            events.add("recipe " + recipeId);
+        }
+
+        @Override
+        public void ingredientChanged(long ingredientId, long recipeId) {
+            events.add("ingredient " + ingredientId + " of " + recipeId);
+        }
+
+        @Override
+        public void allChanged() {
+            events.add("all");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for FacetIndexingRecipeManager and RecipeFacetIndex
+ * @author mulan
+ */
+public class FacetIndexingRecipeManagerTest {
+
+    private BasicDataSource ds;
+    private RecipeManagerImpl database;
+    private FacetIndexingRecipeManager recipeManager;
+    private Recipe soup;
+    private Recipe quickSoup;
+    private Recipe cake;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:facets;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        database = new RecipeManagerImpl(ds);
+        recipeManager = new FacetIndexingRecipeManager(database);
+        soup = createRecipe("Gulasova", MealType.SOUP, MealCategory.MEAT, 90);
+        quickSoup = createRecipe("Paradajkova", MealType.SOUP, MealCategory.MEATLESS, 20);
+        cake = createRecipe("Kolac", MealType.DESSERT, MealCategory.SWEET, 30);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private Recipe createRecipe(String name, MealType type, MealCategory category, int cookingTime)
+            throws ServiceFailureException {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(type);
+        recipe.setCategory(category);
+        recipe.setCookingTime(cookingTime);
+        recipe.setNumPortions(4);
+        recipe.setInstructions("uvarit");
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    private static SortedSet<Recipe> recipes(Recipe... recipes) {
+        return new TreeSet<Recipe>(Arrays.asList(recipes));
+    }
+
+    @Test
+    public void searchesAreAnsweredByIndex() throws ServiceFailureException {
+        assertEquals(-1, recipeManager.getIndex().count(new RecipeQuery()));
+        assertEquals(3, recipeManager.buildIndex());
+
+        assertEquals(recipes(soup, quickSoup), recipeManager.findRecipesByType(MealType.SOUP));
+        assertEquals(recipes(cake), recipeManager.findRecipesByCategory(MealCategory.SWEET));
+        assertEquals(recipes(quickSoup, cake), recipeManager.findRecipesByCookingTime(20, 30));
+        assertEquals(recipes(quickSoup), recipeManager.findRecipesUptoCookingTime(25));
+        assertEquals(recipes(soup), recipeManager.findRecipesFromCookingTime(31));
+        assertEquals(database.findRecipesByCookingTime(16, 100), recipeManager.findRecipesByCookingTime(16, 100));
+
+        List<Recipe> found = recipeManager.findRecipes(new RecipeQuery().type(MealType.SOUP)
+                .orderBy(RecipeQuery.Order.COOKING_TIME).limit(1));
+        assertEquals(Arrays.asList(quickSoup), found);
+    }
+
+    @Test
+    public void facetsAreCounted() throws ServiceFailureException {
+        recipeManager.buildIndex();
+        RecipeFacetIndex index = recipeManager.getIndex();
+
+        assertEquals(1, index.count(new RecipeQuery().type(MealType.SOUP).cookingTime(0, 30)));
+        Map<MealType, Integer> byType = index.countByType(new RecipeQuery().cookingTime(0, 30));
+        assertEquals(Integer.valueOf(1), byType.get(MealType.SOUP));
+        assertEquals(Integer.valueOf(1), byType.get(MealType.DESSERT));
+        assertEquals(Integer.valueOf(0), byType.get(MealType.DRINK));
+        Map<MealCategory, Integer> byCategory = index.countByCategory(new RecipeQuery().type(MealType.SOUP));
+        assertEquals(Integer.valueOf(1), byCategory.get(MealCategory.MEAT));
+        assertEquals(Integer.valueOf(0), byCategory.get(MealCategory.SWEET));
+        int[] byTime = index.countByCookingTime(new RecipeQuery());
+        assertEquals(2, byTime[1]);
+        assertEquals(1, byTime[4]);
+    }
+
+    @Test
+    public void writesUpdateIndex() throws ServiceFailureException {
+        recipeManager.buildIndex();
+        RecipeFacetIndex index = recipeManager.getIndex();
+
+        Recipe salad = createRecipe("Salat", MealType.SALAD, MealCategory.MEATLESS, 10);
+        assertEquals(recipes(salad), recipeManager.findRecipesByType(MealType.SALAD));
+
+        soup.setCookingTime(40);
+        recipeManager.updateRecipe(soup);
+        assertEquals(4, index.count(new RecipeQuery().cookingTime(0, 45)));
+
+        recipeManager.deleteRecipeCascade(quickSoup.getId());
+        assertEquals(recipes(soup), recipeManager.findRecipesByType(MealType.SOUP));
+
+        cake.setType(MealType.BREAKFAST);
+        database.updateRecipe(cake);
+        recipeManager.recipeChanged(cake.getId());
+        assertEquals(recipes(cake), recipeManager.findRecipesByType(MealType.BREAKFAST));
+        assertEquals(3, index.size());
+
+        recipeManager.allChanged();
+        assertEquals(recipes(soup), recipeManager.findRecipesByType(MealType.SOUP));
+        assertNull(index.countByType(new RecipeQuery()));
+    }
+}
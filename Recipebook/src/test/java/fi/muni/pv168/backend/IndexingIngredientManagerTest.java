@@ -0,0 +1,259 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.PostingList;
+import fi.muni.pv168.utils.StringDictionary;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for IndexingIngredientManager, IngredientIndex and PostingList
+ * @author mulan
+ */
+public class IndexingIngredientManagerTest {
+
+    private BasicDataSource ds;
+    private RecipeManagerImpl recipeManager;
+    private IndexingIngredientManager ingredientManager;
+    private Recipe r1;
+    private Recipe r2;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:index;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        recipeManager = new RecipeManagerImpl(ds);
+        ingredientManager = new IndexingIngredientManager(new IngredientManagerImpl(ds));
+        r1 = createRecipe("Palacinky");
+        r2 = createRecipe("Kolac");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private Recipe createRecipe(String name) throws ServiceFailureException {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.DESSERT);
+        recipe.setCategory(MealCategory.SWEET);
+        recipe.setCookingTime(30);
+        recipe.setNumPortions(4);
+        recipe.setInstructions("upecte");
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    private SortedSet<Long> find(String... names) {
+        return ingredientManager.findRecipeIds(Arrays.asList(names));
+    }
+
+    private static SortedSet<Long> ids(Long... ids) {
+        return new TreeSet<Long>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void postingListOperations() {
+        PostingList list = PostingList.of(new long[]{3, 5, 5, 200, 100000}, 5);
+        assertEquals(4, list.size());
+        assertTrue(list.contains(200));
+        assertFalse(list.contains(4));
+
+        assertTrue(list.add(4));
+        assertFalse(list.add(4));
+        assertTrue(list.add(1L << 40));
+        assertTrue(list.remove(5));
+        assertFalse(list.remove(6));
+        assertArrayEquals(new long[]{3, 4, 200, 100000, 1L << 40}, list.toArray());
+
+        long[] ids = {1, 4, 100, 100000, 100001};
+        assertEquals(2, list.retainAll(ids, ids.length));
+        assertEquals(4, ids[0]);
+        assertEquals(100000, ids[1]);
+
+        try {
+            PostingList.of(new long[]{2, 1}, 2);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+    }
+
+    @Test
+    public void indexIsNotUsedUntilBuilt() throws ServiceFailureException {
+        ingredientManager.createIngredient(new Ingredient("muka", 200, "g"), r1.getId());
+        assertNull(find("muka"));
+
+        assertEquals(1, ingredientManager.buildIndex());
+        assertEquals(ids(r1.getId()), find("muka"));
+        assertEquals(ids(), find("muka", "kakao"));
+
+        ingredientManager.allChanged();
+        assertNull(find("muka"));
+    }
+
+    @Test
+    public void writesUpdateIndex() throws ServiceFailureException {
+        Ingredient flour = new Ingredient("muka", 200, "g");
+        ingredientManager.createIngredient(flour, r1.getId());
+        ingredientManager.buildIndex();
+
+        Ingredient milk = new Ingredient("mlieko", 300, "ml");
+        Ingredient eggs = new Ingredient("vajce", 2, "ks");
+        ingredientManager.createIngredients(Arrays.asList(milk, eggs), r1.getId());
+        Ingredient flour2 = new Ingredient("muka", 300, "g");
+        Ingredient sugar = new Ingredient("cukor", 100, "g");
+        ingredientManager.createIngredients(Arrays.asList(flour2, sugar), r2.getId());
+
+        assertEquals(ids(r1.getId(), r2.getId()), find("muka"));
+        assertEquals(ids(r1.getId()), find("vajce", "muka", "mlieko"));
+        assertEquals(ids(r2.getId()), find("cukor", "muka"));
+
+        sugar.setName("med");
+        ingredientManager.updateIngredient(sugar);
+        assertEquals(ids(), find("cukor"));
+        assertEquals(ids(r2.getId()), find("med"));
+
+        ingredientManager.deleteIngredient(flour, r1.getId());
+        assertEquals(ids(r2.getId()), find("muka"));
+        assertEquals(4, ingredientManager.getIndex().size());
+    }
+
+    @Test
+    public void writesDuringBuildAreIndexed() throws ServiceFailureException {
+        final Ingredient flour = new Ingredient("muka", 200, "g");
+        final Ingredient sugar = new Ingredient("cukor", 100, "g");
+        new IngredientManagerImpl(ds).createIngredient(flour, r1.getId());
+        final IndexingIngredientManager[] indexer = new IndexingIngredientManager[1];
+        indexer[0] = new IndexingIngredientManager(new ForwardingIngredientManager(new IngredientManagerImpl(ds)) {
+            @Override
+            public long streamAllIngredients(IngredientHandler handler) throws ServiceFailureException {
+                long count = ingredientManager.streamAllIngredients(handler);
+                // writes of other threads do not wait until the build finishes
+                Thread writer = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            indexer[0].createIngredient(sugar, r2.getId());
+                            indexer[0].deleteIngredient(flour, r1.getId());
+                        } catch (ServiceFailureException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                };
+                writer.start();
+                try {
+                    writer.join(10000);
+                } catch (InterruptedException ex) {
+                    throw new ServiceFailureException(ex);
+                }
+                return count;
+            }
+        });
+
+        assertEquals(1, indexer[0].buildIndex());
+        assertEquals(ids(r2.getId()), indexer[0].findRecipeIds(Arrays.asList("cukor")));
+        assertEquals(ids(), indexer[0].findRecipeIds(Arrays.asList("muka")));
+    }
+
+    @Test
+    public void changesOfOtherApplicationsUpdateIndex() throws ServiceFailureException {
+        IngredientManagerImpl other = new IngredientManagerImpl(ds);
+        Ingredient flour = new Ingredient("muka", 200, "g");
+        other.createIngredient(flour, r1.getId());
+        ingredientManager.buildIndex();
+
+        Ingredient sugar = new Ingredient("cukor", 100, "g");
+        other.createIngredient(sugar, r2.getId());
+        ingredientManager.ingredientChanged(sugar.getId(), r2.getId());
+        assertEquals(ids(r2.getId()), find("cukor"));
+
+        other.deleteIngredient(flour, r1.getId());
+        ingredientManager.ingredientChanged(flour.getId(), r1.getId());
+        assertEquals(ids(), find("muka"));
+        assertEquals("cukor", ingredientManager.getIndex().getName(sugar.getId()));
+    }
+
+    @Test
+    public void recipebookSearchesByIndex() throws ServiceFailureException {
+        ingredientManager.createIngredients(Arrays.asList(new Ingredient("muka", 200, "g"),
+                new Ingredient("mlieko", 300, "ml")), r1.getId());
+        ingredientManager.createIngredients(Arrays.asList(new Ingredient("muka", 300, "g"),
+                new Ingredient("mlieko", 100, "ml")), r2.getId());
+        ingredientManager.buildIndex();
+        RecipebookImpl recipebook = new RecipebookImpl(ingredientManager, recipeManager);
+        recipebook.setIngredientIndex(ingredientManager.getIndex());
+
+        SortedSet<Ingredient> searched = new TreeSet<Ingredient>();
+        searched.add(new Ingredient("muka", 300, "g"));
+        searched.add(new Ingredient("mlieko", 100, "ml"));
+        SortedSet<Recipe> found = recipebook.findRecipesByIngredients(searched);
+        assertEquals(1, found.size());
+        assertEquals(r2.getId(), found.first().getId());
+    }
+
+    @Test
+    public void mostUsedNamesAreSuggested() throws ServiceFailureException {
+        ingredientManager.createIngredients(Arrays.asList(new Ingredient("mlieko", 200, "ml"),
+                new Ingredient("maslo", 50, "g")), r1.getId());
+        ingredientManager.createIngredient(new Ingredient("mlieko", 100, "ml"), r2.getId());
+        ingredientManager.buildIndex();
+        IngredientIndex index = ingredientManager.getIndex();
+        assertEquals(Arrays.asList("mlieko", "maslo"), index.suggest("M", 5));
+
+        Ingredient butter = new Ingredient("maslo", 20, "g");
+        Ingredient butter2 = new Ingredient("maslo", 30, "g");
+        ingredientManager.createIngredients(Arrays.asList(butter, butter2), r2.getId());
+        assertEquals(Arrays.asList("maslo", "mlieko"), index.suggest("m", 5));
+
+        butter.setName("múka");
+        ingredientManager.updateIngredient(butter);
+        ingredientManager.deleteIngredient(butter2, r2.getId());
+        assertEquals(Arrays.asList("mlieko"), index.suggest("m", 1));
+        assertEquals(Arrays.asList("múka"), index.suggest("mu", 5));
+    }
+
+    @Test
+    public void similarNamesAreFound() throws ServiceFailureException {
+        ingredientManager.createIngredients(Arrays.asList(new Ingredient("mäso", 500, "g"),
+                new Ingredient("maslo", 50, "g")), r1.getId());
+        Ingredient meat = new Ingredient("mäso", 300, "g");
+        ingredientManager.createIngredient(meat, r2.getId());
+        IngredientIndex index = ingredientManager.getIndex();
+        assertNull(index.findSimilarNames("maso", 1));
+        ingredientManager.buildIndex();
+
+        assertEquals(Arrays.asList("mäso", "maslo"), index.findSimilarNames("maso", 1));
+        // both are one edit away, more used name is first
+        assertEquals(Arrays.asList("mäso", "maslo"), index.findSimilarNames("masko", 1));
+        assertEquals(Arrays.asList("maslo"), index.findSimilarNames("mslo", 1));
+        assertEquals(Arrays.asList(), index.findSimilarNames("mslo", 0));
+        assertEquals(Arrays.asList(), index.findSimilarNames("cukor", 2));
+
+        meat.setName("cukor");
+        ingredientManager.updateIngredient(meat);
+        assertEquals(Arrays.asList("cukor"), index.findSimilarNames("cukr", 1));
+        assertEquals(Arrays.asList("maslo", "mäso"), index.findSimilarNames("masko", 1));
+    }
+
+    @Test
+    public void searchedNamesAreNotAddedToDictionary() throws ServiceFailureException {
+        ingredientManager.createIngredient(new Ingredient("muka", 200, "g"), r1.getId());
+        ingredientManager.buildIndex();
+        int size = StringDictionary.INGREDIENT_NAMES.size();
+
+        assertEquals(ids(), find("muka", "neznama surovina " + System.nanoTime()));
+        assertEquals(size, StringDictionary.INGREDIENT_NAMES.size());
+        assertEquals(ids(r1.getId()), find("muka"));
+    }
+}
@@ -4,6 +4,10 @@ import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -54,6 +58,24 @@ public class IngredientManagerImplTest {
             DBUtils.closeQuietly(con, query);
         }*/
         DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+
+        // ingredients reference their recipe, tests use recipes with IDs 1 and 2
+        RecipeManagerImpl recipeManager = new RecipeManagerImpl(ds);
+        for (long id = 1; id <= 2; id++) {
+            Recipe recipe = new Recipe();
+            recipe.setName("recipe " + id);
+            recipe.setType(MealType.MAIN_DISH);
+            recipe.setCategory(MealCategory.MEAT);
+            recipe.setCookingTime(10);
+            recipe.setNumPortions(1);
+            recipe.setInstructions("cook");
+            try {
+                recipeManager.createRecipe(recipe);
+            } catch (ServiceFailureException ex) {
+                throw new SQLException("cannot create recipe", ex);
+            }
+            assertEquals(Long.valueOf(id), recipe.getId());
+        }
     }
 
     @After
@@ -116,6 +138,49 @@ public class IngredientManagerImplTest {
         }
     }
 
+    @Test
+    public void createIngredients() {
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        Ingredient potatoes = new Ingredient("potatoes", 2, "kg");
+        Ingredient milk = new Ingredient("milk", 1, "l");
+        List<Ingredient> ingredients = new ArrayList<Ingredient>();
+        ingredients.add(chicken);
+        ingredients.add(potatoes);
+        ingredients.add(milk);
+
+        try {
+            manager.createIngredient(new Ingredient("goose", 1, "kg"), 2);
+
+            List<Long> ids = manager.createIngredients(ingredients, 1);
+
+            assertEquals(3, ids.size());
+            assertEquals(chicken.getId(), ids.get(0));
+            assertEquals(potatoes.getId(), ids.get(1));
+            assertEquals(milk.getId(), ids.get(2));
+
+            for (Ingredient ingredient : ingredients) {
+                assertEquals(ingredient, manager.getIngredient(ingredient.getId()));
+            }
+
+            SortedSet<Ingredient> expected = new TreeSet<Ingredient>(ingredients);
+            assertEquals(expected, manager.getIngredientsOfRecipe(1));
+
+            assertTrue(manager.createIngredients(new ArrayList<Ingredient>(), 1).isEmpty());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(IngredientManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+
+        try {
+            manager.createIngredients(null, 1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        } catch (ServiceFailureException ex) {
+            fail();
+        }
+    }
+
     @Test
     public void createIngredientWithWrongAtributes() {
         try {
@@ -280,6 +345,79 @@ public class IngredientManagerImplTest {
         }
     }
 
+    @Test
+    public void getIngredientsAfter() {
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        Ingredient potatoes = new Ingredient("potatoes", 1, "kg");
+        Ingredient samePotatoes = new Ingredient("potatoes", 1, "kg");
+
+        try {
+            assertTrue(manager.getIngredientsAfter(0, 2).isEmpty());
+
+            manager.createIngredient(chicken, 1);
+            manager.createIngredient(potatoes, 1);
+            manager.createIngredient(samePotatoes, 2);
+
+            List<Ingredient> first = manager.getIngredientsAfter(0, 2);
+            assertEquals(2, first.size());
+            assertEquals(chicken.getId(), first.get(0).getId());
+            assertEquals(potatoes.getId(), first.get(1).getId());
+
+            List<Ingredient> second = manager.getIngredientsAfter(first.get(1).getId(), 2);
+            assertEquals(1, second.size());
+            assertEquals(samePotatoes.getId(), second.get(0).getId());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(IngredientManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void loadedNamesAndUnitsAreShared() {
+        try {
+            manager.createIngredient(new Ingredient("potatoes", 1, "kg"), 1);
+            manager.createIngredient(new Ingredient("potatoes", 2, "kg"), 2);
+
+            List<Ingredient> loaded = manager.getIngredientsAfter(0, 2);
+            assertSame(loaded.get(0).getName(), loaded.get(1).getName());
+            assertSame(loaded.get(0).getUnit(), loaded.get(1).getUnit());
+            assertTrue(loaded.get(0).compareTo(loaded.get(1)) < 0);
+
+            Ingredient copy = new Ingredient(loaded.get(1));
+            assertEquals(loaded.get(1), copy);
+            assertEquals(loaded.get(1).hashCode(), copy.hashCode());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(IngredientManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void streamAllIngredients() {
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        Ingredient potatoes = new Ingredient("potatoes", 1, "kg");
+
+        try {
+            manager.createIngredient(chicken, 1);
+            manager.createIngredient(potatoes, 2);
+
+            final Map<Long, Ingredient> streamed = new HashMap<Long, Ingredient>();
+            long count = manager.streamAllIngredients(new IngredientHandler() {
+                @Override
+                public void handle(Ingredient ingredient, long recipeId) {
+                    streamed.put(recipeId, ingredient);
+                }
+            });
+
+            assertEquals(2, count);
+            assertEquals(chicken, streamed.get(1l));
+            assertEquals(potatoes, streamed.get(2l));
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(IngredientManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
     @Test
     public void deleteIngredientWithWrongAtributes() {
         try {
@@ -0,0 +1,143 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for MissFilteringRecipeManager and MissFilteringIngredientManager
+ * @author mulan
+ */
+public class MissFilteringManagerTest {
+
+    private MissFilteringRecipeManager recipeManager;
+    private MissFilteringIngredientManager ingredientManager;
+    private BasicDataSource ds;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:recipe;create=true");
+        recipeManager = new MissFilteringRecipeManager(new RecipeManagerImpl(ds), 100, 1, TimeUnit.MINUTES);
+        ingredientManager = new MissFilteringIngredientManager(new IngredientManagerImpl(ds), 100, 1, TimeUnit.MINUTES);
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private Recipe createRecipe(String name) throws ServiceFailureException {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.MAIN_DISH);
+        recipe.setCategory(MealCategory.MEAT);
+        recipe.setCookingTime(60);
+        recipe.setNumPortions(2);
+        recipe.setInstructions("upecte");
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    private static void assertMissingRecipe(RecipeManager manager, long id) throws ServiceFailureException {
+        try {
+            manager.findRecipeById(id);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+    }
+
+    @Test
+    public void missingRecipeIsCached() {
+        try {
+            Recipe recipe = createRecipe("Kacica");
+            long missing = recipe.getId() + 1000;
+
+            assertMissingRecipe(recipeManager, missing);
+            assertEquals(0, recipeManager.getCachedMissCount());
+            assertMissingRecipe(recipeManager, missing);
+            assertEquals(1, recipeManager.getCachedMissCount());
+            assertEquals(recipe, recipeManager.findRecipeById(recipe.getId()));
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(MissFilteringManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void missingRecipeIsFiltered() {
+        try {
+            Recipe r1 = createRecipe("Kacica");
+            assertEquals(1, recipeManager.buildFilter());
+
+            assertMissingRecipe(recipeManager, r1.getId() + 1000);
+            assertEquals(1, recipeManager.getFilteredCount());
+
+            // recipe created after the filter was built is found
+            Recipe r2 = createRecipe("Husacina");
+            assertEquals(r1, recipeManager.findRecipeById(r1.getId()));
+            assertEquals(r2, recipeManager.findRecipeById(r2.getId()));
+            assertEquals(1, recipeManager.getFilteredCount());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(MissFilteringManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void missingIngredientNameIsFiltered() {
+        try {
+            Recipe recipe = createRecipe("Kacica");
+            Ingredient cabbage = new Ingredient("kapusta", 1, "kg");
+            ingredientManager.createIngredient(cabbage, recipe.getId());
+            ingredientManager.buildFilter();
+
+            assertTrue(ingredientManager.getRecipeIdsByIngredientName("kapsuta").isEmpty());
+            assertEquals(1, ingredientManager.getRecipeIdsByIngredientName("kapusta").size());
+            assertEquals(cabbage, ingredientManager.getIngredient(cabbage.getId()));
+            try {
+                ingredientManager.getIngredient(cabbage.getId() + 1000);
+                fail();
+            } catch (IllegalArgumentException ex) {
+                //OK
+            }
+            assertEquals(2, ingredientManager.getFilteredCount() + ingredientManager.getCachedMissCount());
+
+            // created and renamed ingredients are found
+            ingredientManager.createIngredient(new Ingredient("knedla", 4, "ks"), recipe.getId());
+            assertEquals(1, ingredientManager.getRecipeIdsByIngredientName("knedla").size());
+            cabbage.setName("kyslá kapusta");
+            ingredientManager.updateIngredient(cabbage);
+            assertEquals(1, ingredientManager.getRecipeIdsByIngredientName("kyslá kapusta").size());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(MissFilteringManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void missingNameIsForgottenWhenCreated() {
+        try {
+            Recipe recipe = createRecipe("Kacica");
+            assertTrue(ingredientManager.getRecipeIdsByIngredientName("kapusta").isEmpty());
+            assertTrue(ingredientManager.getRecipeIdsByIngredientName("kapusta").isEmpty());
+            assertEquals(1, ingredientManager.getCachedMissCount());
+
+            ingredientManager.createIngredient(new Ingredient("kapusta", 1, "kg"), recipe.getId());
+            assertEquals(1, ingredientManager.getRecipeIdsByIngredientName("kapusta").size());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(MissFilteringManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for NameIndexingRecipeManager and RecipeNameIndex
+ * @author mulan
+ */
+public class NameIndexingRecipeManagerTest {
+
+    private BasicDataSource ds;
+    private RecipeManagerImpl database;
+    private NameIndexingRecipeManager recipeManager;
+    private Recipe goulash;
+    private Recipe soup;
+    private Recipe cake;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:names;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        database = new RecipeManagerImpl(ds);
+        recipeManager = new NameIndexingRecipeManager(database);
+        goulash = createRecipe("Segedínsky guláš");
+        soup = createRecipe("Gulášová polievka");
+        cake = createRecipe("Makový koláč");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private Recipe createRecipe(String name) throws ServiceFailureException {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.MAIN_DISH);
+        recipe.setCategory(MealCategory.MEAT);
+        recipe.setCookingTime(60);
+        recipe.setNumPortions(4);
+        recipe.setInstructions("uvarit");
+        recipeManager.createRecipe(recipe);
+        return recipe;
+    }
+
+    private static SortedSet<Recipe> recipes(Recipe... recipes) {
+        return new TreeSet<Recipe>(Arrays.asList(recipes));
+    }
+
+    @Test
+    public void substringsAreFoundByIndex() throws ServiceFailureException {
+        assertNull(recipeManager.getIndex().findRecipeIds("gulas"));
+        assertEquals(3, recipeManager.buildIndex());
+
+        assertEquals(recipes(goulash, soup), recipeManager.findRecipesByName("gulas"));
+        assertEquals(recipes(cake), recipeManager.findRecipesByName("KOLÁČ"));
+        assertEquals(recipes(soup, cake), recipeManager.findRecipesByName("ov"));
+        assertEquals(recipes(), recipeManager.findRecipesByName("vok"));
+        assertEquals(database.findRecipesByName("á"), recipeManager.findRecipesByName("á"));
+        // all trigrams of "MAKOL" are in "MAKOVY KOLAC", but the text is not
+        assertEquals(recipes(), recipeManager.findRecipesByName("makol"));
+    }
+
+    @Test
+    public void writesUpdateIndex() throws ServiceFailureException {
+        recipeManager.buildIndex();
+
+        Recipe salad = createRecipe("Šalát z fazule");
+        assertEquals(recipes(salad), recipeManager.findRecipesByName("salat"));
+
+        goulash.setName("Bravčové rebierka");
+        recipeManager.updateRecipe(goulash);
+        assertEquals(recipes(soup), recipeManager.findRecipesByName("gulas"));
+        assertEquals(recipes(goulash), recipeManager.findRecipesByName("rebier"));
+
+        recipeManager.deleteRecipeCascade(soup.getId());
+        assertEquals(recipes(), recipeManager.findRecipesByName("gulas"));
+
+        cake.setName("Orechový koláč");
+        database.updateRecipe(cake);
+        recipeManager.recipeChanged(cake.getId());
+        assertEquals(recipes(cake), recipeManager.findRecipesByName("orech"));
+        assertEquals(recipes(), recipeManager.findRecipesByName("makov"));
+        assertEquals(3, recipeManager.getIndex().size());
+    }
+
+    @Test
+    public void namesAreSuggested() throws ServiceFailureException {
+        assertNull(recipeManager.getIndex().suggest("g", 5));
+        Recipe secondSoup = createRecipe("Gulášová polievka");
+        recipeManager.buildIndex();
+        RecipeNameIndex index = recipeManager.getIndex();
+
+        assertEquals(Arrays.asList("Gulášová polievka"), index.suggest("gulas", 1));
+        assertEquals(Arrays.asList("Gulášová polievka"), index.suggest("", 1));
+        assertEquals(Arrays.asList(), index.suggest("x", 5));
+
+        Recipe stew1 = createRecipe("Gulášový perkelt");
+        Recipe stew2 = createRecipe("Gulášový perkelt");
+        createRecipe("Gulášový perkelt");
+        assertEquals(Arrays.asList("Gulášový perkelt", "Gulášová polievka"), index.suggest("GULASOV", 5));
+
+        recipeManager.deleteRecipeCascade(stew1.getId());
+        recipeManager.deleteRecipeCascade(stew2.getId());
+        assertEquals(Arrays.asList("Gulášová polievka", "Gulášový perkelt"), index.suggest("gulasov", 5));
+
+        secondSoup.setName("Perkelt");
+        recipeManager.updateRecipe(secondSoup);
+        assertEquals(Arrays.asList("Perkelt"), index.suggest("perk", 5));
+        assertEquals(Arrays.asList("Segedínsky guláš"), index.suggest("seg", 5));
+    }
+
+    @Test
+    public void misspelledNamesAreFound() throws ServiceFailureException {
+        assertNull(recipeManager.getIndex().findRecipeIdsFuzzy("gulas"));
+        assertEquals(Arrays.asList(goulash, soup), recipeManager.findRecipesByNameFuzzy("gulas"));
+        Recipe stew = createRecipe("Bravčový perkelt");
+        Recipe stews = createRecipe("Perkelty z hríbov");
+        recipeManager.buildIndex();
+
+        assertEquals(Arrays.asList(cake), recipeManager.findRecipesByNameFuzzy("KOLÁČ"));
+        assertEquals(Arrays.asList(goulash, soup), recipeManager.findRecipesByNameFuzzy("gulass"));
+        assertEquals(Arrays.asList(soup), recipeManager.findRecipesByNameFuzzy("polievka gulsa"));
+        assertEquals(Arrays.asList(cake), recipeManager.findRecipesByNameFuzzy("makovi kolax"));
+        // "PERKELTY" is one edit away, "PERKELT" two edits
+        assertEquals(Arrays.asList(stews, stew), recipeManager.findRecipesByNameFuzzy("pekelty"));
+        // short words are not corrected
+        assertEquals(Arrays.asList(), recipeManager.findRecipesByNameFuzzy("xa"));
+        assertEquals(Arrays.asList(), recipeManager.findRecipesByNameFuzzy("polievka xyzw"));
+
+        cake.setName("Orechový koláč");
+        recipeManager.updateRecipe(cake);
+        assertEquals(Arrays.asList(cake), recipeManager.findRecipesByNameFuzzy("orehovy"));
+        assertEquals(Arrays.asList(), recipeManager.findRecipesByNameFuzzy("makovi"));
+    }
+}
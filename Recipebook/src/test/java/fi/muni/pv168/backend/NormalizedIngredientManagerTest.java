@@ -0,0 +1,130 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.RowMapper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for NormalizedIngredientManager
+ * @author mulan
+ */
+public class NormalizedIngredientManagerTest {
+
+    private BasicDataSource ds;
+    private JdbcTemplate jdbc;
+    private NormalizedIngredientManager manager;
+    private long recipe1;
+    private long recipe2;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:normalized;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createNormalizedTables.sql"));
+        jdbc = new JdbcTemplate(ds);
+        manager = new NormalizedIngredientManager(jdbc);
+
+        RecipeManagerImpl recipeManager = new RecipeManagerImpl(jdbc);
+        Long[] ids = new Long[2];
+        for (int i = 0; i < ids.length; i++) {
+            Recipe recipe = new Recipe();
+            recipe.setName("recipe " + i);
+            recipe.setType(MealType.MAIN_DISH);
+            recipe.setCategory(MealCategory.MEAT);
+            recipe.setCookingTime(10);
+            recipe.setNumPortions(1);
+            recipe.setInstructions("cook");
+            recipeManager.createRecipe(recipe);
+            ids[i] = recipe.getId();
+        }
+        recipe1 = ids[0];
+        recipe2 = ids[1];
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropNormalizedTables.sql"));
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private int countRows(String table) throws SQLException {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table, new RowMapper<Integer>() {
+            @Override
+            public Integer mapRow(ResultSet rs) throws SQLException {
+                return rs.getInt(1);
+            }
+        });
+    }
+
+    @Test
+    public void namesAndUnitsAreStoredOnce() throws Exception {
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        manager.createIngredient(chicken, recipe1);
+        List<Long> ids = manager.createIngredients(Arrays.asList(
+                new Ingredient("chicken", 2, "kg"), new Ingredient("potatoes", 1, "kg")), recipe2);
+        assertEquals(2, ids.size());
+
+        assertEquals(2, countRows("INGREDIENT_CATALOG"));
+        assertEquals(1, countRows("UNIT_CATALOG"));
+        assertEquals(3, countRows("RECIPE_INGREDIENT"));
+
+        assertEquals(chicken, manager.getIngredient(chicken.getId()));
+        assertEquals(2, manager.getIngredientsOfRecipe(recipe2).size());
+        assertEquals(2, manager.getRecipeIdsByIngredientName("chicken").size());
+        assertTrue(manager.getRecipeIdsByIngredientName("beef").isEmpty());
+        SortedSet<Long> byIngredient = manager.getRecipeIdsByIngredient(new Ingredient("chicken", 1, "kg"));
+        assertEquals(1, byIngredient.size());
+        assertEquals(Long.valueOf(recipe1), byIngredient.first());
+        assertTrue(manager.getRecipeIdsByIngredient(new Ingredient("chicken", 1, "g")).isEmpty());
+    }
+
+    @Test
+    public void updateAndDelete() throws ServiceFailureException {
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        manager.createIngredient(chicken, recipe1);
+
+        chicken.setName("turkey");
+        manager.updateIngredient(chicken);
+        assertEquals("turkey", manager.getIngredient(chicken.getId()).getName());
+        assertTrue(manager.getRecipeIdsByIngredientName("chicken").isEmpty());
+
+        manager.deleteIngredient(chicken, recipe1);
+        try {
+            manager.getIngredient(chicken.getId());
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+    }
+
+    @Test
+    public void migrateIngredients() throws Exception {
+        IngredientManagerImpl oldManager = new IngredientManagerImpl(jdbc);
+        Ingredient chicken = new Ingredient("chicken", 1, "kg");
+        Ingredient potatoes = new Ingredient("potatoes", 1, "kg");
+        oldManager.createIngredient(chicken, recipe1);
+        oldManager.createIngredient(potatoes, recipe2);
+
+        assertEquals(2, manager.migrateIngredients());
+        assertEquals(0, countRows("INGREDIENTS"));
+        assertEquals(chicken, manager.getIngredient(chicken.getId()));
+        assertEquals(Long.valueOf(recipe2), manager.getRecipeIdsByIngredientName("potatoes").first());
+
+        Ingredient rice = new Ingredient("rice", 1, "kg");
+        manager.createIngredient(rice, recipe1);
+        assertTrue(rice.getId() > potatoes.getId());
+    }
+}
@@ -0,0 +1,137 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for OffHeapCachingRecipeManager and RecipeCodec
+ * @author mulan
+ */
+public class OffHeapCachingRecipeManagerTest {
+
+    private OffHeapCachingRecipeManager manager;
+    private BasicDataSource ds;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:recipe;create=true");
+        manager = new OffHeapCachingRecipeManager(new RecipeManagerImpl(ds), 64 * 1024, 4);
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private static Recipe newRecipe(String name, int cookingTime) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setType(MealType.SOUP);
+        recipe.setCategory(MealCategory.MEATLESS);
+        recipe.setCookingTime(cookingTime);
+        recipe.setNumPortions(4);
+        recipe.setInstructions("uvarte a osolte");
+        return recipe;
+    }
+
+    @Test
+    public void encodeAndDecode() {
+        Recipe recipe = newRecipe("Cesnačka", 20);
+        recipe.setId(42L);
+        Ingredient garlic = new Ingredient("cesnak", 5, "strok");
+        garlic.setId(7L);
+        recipe.addIngredient(garlic);
+        recipe.addIngredient(new Ingredient("voda", 1.5, "l"));
+
+        ByteBuffer buffer = ByteBuffer.wrap(RecipeCodec.encode(recipe));
+        Recipe decoded = RecipeCodec.decode(buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertEquals(Long.valueOf(42), decoded.getId());
+        assertEquals("Cesnačka", decoded.getName());
+        assertEquals(MealType.SOUP, decoded.getType());
+        assertEquals(MealCategory.MEATLESS, decoded.getCategory());
+        assertEquals(20, decoded.getCookingTime());
+        assertEquals(4, decoded.getNumPortions());
+        assertEquals("uvarte a osolte", decoded.getInstructions());
+        assertEquals(recipe.getIngredients(), decoded.getIngredients());
+        assertEquals(Long.valueOf(7), decoded.getIngredients().first().getId());
+        assertNull(decoded.getIngredients().last().getId());
+    }
+
+    @Test
+    public void findRecipeByIdIsStored() {
+        try {
+            Recipe recipe = newRecipe("Cesnačka", 20);
+            manager.createRecipe(recipe);
+
+            Recipe first = manager.findRecipeById(recipe.getId());
+            Recipe second = manager.findRecipeById(recipe.getId());
+
+            assertEquals(recipe, first);
+            assertEquals(recipe, second);
+            assertNotSame(first, second);
+            assertEquals(1, manager.getMisses());
+            assertEquals(1, manager.getHits());
+
+            recipe.setCookingTime(30);
+            manager.updateRecipe(recipe);
+            assertEquals(30, manager.findRecipeById(recipe.getId()).getCookingTime());
+            assertEquals(2, manager.getMisses());
+
+            manager.deleteRecipe(recipe);
+            try {
+                manager.findRecipeById(recipe.getId());
+                fail();
+            } catch (IllegalArgumentException ex) {
+                //OK
+            }
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(OffHeapCachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void oldestSlabIsEvicted() {
+        try {
+            Recipe first = newRecipe("Polievka 0", 10);
+            manager.createRecipe(first);
+            int recordSize = 4 + RecipeCodec.encode(first).length;
+            OffHeapCachingRecipeManager small = new OffHeapCachingRecipeManager(
+                    new RecipeManagerImpl(ds), 2 * recordSize, 2);
+
+            Recipe[] recipes = new Recipe[5];
+            recipes[0] = first;
+            for (int i = 1; i < recipes.length; i++) {
+                recipes[i] = newRecipe("Polievka " + i, 10);
+                manager.createRecipe(recipes[i]);
+            }
+            for (Recipe recipe : recipes) {
+                small.findRecipeById(recipe.getId());
+            }
+
+            // two recipes fit into slab, fifth recipe evicts slab with the first two
+            assertEquals(1, small.getEvictedSlabs());
+            assertEquals(3, small.getCachedCount());
+            assertEquals(recipes[4], small.findRecipeById(recipes[4].getId()));
+            assertEquals(1, small.getHits());
+            assertEquals(recipes[0], small.findRecipeById(recipes[0].getId()));
+            assertEquals(6, small.getMisses());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(OffHeapCachingRecipeManagerTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.RowMapper;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for RecipeImporter
+ * @author mulan
+ */
+public class RecipeImporterTest {
+
+    private static final String CSV =
+            "# name,type,category,cookingTime,numPortions,instructions,ingredients\n"
+            + "Gulas,MAIN_DISH,MEAT,120,4,\"nakrajajte maso, pridajte cibulu\",hovadzie:500:g|cibula:2:ks\n"
+            + "Palacinky,DESSERT,SWEET,30,4,\"zmiesajte a \"\"pecte\"\"\",muka:250:g|mlieko:0.5:l|vajce:2:ks\n"
+            + "\n"
+            + "Zly recept,UNKNOWN,MEAT,10,1,nic,\n"
+            + "Cesnacka,SOUP,MEATLESS,20,2,uvarte,cesnak:5:strok\n"
+            + "Caj,DRINK,NONALCOHOLIC,5,1,zalejte,\n";
+
+    private static final RowMapper<Long> LINE_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs) throws SQLException {
+            return rs.getLong("LINE");
+        }
+    };
+
+    private RecipeImporter importer;
+    private RecipeManagerImpl recipeManager;
+    private IngredientManagerImpl ingredientManager;
+    private BasicDataSource ds;
+    private JdbcTemplate jdbc;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:recipe;create=true");
+        importer = new RecipeImporter(ds);
+        importer.setChunkSize(2);
+        importer.setThreads(2);
+        recipeManager = new RecipeManagerImpl(ds);
+        ingredientManager = new IngredientManagerImpl(ds);
+        jdbc = new JdbcTemplate(ds);
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    @Test
+    public void importRecipes() {
+        try {
+            RecipeImporter.ImportResult result = importer.importRecipes(new StringReader(CSV));
+
+            assertEquals(7, result.getLines());
+            assertEquals(1, result.getRejectedLines());
+            assertEquals(4, result.getRecipes());
+            assertEquals(6, result.getIngredients());
+
+            SortedSet<Recipe> found = recipeManager.findRecipesByName("palacinky");
+            assertEquals(1, found.size());
+            Recipe palacinky = found.first();
+            assertEquals(MealType.DESSERT, palacinky.getType());
+            assertEquals("zmiesajte a \"pecte\"", palacinky.getInstructions());
+            assertEquals(3, ingredientManager.getIngredientsOfRecipe(palacinky.getId()).size());
+
+            assertEquals(4, recipeManager.findAllRecipes().size());
+            assertEquals(6, ingredientManager.getAllIngredients().size());
+        } catch (IOException ex) {
+            fail();
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeImporterTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void resumeFromCheckpoint() {
+        try {
+            jdbc.update("INSERT INTO IMPORT_CHECKPOINT (NAME, LINE) VALUES(?, ?)", "recipes.csv", 4);
+
+            importer.setCheckpointName("recipes.csv");
+            RecipeImporter.ImportResult result = importer.importRecipes(new StringReader(CSV));
+
+            assertEquals(4, result.getSkippedLines());
+            assertEquals(2, result.getRecipes());
+            assertEquals(1, result.getRejectedLines());
+            assertTrue(recipeManager.findRecipesByName("gulas").isEmpty());
+            assertEquals(1, recipeManager.findRecipesByName("cesnacka").size());
+            assertTrue(jdbc.query("SELECT LINE FROM IMPORT_CHECKPOINT", LINE_MAPPER).isEmpty());
+        } catch (IOException ex) {
+            fail();
+        } catch (SQLException ex) {
+            Logger.getLogger(RecipeImporterTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeImporterTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
+    @Test
+    public void checkpointIsCommittedWithChunk() throws Exception {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longName.append('x');
+        }
+        // chunk with too long name fails, chunks before it stay committed
+        String csv = CSV.replace("Cesnacka", longName);
+        importer.setCheckpointName("recipes.csv");
+        try {
+            importer.importRecipes(new StringReader(csv));
+            fail();
+        } catch (ServiceFailureException ex) {
+            //OK
+        }
+        assertEquals(Arrays.asList(4L), jdbc.query("SELECT LINE FROM IMPORT_CHECKPOINT", LINE_MAPPER));
+        assertEquals(2, recipeManager.findAllRecipes().size());
+
+        RecipeImporter.ImportResult result = importer.importRecipes(new StringReader(CSV));
+        assertEquals(4, result.getSkippedLines());
+        assertEquals(4, recipeManager.findAllRecipes().size());
+    }
+
+    @Test
+    public void parseRecipe() {
+        Recipe recipe = RecipeImporter.parseRecipe("Gulas,MAIN_DISH,MEAT,120,4,\"a, b\",hovadzie:500:g");
+        assertEquals("Gulas", recipe.getName());
+        assertEquals(MealCategory.MEAT, recipe.getCategory());
+        assertEquals(120, recipe.getCookingTime());
+        assertEquals("a, b", recipe.getInstructions());
+        assertEquals(1, recipe.getIngredients().size());
+
+        try {
+            RecipeImporter.parseRecipe("Gulas,MAIN_DISH,MEAT,-1,4,a,");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+        try {
+            RecipeImporter.parseRecipe("Gulas,MAIN_DISH,MEAT,0,4,a,");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+        try {
+            RecipeImporter.parseRecipe("Gulas,MAIN_DISH,MEAT,10,0,a,");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+        try {
+            RecipeImporter.parseRecipe("Gulas,MAIN_DISH,MEAT,10,4,a,hovadzie:500");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+    }
+
+    @Test
+    public void zeroCookingTimeIsRejected() throws IOException, ServiceFailureException {
+        RecipeImporter.ImportResult result = importer.importRecipes(new StringReader(
+                "Caj,DRINK,NONALCOHOLIC,0,1,zalejte,\n"
+                + "Cesnacka,SOUP,MEATLESS,20,2,uvarte,cesnak:5:strok\n"));
+
+        assertEquals(1, result.getRejectedLines());
+        assertEquals(1, result.getRecipes());
+        // every imported row can be read back
+        assertEquals(1, recipeManager.findRecipesAfter(0, 10).size());
+    }
+}
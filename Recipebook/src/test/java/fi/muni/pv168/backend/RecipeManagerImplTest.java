@@ -9,9 +9,11 @@ import fi.muni.pv168.backend.Recipe;
 import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.StatementStatistics;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -39,40 +41,12 @@ public class RecipeManagerImplTest {
         ds = new BasicDataSource();
         ds.setUrl("jdbc:derby:memory:recipe;create=true");
         manager = new RecipeManagerImpl(ds);
-        String createTableSQL = "CREATE TABLE RECIPES("
-                + "ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
-                + "NAME VARCHAR(255), "
-                + "TYPE INT, "
-                + "CATEGORY INT, "
-                + "COOKINGTIME INT, "
-                + "NUMPORTIONS INT, "
-                + "INSTRUCTIONS VARCHAR(255)"
-                + ")";
-        
-        Connection con = null;
-        PreparedStatement query = null;
-        
-        try{
-            con = ds.getConnection();
-            con.setAutoCommit(false);
-            query = con.prepareStatement(createTableSQL);
-            query.executeUpdate();
-            con.commit();
-        }catch(SQLException e)
-        {
-            logger.log(Level.SEVERE, "canoot create table");
-            DBUtils.doRollbackQuietly(con);
-            DBUtils.closeQuietly(con, query);
-        }
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
     }
 
     @After
     public void tearDown() throws Exception {
-        Connection con = ds.getConnection();
-        con.setAutoCommit(false);
-        PreparedStatement query = con.prepareStatement("DROP TABLE RECIPES");
-        query.executeUpdate();
-        con.commit();
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
         ds.close();
     }
 
@@ -453,6 +427,53 @@ public class RecipeManagerImplTest {
 
     }
 
+    @Test
+    public void deleteRecipeCascade() {
+        IngredientManagerImpl ingredientManager = new IngredientManagerImpl(ds);
+        List<Recipe> recipes = new ArrayList<Recipe>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                Recipe r = new Recipe();
+                r.setName("recipe " + i);
+                r.setType(MealType.MAIN_DISH);
+                r.setCookingTime(20);
+                r.setNumPortions(1);
+                r.setInstructions("cook");
+                r.setCategory(MealCategory.MEAT);
+                manager.createRecipe(r);
+                ingredientManager.createIngredient(new Ingredient("chicken", 1, "kg"), r.getId());
+                ingredientManager.createIngredient(new Ingredient("potatoes", 1, "kg"), r.getId());
+                recipes.add(r);
+            }
+
+            manager.deleteRecipeCascade(recipes.get(0).getId());
+            assertTrue(ingredientManager.getIngredientsOfRecipe(recipes.get(0).getId()).isEmpty());
+            assertEquals(2, ingredientManager.getIngredientsOfRecipe(recipes.get(1).getId()).size());
+
+            try {
+                manager.deleteRecipeCascade(recipes.get(0).getId());
+                fail();
+            } catch (IllegalArgumentException ex) {
+                //OK
+            }
+
+            List<Long> ids = new ArrayList<Long>();
+            ids.add(recipes.get(0).getId());
+            ids.add(recipes.get(1).getId());
+            ids.add(recipes.get(2).getId());
+            assertEquals(2, manager.deleteRecipesCascade(ids));
+
+            SortedSet<Recipe> expected = new TreeSet<Recipe>();
+            expected.add(recipes.get(3));
+            assertEquals(expected, manager.findAllRecipes());
+            assertEquals(2, ingredientManager.getAllIngredients().size());
+            assertEquals(2, ingredientManager.getIngredientsOfRecipe(recipes.get(3).getId()).size());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
     @Test
     public void deleteRecipeWithWrongAttributes() {
         Recipe r1 = new Recipe();
@@ -676,6 +697,11 @@ public class RecipeManagerImplTest {
             result = manager.findRecipesByName("slanina");
 
             assertEquals(expected, result);
+
+            result = manager.findRecipesByName("SLÁNINA");
+
+            assertEquals(expected, result);
+            assertTrue(manager.findRecipesByName("%_").isEmpty());
         } catch (ServiceFailureException ex) {
             Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
             fail();
@@ -683,6 +709,50 @@ public class RecipeManagerImplTest {
 
     }
 
+    @Test
+    public void findRecipeByNamePrefix() {
+        Recipe r1 = new Recipe();
+        r1.setName("Šošovicová polievka");
+        r1.setType(MealType.SOUP);
+        r1.setCookingTime(40);
+        r1.setNumPortions(4);
+        r1.setInstructions("uvarte sosovicu");
+        r1.setCategory(MealCategory.MEATLESS);
+
+        Recipe r2 = new Recipe();
+        r2.setName("sosovica na kyslo");
+        r2.setType(MealType.MAIN_DISH);
+        r2.setCookingTime(30);
+        r2.setNumPortions(2);
+        r2.setInstructions("uvarte sosovicu, pridajte ocot");
+        r2.setCategory(MealCategory.MEATLESS);
+
+        Recipe r3 = new Recipe();
+        r3.setName("slanina so sosovicou");
+        r3.setType(MealType.MAIN_DISH);
+        r3.setCookingTime(30);
+        r3.setNumPortions(2);
+        r3.setInstructions("opecte slaninu");
+        r3.setCategory(MealCategory.MEAT);
+
+        try {
+            manager.createRecipe(r1);
+            manager.createRecipe(r2);
+            manager.createRecipe(r3);
+
+            SortedSet<Recipe> expected = new TreeSet<Recipe>();
+            expected.add(r1);
+            expected.add(r2);
+
+            assertEquals(expected, manager.findRecipesByNamePrefix("sošo"));
+            assertTrue(manager.findRecipesByNamePrefix("polievka").isEmpty());
+            assertEquals(3, manager.findRecipesByNamePrefix("").size());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
     @Test
     public void findAllRecipes() {
         try {
@@ -724,6 +794,180 @@ public class RecipeManagerImplTest {
 
     }
 
+    @Test
+    public void findRecipesAfter() {
+        try {
+            assertTrue(manager.findRecipesAfter(0, 2).isEmpty());
+
+            SortedSet<Recipe> all = new TreeSet<Recipe>();
+            for (int i = 0; i < 5; i++) {
+                Recipe r = new Recipe();
+                r.setName("recipe " + i);
+                r.setType(MealType.MAIN_DISH);
+                r.setCookingTime(20);
+                r.setNumPortions(1);
+                r.setInstructions("cook");
+                r.setCategory(MealCategory.MEAT);
+                manager.createRecipe(r);
+                all.add(r);
+            }
+
+            SortedSet<Recipe> loaded = new TreeSet<Recipe>();
+            long lastId = 0;
+            SortedSet<Recipe> page;
+            int pages = 0;
+            do {
+                page = manager.findRecipesAfter(lastId, 2);
+                assertTrue(page.size() <= 2);
+                for (Recipe r : page) {
+                    assertTrue(r.getId() > lastId);
+                }
+                loaded.addAll(page);
+                if (!page.isEmpty()) {
+                    lastId = page.last().getId();
+                }
+                pages++;
+            } while (page.size() == 2);
+
+            assertEquals(3, pages);
+            assertEquals(all, loaded);
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+
+        try {
+            manager.findRecipesAfter(0, 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        } catch (ServiceFailureException ex) {
+            fail();
+        }
+    }
+
+    @Test
+    public void streamAllRecipes() {
+        try {
+            final SortedSet<Recipe> streamed = new TreeSet<Recipe>();
+            RecipeHandler handler = new RecipeHandler() {
+                @Override
+                public void handle(Recipe recipe) {
+                    streamed.add(recipe);
+                }
+            };
+
+            assertEquals(0, manager.streamAllRecipes(handler));
+
+            SortedSet<Recipe> all = new TreeSet<Recipe>();
+            for (int i = 0; i < 5; i++) {
+                Recipe r = new Recipe();
+                r.setName("recipe " + i);
+                r.setType(MealType.SOUP);
+                r.setCookingTime(20);
+                r.setNumPortions(1);
+                r.setInstructions("cook");
+                r.setCategory(MealCategory.MEATLESS);
+                manager.createRecipe(r);
+                all.add(r);
+            }
+
+            manager.setFetchSize(2);
+            assertEquals(5, manager.streamAllRecipes(handler));
+            assertEquals(all, streamed);
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+
+        try {
+            manager.streamAllRecipes(null);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //OK
+        } catch (ServiceFailureException ex) {
+            fail();
+        }
+    }
+
+    @Test
+    public void findRecipesByQuery() {
+        Recipe soup = new Recipe();
+        soup.setName("Zemiakova polievka");
+        soup.setType(MealType.SOUP);
+        soup.setCookingTime(30);
+        soup.setNumPortions(4);
+        soup.setInstructions("uvarte zemiaky");
+        soup.setCategory(MealCategory.MEATLESS);
+
+        Recipe longSoup = new Recipe();
+        longSoup.setName("Gulasova polievka");
+        longSoup.setType(MealType.SOUP);
+        longSoup.setCookingTime(120);
+        longSoup.setNumPortions(6);
+        longSoup.setInstructions("uvarte maso a zemiaky");
+        longSoup.setCategory(MealCategory.MEAT);
+
+        Recipe dish = new Recipe();
+        dish.setName("Zemiaky s maslom");
+        dish.setType(MealType.MAIN_DISH);
+        dish.setCookingTime(25);
+        dish.setNumPortions(2);
+        dish.setInstructions("uvarte zemiaky, pridajte maslo");
+        dish.setCategory(MealCategory.MEATLESS);
+
+        IngredientManagerImpl ingredientManager = new IngredientManagerImpl(ds);
+        try {
+            manager.createRecipe(soup);
+            manager.createRecipe(longSoup);
+            manager.createRecipe(dish);
+            ingredientManager.createIngredient(new Ingredient("potatoes", 1, "kg"), soup.getId());
+            ingredientManager.createIngredient(new Ingredient("potatoes", 1, "kg"), longSoup.getId());
+            ingredientManager.createIngredient(new Ingredient("beef", 1, "kg"), longSoup.getId());
+            ingredientManager.createIngredient(new Ingredient("potatoes", 1, "kg"), dish.getId());
+            ingredientManager.createIngredient(new Ingredient("butter", 10, "g"), dish.getId());
+
+            List<Recipe> result = manager.findRecipes(new RecipeQuery().type(MealType.SOUP).cookingTime(0, 60));
+            assertEquals(1, result.size());
+            assertEquals(soup.getId(), result.get(0).getId());
+
+            result = manager.findRecipes(new RecipeQuery().ingredient("potatoes").orderBy(RecipeQuery.Order.NAME));
+            assertEquals(3, result.size());
+            assertEquals(longSoup.getId(), result.get(0).getId());
+            assertEquals(soup.getId(), result.get(1).getId());
+            assertEquals(dish.getId(), result.get(2).getId());
+
+            result = manager.findRecipes(new RecipeQuery().ingredient("potatoes").ingredient("beef"));
+            assertEquals(1, result.size());
+            assertEquals(longSoup.getId(), result.get(0).getId());
+
+            result = manager.findRecipes(new RecipeQuery().name("zemiak").category(MealCategory.MEATLESS)
+                    .portions(1, 2));
+            assertEquals(1, result.size());
+            assertEquals(dish.getId(), result.get(0).getId());
+
+            result = manager.findRecipes(new RecipeQuery().namePrefix("zem").orderBy(RecipeQuery.Order.COOKING_TIME).limit(1));
+            assertEquals(1, result.size());
+            assertEquals(dish.getId(), result.get(0).getId());
+
+            assertEquals(3, manager.findRecipes(new RecipeQuery()).size());
+
+            final List<Recipe> streamed = new ArrayList<Recipe>();
+            long count = manager.streamRecipes(new RecipeQuery().type(MealType.SOUP), new RecipeHandler() {
+                @Override
+                public void handle(Recipe recipe) {
+                    streamed.add(recipe);
+                }
+            });
+            assertEquals(2, count);
+            assertEquals(soup.getId(), streamed.get(0).getId());
+            assertEquals(longSoup.getId(), streamed.get(1).getId());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
     @Test
     public void findRecipeByType() {
         try {
@@ -953,4 +1197,36 @@ public class RecipeManagerImplTest {
             fail();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void statementStatistics() {
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+        RecipeManagerImpl timedManager = new RecipeManagerImpl(jdbc);
+        try {
+            Recipe r1 = new Recipe();
+            r1.setName("Chleba s maslom");
+            r1.setType(MealType.APPETIZER);
+            r1.setCookingTime(15);
+            r1.setNumPortions(1);
+            r1.setInstructions("natrite chlieb maslom");
+            r1.setCategory(MealCategory.MEAT);
+
+            timedManager.createRecipe(r1);
+            timedManager.findRecipeById(r1.getId());
+            timedManager.findRecipeById(r1.getId());
+
+            StatementStatistics stats = jdbc.getStatistics().get("SELECT * FROM RECIPES WHERE ID = ?");
+            assertNotNull(stats);
+            assertEquals(2, stats.getCount());
+            assertEquals(0, stats.getFailures());
+            assertTrue(stats.getMaxNanos() <= stats.getTotalNanos());
+            assertEquals(2, jdbc.getStatistics().size());
+
+            jdbc.resetStatistics();
+            assertTrue(jdbc.getStatistics().isEmpty());
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipeManagerImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+}
@@ -9,8 +9,7 @@ import fi.muni.pv168.backend.MealType;
 import fi.muni.pv168.backend.Recipe;
 import fi.muni.pv168.exceptions.InvalidEntityException;
 import fi.muni.pv168.exceptions.ServiceFailureException;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import fi.muni.pv168.utils.DBUtils;
 import java.sql.SQLException;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -48,40 +47,12 @@ public class RecipebookImplTest {
         
         manager = new RecipebookImpl(ingredientManager, recipeManager);
 
-        String createTableSQL1 = "CREATE TABLE INGREDIENTS("
-                + "ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
-                + "NAME VARCHAR(255), "
-                + "AMOUNT DOUBLE, "
-                + "UNIT VARCHAR(255), "
-                + "RECIPEID INTEGER NOT NULL "
-                + ")";
-        String createTableSQL2 = "CREATE TABLE RECIPES("
-                + "ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
-                + "NAME VARCHAR(255), "
-                + "TYPE INT, "
-                + "CATEGORY INT, "
-                + "COOKINGTIME INT, "
-                + "NUMPORTIONS INT, "
-                + "INSTRUCTIONS VARCHAR(255)"
-                + ")";
-        Connection con = ds.getConnection();
-        con.setAutoCommit(false);
-        PreparedStatement query = con.prepareStatement(createTableSQL1);
-        query.executeUpdate();
-        query = con.prepareStatement(createTableSQL2);
-        query.executeUpdate();
-        con.commit();
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
     }
 
     @After
     public void tearDown() throws SQLException {
-        Connection con = ds.getConnection();
-        con.setAutoCommit(false);
-        PreparedStatement query = con.prepareStatement("DROP TABLE INGREDIENTS");
-        query.executeUpdate();
-        query = con.prepareStatement("DROP TABLE RECIPES");
-        query.executeUpdate();
-        con.commit();
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
         ds.close();
     }
 
@@ -394,6 +365,68 @@ public class RecipebookImplTest {
         }
     }
 
+    /**
+     * Test of findRecipesByIngredientName method, of class RecipebookImpl.
+     */
+    @Test
+    public void testFindRecipesByIngredientName() {
+        try {
+            Ingredient chicken = new Ingredient("chicken", 1, "kg");
+            Ingredient potatoes = new Ingredient("potatoes", 1, "kg");
+            Ingredient milk = new Ingredient("milk", 1, "l");
+
+            SortedSet<Ingredient> ing1 = new TreeSet<Ingredient>();
+            SortedSet<Ingredient> ing2 = new TreeSet<Ingredient>();
+
+            Recipe r1 = new Recipe();
+
+            r1.setName("chicken");
+            r1.setType(MealType.MAIN_DISH);
+            r1.setCookingTime(120);
+            r1.setNumPortions(5);
+            r1.setInstructions("cook chiken");
+            r1.setCategory(MealCategory.MEAT);
+
+            Recipe r2 = new Recipe();
+
+            r2.setName("potatoes with milk");
+            r2.setType(MealType.MAIN_DISH);
+            r2.setCookingTime(120);
+            r2.setNumPortions(5);
+            r2.setInstructions("put it together");
+            r2.setCategory(MealCategory.MEAT);
+
+            recipeManager.createRecipe(r1);
+            recipeManager.createRecipe(r2);
+
+            ing1.add(chicken);
+            ing1.add(potatoes);
+
+            ing2.add(potatoes);
+            ing2.add(milk);
+
+            manager.addIngredientsToRecipe(ing1, r1);
+            manager.addIngredientsToRecipe(ing2, r2);
+
+            SortedSet<Recipe> expected1 = new TreeSet<Recipe>();
+            SortedSet<Recipe> expected2 = new TreeSet<Recipe>();
+            expected1.add(r1);
+            expected1.add(r2);
+            expected2.add(r2);
+
+            SortedSet<Recipe> result = manager.findRecipesByIngredientName("potatoes");
+            assertEquals(expected1, result);
+            assertEquals(ing1, result.first().getIngredients());
+            assertEquals(ing2, result.last().getIngredients());
+
+            assertEquals(expected2, manager.findRecipesByIngredientName("milk"));
+            assertEquals(new TreeSet<Recipe>(), manager.findRecipesByIngredientName("slanina"));
+        } catch (ServiceFailureException ex) {
+            Logger.getLogger(RecipebookImplTest.class.getName()).log(Level.SEVERE, null, ex);
+            fail();
+        }
+    }
+
     private void assertEmpty(SortedSet<Ingredient> ingredients) {
         SortedSet<Ingredient> empty = new TreeSet<Ingredient>();
         assertEquals(empty, ingredients);
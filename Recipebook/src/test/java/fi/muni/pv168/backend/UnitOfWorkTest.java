@@ -0,0 +1,159 @@
+package fi.muni.pv168.backend;
+
+import fi.muni.pv168.exceptions.ServiceFailureException;
+import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcTemplate;
+import fi.muni.pv168.utils.StatementStatistics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * class contains tests for UnitOfWork
+ * @author mulan
+ */
+public class UnitOfWorkTest {
+
+    private BasicDataSource ds;
+    private JdbcTemplate jdbc;
+    private RecipeManagerImpl recipeManager;
+    private IngredientManagerImpl ingredientManager;
+    private Recipe recipe;
+    private Ingredient flour;
+    private Ingredient sugar;
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new BasicDataSource();
+        ds.setUrl("jdbc:derby:memory:work;create=true");
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/createTables.sql"));
+        jdbc = new JdbcTemplate(ds);
+        recipeManager = new RecipeManagerImpl(jdbc);
+        ingredientManager = new IngredientManagerImpl(jdbc);
+
+        recipe = new Recipe();
+        recipe.setName("Kolac");
+        recipe.setType(MealType.DESSERT);
+        recipe.setCategory(MealCategory.SWEET);
+        recipe.setCookingTime(45);
+        recipe.setNumPortions(8);
+        recipe.setInstructions("upecte");
+        recipeManager.createRecipe(recipe);
+        flour = new Ingredient("muka", 300, "g");
+        sugar = new Ingredient("cukor", 100, "g");
+        ingredientManager.createIngredient(flour, recipe.getId());
+        ingredientManager.createIngredient(sugar, recipe.getId());
+        jdbc.resetStatistics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DBUtils.executeSqlScript(ds, Recipebook.class.getResource("/dropTables.sql"));
+        ds.close();
+    }
+
+    private long executions(String sqlPrefix) {
+        long count = 0;
+        for (StatementStatistics stats : jdbc.getStatistics().values()) {
+            if (stats.getSql().startsWith(sqlPrefix)) {
+                count += stats.getCount();
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void entitiesAreLoadedOnce() throws ServiceFailureException {
+        UnitOfWork work = new UnitOfWork(jdbc, recipeManager, ingredientManager);
+
+        Ingredient loaded = work.getIngredient(flour.getId());
+        assertSame(loaded, work.getIngredient(flour.getId()));
+        SortedSet<Ingredient> ingredients = work.getIngredientsOfRecipe(recipe.getId());
+        assertEquals(2, ingredients.size());
+        assertTrue(ingredients.contains(loaded));
+        work.getIngredientsOfRecipe(recipe.getId());
+        assertSame(work.findRecipeById(recipe.getId()), work.findRecipeById(recipe.getId()));
+
+        assertEquals(3, executions("SELECT"));
+        assertFalse(work.isDirty());
+        assertEquals(0, work.flush());
+    }
+
+    @Test
+    public void flushWritesChangesInOneTransaction() throws ServiceFailureException {
+        UnitOfWork work = new UnitOfWork(jdbc, recipeManager, ingredientManager);
+        RecordingListener listener = new RecordingListener();
+        work.addListener(listener);
+
+        work.findRecipeById(recipe.getId()).setCookingTime(60);
+        for (Ingredient ingredient : work.getIngredientsOfRecipe(recipe.getId())) {
+            if (ingredient.getName().equals("muka")) {
+                ingredient.setAmount(350);
+            } else {
+                work.deleteIngredient(ingredient, recipe.getId());
+            }
+        }
+        Ingredient eggs = new Ingredient("vajce", 2, "ks");
+        work.createIngredient(eggs, recipe.getId());
+        assertTrue(work.isDirty());
+        assertEquals(2, work.getIngredientsOfRecipe(recipe.getId()).size());
+
+        assertEquals(4, work.flush());
+        assertFalse(work.isDirty());
+        assertNotNull(eggs.getId());
+        assertEquals(60, recipeManager.findRecipeById(recipe.getId()).getCookingTime());
+        SortedSet<Ingredient> stored = ingredientManager.getIngredientsOfRecipe(recipe.getId());
+        assertEquals(2, stored.size());
+        assertTrue(stored.contains(new Ingredient("muka", 350, "g")));
+        assertTrue(stored.contains(eggs));
+        assertEquals(4, listener.events.size());
+        assertTrue(listener.events.contains("recipe " + recipe.getId()));
+        assertTrue(listener.events.contains("ingredient " + sugar.getId() + " of " + recipe.getId()));
+
+        assertEquals(0, work.flush());
+    }
+
+    @Test
+    public void failedFlushWritesNothing() throws ServiceFailureException {
+        UnitOfWork work = new UnitOfWork(jdbc, recipeManager, ingredientManager);
+        work.getIngredient(flour.getId()).setAmount(400);
+        Ingredient detached = new Ingredient("cukor", 150, "g");
+        detached.setId(sugar.getId());
+        work.updateIngredient(detached, recipe.getId());
+
+        ingredientManager.deleteIngredient(sugar, recipe.getId());
+        try {
+            work.flush();
+            fail();
+        } catch (ServiceFailureException ex) {
+            //OK
+        }
+        assertTrue(work.isDirty());
+        assertEquals(300, ingredientManager.getIngredient(flour.getId()).getAmount(), 0.0);
+    }
+
+    private static class RecordingListener implements ChangeListener {
+
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void recipeChanged(long recipeId) {
+            events.add("recipe " + recipeId);
+        }
+
+        @Override
+        public void ingredientChanged(long ingredientId, long recipeId) {
+            events.add("ingredient " + ingredientId + " of " + recipeId);
+        }
+
+        @Override
+        public void allChanged() {
+            events.add("all");
+        }
+    }
+}
@@ -4,15 +4,24 @@
  */
 package cz.muni.fi.pv168;
 
+import fi.muni.pv168.backend.ChangeLogPoller;
 import fi.muni.pv168.backend.Ingredient;
 import fi.muni.pv168.backend.IngredientManager;
+import fi.muni.pv168.backend.IndexingIngredientManager;
 import fi.muni.pv168.backend.IngredientManagerImpl;
+import fi.muni.pv168.backend.RecipeManager;
+import fi.muni.pv168.backend.RecipeManagerImpl;
+import fi.muni.pv168.backend.UnitOfWork;
 import fi.muni.pv168.exceptions.ServiceFailureException;
 import fi.muni.pv168.utils.DBUtils;
+import fi.muni.pv168.utils.JdbcTemplate;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
@@ -28,11 +37,18 @@ import org.apache.tomcat.dbcp.dbcp.BasicDataSource;
 @WebServlet(RecipebookServlet.URL_MAPPING + "/*")
 public class RecipebookServlet extends HttpServlet {
     private static final String LIST_JSP = "/list.jsp";
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_SUGGESTIONS = 10;
+    private static final long CHANGE_POLL_SECONDS = 5;
     public static final String URL_MAPPING = "/ingredients";
     
     private static final Logger logger = Logger.getLogger(IngredientManagerImpl.class.getName());
     
+    private JdbcTemplate jdbc;
+    private RecipeManager recipeManager;
     private IngredientManager ingredientManager;
+    private IndexingIngredientManager ingredientIndexer;
+    private ChangeLogPoller changePoller;
 
     public RecipebookServlet() {
         BasicDataSource ds = new BasicDataSource();
@@ -40,7 +56,11 @@ public class RecipebookServlet extends HttpServlet {
         ds.setUrl("jdbc:derby://localhost:1527/Recipebook");
         ds.setUsername("recipebook");
         ds.setPassword("asdfghjk");
-        ingredientManager = new IngredientManagerImpl(ds);
+        ds.setPoolPreparedStatements(true);
+        jdbc = new JdbcTemplate(ds);
+        recipeManager = new RecipeManagerImpl(jdbc);
+        ingredientIndexer = new IndexingIngredientManager(new IngredientManagerImpl(jdbc));
+        ingredientManager = ingredientIndexer;
        
        String createTableSQL = "CREATE TABLE INGREDIENTS("
                 + "ID BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
@@ -49,13 +69,57 @@ public class RecipebookServlet extends HttpServlet {
                 + "UNIT VARCHAR(255), "
                 + "RECIPEID INTEGER NOT NULL "
                 + ")";
+        // writes are logged, so applications caching ingredients of the same database see them
+        String[] changeLogSQL = {
+            "CREATE TABLE CHANGE_LOG("
+                + "SEQ BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
+                + "ENTITY CHAR(1) NOT NULL, "
+                + "ENTITY_ID BIGINT NOT NULL, "
+                + "RECIPE_ID BIGINT NOT NULL "
+                + ")",
+            "CREATE TRIGGER INGREDIENTS_INSERT_LOG AFTER INSERT ON INGREDIENTS REFERENCING NEW AS I FOR EACH ROW "
+                + "INSERT INTO CHANGE_LOG (ENTITY, ENTITY_ID, RECIPE_ID) VALUES ('I', I.ID, I.RECIPEID)",
+            "CREATE TRIGGER INGREDIENTS_UPDATE_LOG AFTER UPDATE ON INGREDIENTS REFERENCING NEW AS I FOR EACH ROW "
+                + "INSERT INTO CHANGE_LOG (ENTITY, ENTITY_ID, RECIPE_ID) VALUES ('I', I.ID, I.RECIPEID)",
+            "CREATE TRIGGER INGREDIENTS_DELETE_LOG AFTER DELETE ON INGREDIENTS REFERENCING OLD AS I FOR EACH ROW "
+                + "INSERT INTO CHANGE_LOG (ENTITY, ENTITY_ID, RECIPE_ID) VALUES ('I', I.ID, I.RECIPEID)"
+        };
+
+        createQuietly(ds, createTableSQL);
+        for (String sql : changeLogSQL) {
+            createQuietly(ds, sql);
+        }
+    }
+
+    @Override
+    public void init() throws ServletException {
+        // writes of the GUI, the importer and other nodes are read from the change log
+        changePoller = new ChangeLogPoller(jdbc);
+        changePoller.addListener(ingredientIndexer);
+        try {
+            // the end of the log is found before the build, so changes made during the build are not lost
+            changePoller.poll();
+            // names are suggested from the index, until it is built no names are suggested
+            ingredientIndexer.buildIndex();
+        } catch (ServiceFailureException ex) {
+            logger.log(Level.SEVERE, "Ingredient index cannot be built", ex);
+        }
+        changePoller.start(CHANGE_POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        changePoller.stop();
+    }
+
+    private static void createQuietly(BasicDataSource ds, String sql) {
         Connection con=null;
         PreparedStatement query = null;
         
         try {
             con = ds.getConnection();
             con.setAutoCommit(false);
-            query = con.prepareStatement(createTableSQL);
+            query = con.prepareStatement(sql);
             query.executeUpdate();
             con.commit();
         } catch (SQLException ex) {
@@ -70,6 +134,11 @@ public class RecipebookServlet extends HttpServlet {
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         request.setCharacterEncoding("utf-8");
         
+        if ("/suggest".equals(request.getPathInfo())) {
+            suggestIngredientNames(request, response);
+            return;
+        }
+        
         String idedit = request.getParameter("idedit");
         
         //we comunicate with jsp script through idedi so that it knows which row to prepare for editing
@@ -176,14 +245,16 @@ public class RecipebookServlet extends HttpServlet {
             }
             
             try{
-                Ingredient toEdit = getIngredientManager().getIngredient(id);
-                getIngredientManager().updateIngredient(toEdit);
+                // ingredient is loaded once and written only when it was changed
+                UnitOfWork work = new UnitOfWork(jdbc, recipeManager, ingredientManager);
+                work.addListener(ingredientIndexer);
+                Ingredient toEdit = work.getIngredient(id);
                 
                 toEdit.setName(name);
                 toEdit.setAmount(amnt);
                 toEdit.setUnit(unit);
                 
-                ingredientManager.updateIngredient(toEdit);
+                work.flush();
 
                 logger.log(Level.INFO, "updated ingredient {0}",id);
 
@@ -204,11 +275,47 @@ public class RecipebookServlet extends HttpServlet {
     }
 
     /**
-     * Stores the list of books to request attribute "books" and forwards to the JSP to display it.
+     * Writes ingredient names starting with parameter "prefix", one per line, most used names first.
+     */
+    private void suggestIngredientNames(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String prefix = request.getParameter("prefix");
+        List<String> names = null;
+        if (prefix != null && prefix.length() > 0) {
+            names = ingredientIndexer.getIndex().suggest(prefix, MAX_SUGGESTIONS);
+        }
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("utf-8");
+        PrintWriter out = response.getWriter();
+        if (names != null) {
+            for (String name : names) {
+                out.println(name);
+            }
+        }
+    }
+
+    /**
+     * Stores one page of ingredients to request attribute "ingredients" and forwards to the JSP to display it.
+     * Page is selected by parameter "after" holding the last id of previous page, the id for next page
+     * is stored to attribute "next" when there can be more ingredients.
      */
     private void showIngredientList(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        long after = 0;
+        String afterParam = request.getParameter("after");
+        if (afterParam != null) {
+            try {
+                after = Long.parseLong(afterParam);
+            } catch (NumberFormatException e) {
+                request.setAttribute("chyba", "identifikator after nie je cislo");
+            }
+        }
+
         try {
-            request.setAttribute("ingredients", getIngredientManager().getAllIngredients());
+            List<Ingredient> ingredients = getIngredientManager().getIngredientsAfter(after, PAGE_SIZE);
+            request.setAttribute("ingredients", ingredients);
+            request.setAttribute("after", after);
+            if (ingredients.size() == PAGE_SIZE) {
+                request.setAttribute("next", ingredients.get(ingredients.size() - 1).getId());
+            }
             request.getRequestDispatcher(LIST_JSP).forward(request, response);
         } catch (ServiceFailureException e) {
             logger.log(Level.SEVERE, "Cannot show ingredients", e);
@@ -53,6 +53,7 @@
                         <form method="get" action="${pageContext.request.contextPath}/ingredients?idedit=${ingredient.id}" style="margin-bottom: 0;">
                             <input type="submit" value="Upraviť">
                             <input type="hidden" name="idedit" value="${ingredient.id}">
+                            <input type="hidden" name="after" value="${after}">
                         </form>
                     </td>
                 </tr>
@@ -73,7 +74,13 @@
             </tr>
         </form>
 </table>
-    
+<c:if test="${after gt 0}">
+    <a href="${pageContext.request.contextPath}/ingredients">Prvá stránka</a>
+</c:if>
+<c:if test="${not empty next}">
+    <a href="${pageContext.request.contextPath}/ingredients?after=${next}">Ďalšia stránka</a>
+</c:if>
+
 
 </body>
 </html>